@@ -0,0 +1,84 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.AliasTable;
+import com.laoda.universalph.DropsManager;
+import com.laoda.universalph.HarvestSnapshot;
+import com.laoda.universalph.UniversalPotatoHarvest;
+import com.laoda.universalph.headless.DropsFiles;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DropsManager.getRandomDrop 在不同掉落表大小下的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DropSelectionBenchmark {
+    @Param({"3", "50", "500", "5000"})
+    public int tableSize;
+
+    private UniversalPotatoHarvest plugin;
+    private DropsManager dropsManager;
+    private HarvestSnapshot snapshot;
+    private AliasTable<DropsManager.CustomDrop> table;
+    private World world;
+    private final Random random = new Random(7);
+
+    @Setup
+    public void setup() throws Exception {
+        // 在替身服务器中启用插件，使用插件自带的 config.yml 和生成的 drops.yml
+        File dataFolder = Files.createTempDirectory("uph-bench-").toFile();
+        dataFolder.deleteOnExit();
+        File dropsFile = new File(dataFolder, "drops.yml");
+        Files.copy(DropsFiles.writeDropsFile(1, tableSize).toPath(), dropsFile.toPath());
+        dropsFile.deleteOnExit();
+        plugin = HeadlessBukkit.enablePlugin(UniversalPotatoHarvest.class, dataFolder);
+        dropsManager = plugin.getDropsManager();
+        snapshot = plugin.getSnapshot();
+        table = snapshot.getDimensionTable("world").getBaseTable();
+        world = HeadlessBukkit.world("world", World.Environment.NORMAL);
+    }
+
+    @TearDown
+    public void tearDown() {
+        plugin.onDisable();
+    }
+
+    /**
+     * 完整的掉落物选择：维度解析 + 别名表抽样 + 克隆物品模板
+     */
+    @Benchmark
+    public ItemStack getRandomDrop() {
+        return dropsManager.getRandomDrop(snapshot, world);
+    }
+
+    /**
+     * 只测别名表抽样本身
+     */
+    @Benchmark
+    public DropsManager.CustomDrop sampleTable() {
+        return table.sample(random);
+    }
+}
@@ -0,0 +1,69 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.DropTable;
+import com.laoda.universalph.DropsManager;
+import com.laoda.universalph.FortuneTable;
+import com.laoda.universalph.headless.DropsFiles;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DropsManager.loadDropsConfig 的耗时：YAML解析 + 条目解析 + 别名表编译
+ * 首次加载每次都使用新的管理器；重载时文件没有变化，所有掉落表都直接沿用上一次的结果
+ * 从缓存加载时跳过YAML解析，只读取二进制缓存并重新编译别名表
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DropsLoadBenchmark {
+    @Param({"100", "1000", "5000"})
+    public int entriesPerDimension;
+
+    private File dropsFile;
+    private File cacheFile;
+    private DropsManager dropsManager;
+
+    @Setup
+    public void setup() throws Exception {
+        HeadlessBukkit.install();
+        dropsFile = DropsFiles.writeDropsFile(3, entriesPerDimension);
+        dropsManager = new DropsManager(dropsFile, HeadlessBukkit.logger());
+        dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+        cacheFile = new File(dropsFile.getPath() + ".cache");
+        cacheFile.deleteOnExit();
+        new DropsManager(dropsFile, cacheFile, HeadlessBukkit.logger()).loadDropsConfig(FortuneTable.Settings.defaults());
+    }
+
+    @Benchmark
+    public Map<String, DropTable> loadDropsConfig() throws Exception {
+        return new DropsManager(dropsFile, HeadlessBukkit.logger()).loadDropsConfig(FortuneTable.Settings.defaults());
+    }
+
+    @Benchmark
+    public Map<String, DropTable> reloadUnchanged() throws Exception {
+        return dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+    }
+
+    @Benchmark
+    public Map<String, DropTable> loadFromCache() throws Exception {
+        return new DropsManager(dropsFile, cacheFile, HeadlessBukkit.logger())
+                .loadDropsConfig(FortuneTable.Settings.defaults());
+    }
+}
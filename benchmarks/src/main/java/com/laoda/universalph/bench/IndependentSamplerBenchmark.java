@@ -0,0 +1,75 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.IndependentSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 独立判定的掉落表：几何跳跃抽样与逐个判定在不同条目数量下的耗时
+ * 条目概率在 0.01% 到 1% 之间均匀分布于对数刻度，模拟大量低概率的稀有掉落物
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndependentSamplerBenchmark {
+    @Param({"10", "100", "1000"})
+    public int tableSize;
+
+    private IndependentSampler<Integer> sampler;
+    private double[] probabilities;
+    private final List<Integer> out = new ArrayList<>();
+    private final Random random = new Random(7);
+
+    @Setup
+    public void setup() {
+        Random setupRandom = new Random(42);
+        List<Integer> items = new ArrayList<>(tableSize);
+        probabilities = new double[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            items.add(i);
+            probabilities[i] = Math.pow(10, -2 - 2 * setupRandom.nextDouble());
+        }
+        sampler = new IndependentSampler<>(items, probabilities);
+    }
+
+    /**
+     * 按概率区间分桶后几何跳跃，随机数数量只与期望命中数有关
+     */
+    @Benchmark
+    public int geometricSkip() {
+        out.clear();
+        sampler.sample(random, out);
+        return out.size();
+    }
+
+    /**
+     * 每个条目各用一次随机数判定
+     */
+    @Benchmark
+    public int perEntry() {
+        out.clear();
+        for (int i = 0; i < probabilities.length; i++) {
+            if (random.nextDouble() < probabilities[i]) {
+                out.add(i);
+            }
+        }
+        return out.size();
+    }
+}
@@ -0,0 +1,46 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.DropsManager;
+import com.laoda.universalph.FortuneTable;
+import com.laoda.universalph.headless.DropsFiles;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CustomDrop.createItemStack 的耗时（带名称、两行Lore和附魔的模板）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemStackBenchmark {
+    private DropsManager.CustomDrop drop;
+
+    @Setup
+    public void setup() throws Exception {
+        HeadlessBukkit.install();
+        File dropsFile = DropsFiles.writeDropsFile(1, 1);
+        DropsManager dropsManager = new DropsManager(dropsFile, HeadlessBukkit.logger());
+        drop = dropsManager.loadDropsConfig(FortuneTable.Settings.defaults()).get("world").getDrops().get(0);
+    }
+
+    @Benchmark
+    public ItemStack createItemStack() {
+        return drop.createItemStack();
+    }
+}
@@ -0,0 +1,417 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.UniversalPotatoHarvest;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import com.laoda.universalph.headless.HeadlessScheduler;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * 无服务器的收获负载测试
+ * 在替身服务器中启用真实的插件，每个tick把一批合成的 BlockBreakEvent 经由真实的事件分发交给 BlockBreakListener，
+ * 事件按配置的比例混合非作物方块、未成熟土豆、未持有收割工具和有效收获，并分布在多个维度的世界中；
+ * 随后推进一次调度器（掉落物合并、区域收获等tick任务），统计每个tick的耗时分位数和主线程的内存分配量
+ * 超过设定的阈值或相对基线的回归幅度时以状态码 1 退出，可以在构建中作为回归检查（见 benchmarks/pom.xml 的 load-test profile）
+ * 用法: java -cp target/benchmarks.jar com.laoda.universalph.bench.LoadTestMain [--选项=值 ...]，--help 查看选项
+ */
+public final class LoadTestMain {
+    /** 预先生成的事件数量，测试期间循环使用，避免生成事件本身的开销计入tick */
+    private static final int EVENT_POOL_SIZE = 1 << 14;
+    /** 合成方块分布的范围（方块），影响掉落物合并时的网格分布 */
+    private static final int AREA_SIZE = 256;
+
+    private static final String[][] OPTIONS = {
+            {"players", "200", "在线玩家数量，一半持有收割工具"},
+            {"events-per-tick", "2000", "每tick的方块破坏事件数量"},
+            {"ticks", "1200", "统计的tick数量"},
+            {"warmup-ticks", "400", "预热的tick数量，不计入统计"},
+            {"mix", "valid:40,immature:20,not-crop:30,no-tool:10", "事件类型比例"},
+            {"worlds", "3", "使用的维度数量（1-3：主世界、下界、末地）"},
+            {"fortune", "3", "收割工具的时运等级"},
+            {"batching", "false", "是否启用掉落物合并"},
+            {"delivery", "world", "掉落物投递方式（world / inventory）"},
+            {"drops", "", "使用的 drops.yml，默认使用插件自带的配置"},
+            {"budget-ms", "50", "tick预算（毫秒）"},
+            {"max-p99-ms", "50", "p99 tick耗时超过此值时失败，0 表示不检查"},
+            {"max-bytes-per-event", "0", "平均每个事件分配的字节数超过此值时失败，0 表示不检查"},
+            {"baseline", "", "基线结果文件，与之比较回归幅度"},
+            {"max-regression", "0.25", "相对基线允许的最大回归比例"},
+            {"save", "", "把本次结果保存为基线文件"}
+    };
+
+    private LoadTestMain() {
+    }
+
+    /**
+     * 合成事件的类型
+     */
+    private enum Kind {
+        VALID("valid"),
+        IMMATURE("immature"),
+        NOT_CROP("not-crop"),
+        NO_TOOL("no-tool");
+
+        private final String key;
+
+        Kind(String key) {
+            this.key = key;
+        }
+
+        private static Kind byKey(String key) {
+            for (Kind kind : values()) {
+                if (kind.key.equals(key)) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("未知的事件类型: " + key + "，可用: valid, immature, not-crop, no-tool");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            printUsage();
+            System.exit(2);
+            return;
+        }
+
+        int players = Math.max(2, Integer.parseInt(options.get("players")));
+        int eventsPerTick = Integer.parseInt(options.get("events-per-tick"));
+        int ticks = Integer.parseInt(options.get("ticks"));
+        int warmupTicks = Integer.parseInt(options.get("warmup-ticks"));
+        double[] mix = parseMix(options.get("mix"));
+        int worldCount = Math.max(1, Math.min(3, Integer.parseInt(options.get("worlds"))));
+        int fortune = Integer.parseInt(options.get("fortune"));
+        double budgetMs = Double.parseDouble(options.get("budget-ms"));
+
+        File dataFolder = Files.createTempDirectory("uph-loadtest-").toFile();
+        prepareDataFolder(dataFolder, options);
+        List<World> worlds = new ArrayList<>();
+        worlds.add(HeadlessBukkit.world("world", World.Environment.NORMAL));
+        worlds.add(HeadlessBukkit.world("world_nether", World.Environment.NETHER));
+        worlds.add(HeadlessBukkit.world("world_the_end", World.Environment.THE_END));
+        worlds = worlds.subList(0, worldCount);
+        UniversalPotatoHarvest plugin = HeadlessBukkit.enablePlugin(UniversalPotatoHarvest.class, dataFolder);
+
+        BlockBreakEvent[] events = createEvents(worlds, players, fortune, mix);
+        HeadlessScheduler scheduler = HeadlessBukkit.scheduler();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        long[] tickNanos = new long[ticks];
+        long allocatedBytes = 0;
+        int cursor = 0;
+        for (int tick = -warmupTicks; tick < ticks; tick++) {
+            if (tick == 0) {
+                plugin.getMetrics().reset();
+            }
+            long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < eventsPerTick; i++) {
+                BlockBreakEvent event = events[cursor];
+                cursor = (cursor + 1) & (EVENT_POOL_SIZE - 1);
+                event.setCancelled(false);
+                event.setDropItems(true);
+                HeadlessBukkit.callEvent(event);
+            }
+            scheduler.tick();
+            long elapsed = System.nanoTime() - start;
+            if (tick >= 0) {
+                tickNanos[tick] = elapsed;
+                if (allocations != null) {
+                    allocatedBytes += allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                }
+            }
+        }
+        plugin.onDisable();
+
+        Properties result = summarize(options, tickNanos, eventsPerTick, budgetMs,
+                allocations != null ? allocatedBytes : -1);
+        for (String line : plugin.getMetrics().report(5)) {
+            System.out.println(line.replaceAll("§.", ""));
+        }
+
+        List<String> failures = check(options, result);
+        String save = options.get("save");
+        if (!save.isEmpty()) {
+            try (OutputStream out = Files.newOutputStream(new File(save).toPath())) {
+                result.store(out, "UniversalPotatoHarvest load test");
+            }
+            System.out.println("结果已保存到 " + save);
+        }
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                System.out.println("失败: " + failure);
+            }
+            System.exit(1);
+        }
+        System.out.println("负载测试通过");
+    }
+
+    /**
+     * 准备插件数据目录：复制指定的 drops.yml，按选项修改默认 config.yml
+     */
+    private static void prepareDataFolder(File dataFolder, Map<String, String> options) throws Exception {
+        dataFolder.deleteOnExit();
+        String drops = options.get("drops");
+        if (!drops.isEmpty()) {
+            Files.copy(new File(drops).toPath(), new File(dataFolder, "drops.yml").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        YamlConfiguration config;
+        try (InputStream in = UniversalPotatoHarvest.class.getClassLoader().getResourceAsStream("config.yml");
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            config = YamlConfiguration.loadConfiguration(reader);
+        }
+        config.set("drop-batching.enabled", Boolean.parseBoolean(options.get("batching")));
+        config.set("drop-delivery.mode", options.get("delivery"));
+        config.save(new File(dataFolder, "config.yml"));
+    }
+
+    /**
+     * 按比例生成事件池，每个事件使用独立的方块，玩家从对应的玩家组中随机选择
+     */
+    private static BlockBreakEvent[] createEvents(List<World> worlds, int players, int fortune, double[] mix) {
+        ItemStack tool = HeadlessBukkit.item(Material.IRON_HOE, "§6土豆收割工具", Arrays.asList("§7土豆收割者"));
+        if (fortune > 0) {
+            ItemMeta meta = tool.getItemMeta();
+            meta.addEnchant(Enchantment.LOOT_BONUS_BLOCKS, fortune, true);
+            tool.setItemMeta(meta);
+        }
+        ItemStack plainItem = HeadlessBukkit.item(Material.IRON_HOE, "§7普通的锄头", Arrays.asList("§7没有用"));
+
+        Player[] harvesters = new Player[players / 2];
+        Player[] bystanders = new Player[players - harvesters.length];
+        for (int i = 0; i < harvesters.length; i++) {
+            harvesters[i] = HeadlessBukkit.player("harvester-" + i, worlds.get(i % worlds.size()), tool);
+        }
+        for (int i = 0; i < bystanders.length; i++) {
+            bystanders[i] = HeadlessBukkit.player("bystander-" + i, worlds.get(i % worlds.size()), plainItem);
+        }
+
+        Random random = new Random(42);
+        BlockBreakEvent[] events = new BlockBreakEvent[EVENT_POOL_SIZE];
+        for (int i = 0; i < events.length; i++) {
+            Kind kind = pickKind(mix, random.nextDouble());
+            World world = worlds.get(random.nextInt(worlds.size()));
+            int x = random.nextInt(AREA_SIZE) - AREA_SIZE / 2;
+            int y = 64 + random.nextInt(8);
+            int z = random.nextInt(AREA_SIZE) - AREA_SIZE / 2;
+
+            Material type = kind == Kind.NOT_CROP ? Material.DIRT : Material.POTATO;
+            byte data = kind == Kind.IMMATURE ? (byte) random.nextInt(7) : (byte) (kind == Kind.NOT_CROP ? 0 : 7);
+            Player player;
+            if (kind == Kind.VALID) {
+                player = harvesters[random.nextInt(harvesters.length)];
+            } else if (kind == Kind.NO_TOOL) {
+                player = bystanders[random.nextInt(bystanders.length)];
+            } else {
+                player = random.nextBoolean() ? harvesters[random.nextInt(harvesters.length)]
+                        : bystanders[random.nextInt(bystanders.length)];
+            }
+            events[i] = new BlockBreakEvent(HeadlessBukkit.block(world, x, y, z, type, data), player);
+        }
+        return events;
+    }
+
+    private static Kind pickKind(double[] cumulative, double uniform) {
+        for (int i = 0; i < cumulative.length; i++) {
+            if (uniform < cumulative[i]) {
+                return Kind.values()[i];
+            }
+        }
+        return Kind.values()[cumulative.length - 1];
+    }
+
+    /**
+     * 解析形如 valid:40,immature:20 的比例，返回按 Kind 顺序的累积概率
+     */
+    private static double[] parseMix(String value) {
+        double[] weights = new double[Kind.values().length];
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("无效的事件比例: " + part + "，格式为 类型:权重");
+            }
+            weights[Kind.byKey(pair[0].trim()).ordinal()] = Double.parseDouble(pair[1].trim());
+        }
+
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("事件比例的权重之和必须大于0");
+        }
+        double[] cumulative = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum / total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * 计算分位数并输出报告
+     * @return 用于基线比较的结果
+     */
+    private static Properties summarize(Map<String, String> options, long[] tickNanos, int eventsPerTick,
+                                        double budgetMs, long allocatedBytes) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long nanos : sorted) {
+            total += nanos;
+        }
+        double meanMs = sorted.length > 0 ? total / 1e6 / sorted.length : 0;
+        double p50 = percentileMs(sorted, 0.50);
+        double p90 = percentileMs(sorted, 0.90);
+        double p99 = percentileMs(sorted, 0.99);
+        double max = sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0;
+        long events = (long) eventsPerTick * sorted.length;
+
+        System.out.printf("%d 个tick x %d 个事件，事件比例 %s，%s 个世界，掉落物合并%s，投递方式 %s%n", sorted.length,
+                eventsPerTick, options.get("mix"), options.get("worlds"),
+                Boolean.parseBoolean(options.get("batching")) ? "开启" : "关闭", options.get("delivery"));
+        System.out.printf("tick耗时(毫秒): 平均 %.3f  p50 %.3f  p90 %.3f  p99 %.3f  最大 %.3f%n", meanMs, p50, p90, p99, max);
+        System.out.printf("p99 占用 %.0f 毫秒tick预算的 %.1f%%，按 p99 估算每tick最多可处理约 %d 个事件%n",
+                budgetMs, p99 / budgetMs * 100, p99 > 0 ? (long) (eventsPerTick * budgetMs / p99) : 0);
+
+        Properties result = new Properties();
+        result.setProperty("events-per-tick", String.valueOf(eventsPerTick));
+        result.setProperty("mix", options.get("mix"));
+        result.setProperty("p50-ms", String.valueOf(p50));
+        result.setProperty("p99-ms", String.valueOf(p99));
+        if (allocatedBytes >= 0 && sorted.length > 0) {
+            double bytesPerTick = (double) allocatedBytes / sorted.length;
+            double bytesPerEvent = events > 0 ? (double) allocatedBytes / events : 0;
+            System.out.printf("内存分配: 每tick %.1f KB，每事件 %.0f 字节，20 TPS 时约 %.1f MB/秒%n",
+                    bytesPerTick / 1024, bytesPerEvent, bytesPerTick * 20 / (1024 * 1024));
+            result.setProperty("bytes-per-event", String.valueOf(bytesPerEvent));
+        } else {
+            System.out.println("内存分配: 当前JVM不支持按线程统计");
+        }
+        return result;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    /**
+     * 检查绝对阈值和相对基线的回归
+     * @return 失败原因，全部通过时为空
+     */
+    private static List<String> check(Map<String, String> options, Properties result) throws Exception {
+        List<String> failures = new ArrayList<>();
+        double p99 = Double.parseDouble(result.getProperty("p99-ms"));
+        double maxP99 = Double.parseDouble(options.get("max-p99-ms"));
+        if (maxP99 > 0 && p99 > maxP99) {
+            failures.add(String.format("p99 tick耗时 %.3f 毫秒超过阈值 %.3f 毫秒", p99, maxP99));
+        }
+        String bytesPerEvent = result.getProperty("bytes-per-event");
+        double maxBytes = Double.parseDouble(options.get("max-bytes-per-event"));
+        if (maxBytes > 0 && bytesPerEvent != null && Double.parseDouble(bytesPerEvent) > maxBytes) {
+            failures.add(String.format("每事件分配 %.0f 字节超过阈值 %.0f 字节", Double.parseDouble(bytesPerEvent), maxBytes));
+        }
+
+        String baselineFile = options.get("baseline");
+        if (baselineFile.isEmpty()) {
+            return failures;
+        }
+        File file = new File(baselineFile);
+        if (!file.isFile()) {
+            System.out.println("基线文件不存在，跳过回归检查: " + baselineFile);
+            return failures;
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            baseline.load(in);
+        }
+        if (!result.getProperty("events-per-tick").equals(baseline.getProperty("events-per-tick"))
+                || !result.getProperty("mix").equals(baseline.getProperty("mix"))) {
+            System.out.println("警告: 基线使用的事件数量或比例与本次不同，比较结果可能没有意义");
+        }
+
+        double allowed = 1 + Double.parseDouble(options.get("max-regression"));
+        for (String key : new String[]{"p99-ms", "bytes-per-event"}) {
+            String before = baseline.getProperty(key);
+            String after = result.getProperty(key);
+            if (before == null || after == null) {
+                continue;
+            }
+            double previous = Double.parseDouble(before);
+            double current = Double.parseDouble(after);
+            System.out.printf("与基线比较 %s: %.3f -> %.3f (%+.1f%%)%n", key, previous, current,
+                    previous > 0 ? (current / previous - 1) * 100 : 0);
+            if (previous > 0 && current > previous * allowed) {
+                failures.add(String.format("%s 从 %.3f 回归到 %.3f，超过允许的 %.0f%%", key, previous, current,
+                        (allowed - 1) * 100));
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * 解析 --选项=值 形式的参数，未指定的选项使用默认值
+     * @return 选项，参数无效或请求帮助时返回null
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String[] option : OPTIONS) {
+            options.put(option[0], option[1]);
+        }
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                return null;
+            }
+            String key = arg.substring(2, separator);
+            if (!options.containsKey(key)) {
+                System.err.println("未知的选项: " + key);
+                return null;
+            }
+            options.put(key, arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static void printUsage() {
+        System.err.println("用法: LoadTestMain [--选项=值 ...]");
+        for (String[] option : OPTIONS) {
+            System.err.printf("  --%-20s %s（默认: %s）%n", option[0], option[2], option[1].isEmpty() ? "无" : option[1]);
+        }
+    }
+}
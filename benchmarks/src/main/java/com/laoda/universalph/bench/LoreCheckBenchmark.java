@@ -0,0 +1,80 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.HarvestToolCache;
+import com.laoda.universalph.LoreMatcher;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlockBreakListener 中收割工具识别的耗时：命中缓存、缓存失效后重新读取Lore、以及单独的多模式匹配
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoreCheckBenchmark {
+    @Param({"1", "8", "64"})
+    public int triggerCount;
+
+    private HarvestToolCache toolCache;
+    private LoreMatcher matcher;
+    private Player player;
+    private ItemStack tool;
+    private List<String> toolLore;
+
+    @Setup
+    public void setup() {
+        HeadlessBukkit.install();
+
+        List<String> triggers = new ArrayList<>();
+        for (int i = 0; i < triggerCount - 1; i++) {
+            triggers.add("收割者之力 " + i);
+        }
+        // 真正匹配的触发Lore放在最后，模拟最坏情况
+        triggers.add("土豆收割者");
+        matcher = new LoreMatcher(triggers);
+
+        toolLore = Arrays.asList("§7一把普通的锄头", "§7耐久度良好", "§7土豆收割者", "§e用于收获特殊土豆");
+        tool = HeadlessBukkit.item(Material.IRON_HOE, "§6土豆收割工具", toolLore);
+        World world = HeadlessBukkit.world("world", World.Environment.NORMAL);
+        player = HeadlessBukkit.player("bench", world, tool);
+        toolCache = new HarvestToolCache(null);
+    }
+
+    @Benchmark
+    public int cachedToolCheck() {
+        return toolCache.getTriggerIndex(player, tool, matcher);
+    }
+
+    @Benchmark
+    public int uncachedToolCheck() {
+        toolCache.invalidateAll();
+        return toolCache.getTriggerIndex(player, tool, matcher);
+    }
+
+    @Benchmark
+    public int matcherOnly() {
+        return matcher.findAny(toolLore);
+    }
+}
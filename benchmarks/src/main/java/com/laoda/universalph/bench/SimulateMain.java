@@ -0,0 +1,48 @@
+package com.laoda.universalph.bench;
+
+import com.laoda.universalph.DropSimulator;
+import com.laoda.universalph.DropTable;
+import com.laoda.universalph.DropsManager;
+import com.laoda.universalph.FortuneTable;
+import com.laoda.universalph.headless.HeadlessBukkit;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * 掉落表模拟的命令行入口，在没有服务器的情况下对 drops.yml 运行与 /uph simulate 相同的模拟
+ * 用法: java -cp target/benchmarks.jar com.laoda.universalph.bench.SimulateMain &lt;drops.yml&gt; &lt;维度&gt; &lt;次数&gt; [时运等级]
+ */
+public final class SimulateMain {
+    private SimulateMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("用法: SimulateMain <drops.yml> <维度> <次数> [时运等级]");
+            System.exit(2);
+        }
+
+        File dropsFile = new File(args[0]);
+        if (!dropsFile.isFile()) {
+            System.err.println("找不到文件: " + dropsFile);
+            System.exit(2);
+        }
+        String dimension = args[1].toLowerCase();
+        long trials = Long.parseLong(args[2]);
+        int[] fortuneLevels = args.length > 3 ? new int[]{Integer.parseInt(args[3])} : new int[]{0, 1, 2, 3};
+
+        HeadlessBukkit.install();
+        Map<String, DropTable> tables =
+                new DropsManager(dropsFile, HeadlessBukkit.logger()).loadDropsConfig(FortuneTable.Settings.defaults());
+        DropTable table = tables.get(dimension);
+        if (table == null || table.isEmpty()) {
+            System.err.println("维度 " + dimension + " 没有配置掉落物，可用维度: " + tables.keySet());
+            System.exit(1);
+        }
+
+        for (String line : new DropSimulator().report(dimension, table, trials, fortuneLevels, System.nanoTime())) {
+            System.out.println(line.replaceAll("§.", ""));
+        }
+    }
+}
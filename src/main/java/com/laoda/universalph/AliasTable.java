@@ -0,0 +1,149 @@
+package com.laoda.universalph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基于Vose别名法的不可变加权随机表
+ * 在加载时以 O(n) 构建，之后每次抽样只需一次随机数和一次数组访问
+ * @param <T> 表中元素类型
+ */
+public final class AliasTable<T> {
+    private final List<T> items;
+    private final double[] weights;
+    private final double[] probability;
+    private final int[] alias;
+    private final double totalWeight;
+
+    /**
+     * 根据权重构建别名表，权重不要求总和为1，会自动归一化
+     * @param items 候选元素
+     * @param weights 与元素一一对应的权重，小于等于0的权重视为0
+     */
+    public AliasTable(List<T> items, double[] weights) {
+        if (items.size() != weights.length) {
+            throw new IllegalArgumentException("元素数量与权重数量不一致");
+        }
+
+        int n = items.size();
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.weights = new double[n];
+        this.probability = new double[n];
+        this.alias = new int[n];
+
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            double weight = weights[i] > 0 ? weights[i] : 0;
+            this.weights[i] = weight;
+            total += weight;
+        }
+        this.totalWeight = total;
+
+        if (n == 0 || totalWeight <= 0) {
+            return;
+        }
+
+        // 将每个权重缩放到平均值为1，再分为"小"与"大"两个工作栈
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = this.weights[i] * n / totalWeight;
+            if (scaled[i] < 1.0) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+
+            probability[less] = scaled[less];
+            alias[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+
+        // 剩余的列由于浮点误差而未能精确配对，直接视为满概率
+        while (largeSize > 0) {
+            probability[large[--largeSize]] = 1.0;
+        }
+        while (smallSize > 0) {
+            probability[small[--smallSize]] = 1.0;
+        }
+    }
+
+    /**
+     * 按权重随机抽取一个元素
+     * @param random 随机数来源
+     * @return 抽中的元素，如果表为空则返回null
+     */
+    public T sample(Random random) {
+        if (isEmpty()) {
+            return null;
+        }
+        return pick(random.nextDouble());
+    }
+
+    /**
+     * 使用一个 [0, 1) 区间内的随机数选出元素
+     * 整数部分决定列，小数部分决定取该列本身还是其别名
+     * @param uniform [0, 1) 区间内均匀分布的随机数
+     * @return 选中的元素
+     */
+    T pick(double uniform) {
+        return items.get(pickIndex(uniform));
+    }
+
+    /**
+     * 使用一个 [0, 1) 区间内的随机数选出元素的下标
+     * @param uniform [0, 1) 区间内均匀分布的随机数
+     * @return 选中元素的下标
+     */
+    int pickIndex(double uniform) {
+        int n = probability.length;
+        double scaled = uniform * n;
+        int column = (int) scaled;
+        if (column >= n) {
+            column = n - 1;
+        }
+        return scaled - column < probability[column] ? column : alias[column];
+    }
+
+    /**
+     * 表是否没有任何可抽取的元素
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return totalWeight <= 0;
+    }
+
+    /**
+     * 获取表中的所有元素
+     * @return 不可修改的元素列表
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 获取某个元素被抽中的概率（已归一化）
+     * @param index 元素下标
+     * @return 被抽中的概率
+     */
+    public double getProbability(int index) {
+        return totalWeight > 0 ? weights[index] / totalWeight : 0;
+    }
+}
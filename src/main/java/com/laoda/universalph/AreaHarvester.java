@@ -0,0 +1,521 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 区域收获器
+ * 手持配置了区域模式的收割工具时，把周围（或相连）的成熟作物放入玩家的收获队列，
+ * 再按每tick的方块数和时间预算逐步收获，避免大片农田一次性卡住主线程
+ * 在区域多线程服务器上，每个任务由原点所在区域的线程单独驱动，预算按任务计算
+ */
+public class AreaHarvester implements Runnable, Listener {
+    private final UniversalPotatoHarvest plugin;
+    private final BlockBreakListener breakListener;
+    private final Map<UUID, Deque<AreaJob>> queues = new HashMap<>();
+    private final Map<UUID, AtomicInteger> regionJobCounts = new ConcurrentHashMap<>();
+    private HarvestScheduler.Task task;
+
+    public AreaHarvester(UniversalPotatoHarvest plugin, BlockBreakListener breakListener) {
+        this.plugin = plugin;
+        this.breakListener = breakListener;
+    }
+
+    /**
+     * 启动每tick运行一次的收获任务
+     */
+    public void start() {
+        if (task == null && !plugin.getHarvestScheduler().isRegionThreaded()) {
+            task = plugin.getHarvestScheduler().runGlobalTimer(this, 1L, 1L);
+        }
+    }
+
+    /**
+     * 停止收获任务并丢弃所有未完成的队列
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        queues.clear();
+    }
+
+    /**
+     * 为玩家提交一次区域收获
+     * 工具和汇总权限需要在玩家所在的线程上读取后传入，区域多线程服务器上任务在原点所在区域的线程运行，不能读取玩家状态
+     * @param settings 当前配置快照中的区域收获设置
+     * @param player 玩家
+     * @param origin 玩家亲手破坏的方块（由正常流程处理，不会重复收获）
+     * @param triggerIndex 玩家所用工具匹配的触发Lore下标
+     * @param fortuneLevel 玩家所用工具的时运等级
+     * @param tool 玩家所用工具的材质（审计日志使用）
+     * @param feedback 玩家是否接收收获汇总
+     * @param mode 工具对应的区域模式
+     */
+    public void submit(Settings settings, Player player, Block origin, int triggerIndex, int fortuneLevel,
+                       Material tool, boolean feedback, ToolMode mode) {
+        if (plugin.getHarvestScheduler().isRegionThreaded()) {
+            submitRegional(settings, player, origin, triggerIndex, fortuneLevel, tool, feedback, mode);
+            return;
+        }
+
+        Deque<AreaJob> queue = queues.get(player.getUniqueId());
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            queues.put(player.getUniqueId(), queue);
+        }
+        if (queue.size() >= settings.getMaxQueuedJobs()) {
+            return;
+        }
+        queue.add(createJob(player, origin, triggerIndex, fortuneLevel, tool, feedback, mode));
+    }
+
+    private AreaJob createJob(Player player, Block origin, int triggerIndex, int fortuneLevel, Material tool,
+                              boolean feedback, ToolMode mode) {
+        if (mode.getType() == ModeType.CONNECTED) {
+            return new ConnectedJob(player, origin, triggerIndex, fortuneLevel, tool, feedback, mode.getMaxBlocks());
+        }
+        return new RadiusJob(player, origin, triggerIndex, fortuneLevel, tool, feedback, mode.getRadius());
+    }
+
+    /**
+     * 区域多线程服务器：为任务在原点所在区域创建独立的周期任务
+     */
+    private void submitRegional(Settings settings, Player player, Block origin, int triggerIndex, int fortuneLevel,
+                                Material tool, boolean feedback, ToolMode mode) {
+        AtomicInteger count = regionJobCounts.computeIfAbsent(player.getUniqueId(), id -> new AtomicInteger());
+        if (count.incrementAndGet() > settings.getMaxQueuedJobs()) {
+            count.decrementAndGet();
+            return;
+        }
+
+        RegionJobTask regionTask = new RegionJobTask(createJob(player, origin, triggerIndex, fortuneLevel, tool, feedback, mode),
+                count);
+        regionTask.handle = plugin.getHarvestScheduler().runAtTimer(origin.getLocation(), regionTask, 1L, 1L);
+    }
+
+    @Override
+    public void run() {
+        if (queues.isEmpty()) {
+            return;
+        }
+
+        HarvestSnapshot snapshot = plugin.getSnapshot();
+        Settings settings = snapshot.getAreaSettings();
+        long deadline = System.nanoTime() + settings.getMaxMicrosPerTick() * 1000L;
+        int budget = settings.getMaxBlocksPerTick();
+
+        // 轮询所有玩家的队列，每轮每个玩家最多收获一个方块，保证公平
+        while (budget > 0 && !queues.isEmpty()) {
+            Iterator<Deque<AreaJob>> iterator = queues.values().iterator();
+            while (iterator.hasNext() && budget > 0) {
+                Deque<AreaJob> queue = iterator.next();
+                AreaJob job = queue.peek();
+                if (job == null || !harvestNext(snapshot, job, deadline)) {
+                    queue.poll();
+                    if (queue.isEmpty()) {
+                        iterator.remove();
+                    }
+                } else {
+                    budget--;
+                }
+
+                if (System.nanoTime() >= deadline) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在任务中找到并收获下一个成熟作物
+     * @param snapshot 当前配置快照
+     * @param job 收获任务
+     * @param deadline 本tick的截止时间
+     * @return 收获了一个方块时返回true；任务已完成时返回false
+     */
+    private boolean harvestNext(HarvestSnapshot snapshot, AreaJob job, long deadline) {
+        while (job.hasNext()) {
+            long position = job.next();
+            int x = LongHashSet.unpackX(position);
+            int y = LongHashSet.unpackY(position);
+            int z = LongHashSet.unpackZ(position);
+
+            // 不为区域收获加载区块，也不访问其他区域线程的区块
+            if (y < 0 || y >= job.world.getMaxHeight() || !job.world.isChunkLoaded(x >> 4, z >> 4)
+                    || !plugin.getHarvestScheduler().ownsChunk(job.world, x >> 4, z >> 4)) {
+                continue;
+            }
+
+            // 范围内任何接受此工具的成熟作物都会被收获
+            Block block = job.world.getBlockAt(x, y, z);
+            CropRule rule = snapshot.getCrops().get(block.getType());
+            if (rule != null && rule.accepts(job.triggerIndex) && rule.isMature(block.getData())
+                    && tryHarvest(snapshot, job, block, rule)) {
+                job.onHarvested(position);
+                return true;
+            }
+
+            if (System.nanoTime() >= deadline) {
+                // 时间用完，任务保留在队列中下一tick继续
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 以玩家的名义破坏方块：先触发方块破坏事件以尊重领地等保护插件，再走正常的掉落流程
+     * @param snapshot 当前配置快照
+     * @param job 收获任务
+     * @param block 成熟作物方块
+     * @param rule 作物规则
+     * @return 是否成功收获
+     */
+    private boolean tryHarvest(HarvestSnapshot snapshot, AreaJob job, Block block, CropRule rule) {
+        BlockBreakEvent check = new AreaBreakEvent(block, job.player);
+        plugin.getServer().getPluginManager().callEvent(check);
+        if (check.isCancelled()) {
+            return false;
+        }
+
+        breakListener.harvestBlock(snapshot, job.player, block, rule, job.triggerIndex, job.fortuneLevel, job.tool,
+                job.feedback);
+        block.setType(Material.AIR);
+        return true;
+    }
+
+    /**
+     * 区域收获为保护检查触发的方块破坏事件
+     * {@link BlockBreakListener} 遇到此事件时应直接忽略，避免重复掉落或递归提交
+     */
+    public static final class AreaBreakEvent extends BlockBreakEvent {
+        public AreaBreakEvent(Block block, Player player) {
+            super(block, player);
+        }
+    }
+
+    /**
+     * 区域多线程服务器上单个任务的周期驱动，每tick在原点所在区域的线程上运行
+     */
+    private final class RegionJobTask implements Runnable {
+        private final AreaJob job;
+        private final AtomicInteger count;
+        private volatile HarvestScheduler.Task handle;
+        private boolean finished;
+
+        private RegionJobTask(AreaJob job, AtomicInteger count) {
+            this.job = job;
+            this.count = count;
+        }
+
+        @Override
+        public void run() {
+            if (finished) {
+                cancel();
+                return;
+            }
+
+            HarvestSnapshot snapshot = plugin.getSnapshot();
+            Settings settings = snapshot.getAreaSettings();
+            long deadline = System.nanoTime() + settings.getMaxMicrosPerTick() * 1000L;
+            int budget = settings.getMaxBlocksPerTick();
+
+            boolean done = !job.player.isOnline();
+            while (!done && budget-- > 0 && System.nanoTime() < deadline) {
+                done = !harvestNext(snapshot, job, deadline);
+            }
+            if (done) {
+                finished = true;
+                count.decrementAndGet();
+                cancel();
+            }
+        }
+
+        private void cancel() {
+            HarvestScheduler.Task current = handle;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        queues.remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        Iterator<Deque<AreaJob>> iterator = queues.values().iterator();
+        while (iterator.hasNext()) {
+            Deque<AreaJob> queue = iterator.next();
+            queue.removeIf(job -> job.world.equals(world));
+            if (queue.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 区域模式类型
+     */
+    public enum ModeType {
+        /** 以被破坏方块为中心的正方形范围 */
+        RADIUS,
+        /** 与被破坏方块相连的成熟作物 */
+        CONNECTED
+    }
+
+    /**
+     * 某个触发Lore对应的区域模式
+     */
+    public static final class ToolMode {
+        private final ModeType type;
+        private final int radius;
+        private final int maxBlocks;
+
+        public ToolMode(ModeType type, int radius, int maxBlocks) {
+            this.type = type;
+            this.radius = Math.max(0, radius);
+            this.maxBlocks = Math.max(1, maxBlocks);
+        }
+
+        public ModeType getType() {
+            return type;
+        }
+
+        public int getRadius() {
+            return radius;
+        }
+
+        public int getMaxBlocks() {
+            return maxBlocks;
+        }
+    }
+
+    /**
+     * 区域收获设置（config.yml 中的 area-harvest 部分）
+     */
+    public static final class Settings {
+        private final int maxBlocksPerTick;
+        private final long maxMicrosPerTick;
+        private final int maxQueuedJobs;
+        private final ToolMode[] modes;
+
+        public Settings(int maxBlocksPerTick, long maxMicrosPerTick, int maxQueuedJobs, ToolMode[] modes) {
+            this.maxBlocksPerTick = Math.max(1, maxBlocksPerTick);
+            this.maxMicrosPerTick = Math.max(1, maxMicrosPerTick);
+            this.maxQueuedJobs = Math.max(1, maxQueuedJobs);
+            this.modes = modes;
+        }
+
+        /**
+         * 从配置节读取区域收获设置
+         * @param section area-harvest 配置节，可以为null
+         * @param triggerLores 触发Lore列表，区域模式按其下标保存
+         * @return 区域收获设置
+         */
+        public static Settings fromConfig(ConfigurationSection section, List<String> triggerLores) {
+            ToolMode[] modes = new ToolMode[triggerLores.size()];
+            if (section == null) {
+                return new Settings(64, 2000, 8, modes);
+            }
+
+            ConfigurationSection tools = section.getConfigurationSection("tools");
+            if (tools != null) {
+                for (String lore : tools.getKeys(false)) {
+                    int index = triggerLores.indexOf(lore);
+                    ConfigurationSection tool = tools.getConfigurationSection(lore);
+                    if (index < 0 || tool == null) {
+                        UniversalPotatoHarvest.LOGGER.warning("区域收获配置中的 \"" + lore + "\" 不在 trigger-item.lore 中，已忽略");
+                        continue;
+                    }
+
+                    String type = tool.getString("mode", "radius");
+                    ModeType modeType = "connected".equalsIgnoreCase(type) ? ModeType.CONNECTED : ModeType.RADIUS;
+                    modes[index] = new ToolMode(modeType, tool.getInt("radius", 1), tool.getInt("max-blocks", 1000));
+                }
+            }
+
+            return new Settings(
+                    section.getInt("max-blocks-per-tick", 64),
+                    section.getLong("max-micros-per-tick", 2000),
+                    section.getInt("max-queued-jobs", 8),
+                    modes
+            );
+        }
+
+        /**
+         * 获取触发Lore对应的区域模式
+         * @param triggerIndex 触发Lore下标
+         * @return 区域模式，未配置时返回null（只收获单个方块）
+         */
+        public ToolMode getMode(int triggerIndex) {
+            return triggerIndex >= 0 && triggerIndex < modes.length ? modes[triggerIndex] : null;
+        }
+
+        public int getMaxBlocksPerTick() {
+            return maxBlocksPerTick;
+        }
+
+        public long getMaxMicrosPerTick() {
+            return maxMicrosPerTick;
+        }
+
+        public int getMaxQueuedJobs() {
+            return maxQueuedJobs;
+        }
+    }
+
+    /**
+     * 一次区域收获任务，逐个给出待检查的方块坐标
+     */
+    private abstract static class AreaJob {
+        final Player player;
+        final World world;
+        final int triggerIndex;
+        final int fortuneLevel;
+        /** 提交时在玩家所在的线程上读取的工具材质和汇总权限 */
+        final Material tool;
+        final boolean feedback;
+
+        AreaJob(Player player, Block origin, int triggerIndex, int fortuneLevel, Material tool, boolean feedback) {
+            this.player = player;
+            this.world = origin.getWorld();
+            this.triggerIndex = triggerIndex;
+            this.fortuneLevel = fortuneLevel;
+            this.tool = tool;
+            this.feedback = feedback;
+        }
+
+        abstract boolean hasNext();
+
+        abstract long next();
+
+        /**
+         * 坐标处的作物已被收获
+         * @param position 打包后的坐标
+         */
+        void onHarvested(long position) {
+        }
+    }
+
+    /**
+     * 半径模式：按行扫描以原点为中心的正方形范围
+     */
+    private static final class RadiusJob extends AreaJob {
+        private final int originX;
+        private final int originY;
+        private final int originZ;
+        private final int diameter;
+        private int cursor;
+
+        RadiusJob(Player player, Block origin, int triggerIndex, int fortuneLevel, Material tool, boolean feedback,
+                  int radius) {
+            super(player, origin, triggerIndex, fortuneLevel, tool, feedback);
+            this.originX = origin.getX() - radius;
+            this.originY = origin.getY();
+            this.originZ = origin.getZ() - radius;
+            this.diameter = radius * 2 + 1;
+        }
+
+        @Override
+        boolean hasNext() {
+            return cursor < diameter * diameter;
+        }
+
+        @Override
+        long next() {
+            int index = cursor++;
+            return LongHashSet.pack(originX + index % diameter, originY, originZ + index / diameter);
+        }
+    }
+
+    /**
+     * 相连模式：从原点出发沿水平四个方向广度优先扩展，只经过成熟作物
+     */
+    private static final class ConnectedJob extends AreaJob {
+        private final LongHashSet visited = new LongHashSet(64);
+        private final int maxBlocks;
+        private long[] frontier = new long[64];
+        private int head;
+        private int tail;
+        private int harvested;
+
+        ConnectedJob(Player player, Block origin, int triggerIndex, int fortuneLevel, Material tool, boolean feedback,
+                     int maxBlocks) {
+            super(player, origin, triggerIndex, fortuneLevel, tool, feedback);
+            this.maxBlocks = maxBlocks;
+            long start = LongHashSet.pack(origin.getX(), origin.getY(), origin.getZ());
+            visited.add(start);
+            enqueueNeighbours(start);
+        }
+
+        @Override
+        boolean hasNext() {
+            return head < tail && harvested < maxBlocks;
+        }
+
+        @Override
+        long next() {
+            return frontier[head++];
+        }
+
+        @Override
+        void onHarvested(long position) {
+            harvested++;
+            enqueueNeighbours(position);
+        }
+
+        private void enqueueNeighbours(long position) {
+            int x = LongHashSet.unpackX(position);
+            int y = LongHashSet.unpackY(position);
+            int z = LongHashSet.unpackZ(position);
+            enqueue(LongHashSet.pack(x + 1, y, z));
+            enqueue(LongHashSet.pack(x - 1, y, z));
+            enqueue(LongHashSet.pack(x, y, z + 1));
+            enqueue(LongHashSet.pack(x, y, z - 1));
+        }
+
+        private void enqueue(long position) {
+            if (!visited.add(position)) {
+                return;
+            }
+            if (tail == frontier.length) {
+                // 先回收已出队的空间，不够再扩容
+                if (head > 0) {
+                    System.arraycopy(frontier, head, frontier, 0, tail - head);
+                    tail -= head;
+                    head = 0;
+                }
+                if (tail == frontier.length) {
+                    frontier = Arrays.copyOf(frontier, frontier.length << 1);
+                }
+            }
+            frontier[tail++] = position;
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 高价值掉落物的审计日志（drops.yml 中标记了 audit: true 的掉落物）：玩家、世界、坐标、工具、时运等级、物品和时间
+ * 收获线程只把记录填入预分配的环形缓冲区（{@link AuditQueue}），不格式化字符串也不进行IO；缓冲区满时丢弃记录并计数，
+ * 下一次写入时在文件中留下丢弃数量
+ * 后台任务定期批量取出记录，编码为制表符分隔的文本行追加到 gzip 压缩文件，文件超过设定大小或时长后换新文件，
+ * 只保留最近的若干个文件
+ * 文件: audit/audit-时间.log.gz，每行 {时间戳, 时间, 玩家UUID, 玩家, 世界, X, Y, Z, 工具, 时运, 物品, 名称, 数量}
+ */
+public class AuditLog {
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_SUFFIX = ".log.gz";
+    private static final String HEADER = "# 时间戳\t时间\t玩家UUID\t玩家\t世界\tX\tY\tZ\t工具\t时运\t物品\t名称\t数量";
+    /** 每批最多取出的记录数量 */
+    private static final int MAX_BATCH = 1 << 14;
+    /** 文件中时间戳和玩家UUID所在的列 */
+    private static final int TIME_COLUMN = 0;
+    private static final int PLAYER_COLUMN = 2;
+
+    private final File directory;
+    private final Logger logger;
+    private final AuditQueue queue;
+    private final int flushIntervalTicks;
+    private final long rotateBytes;
+    private final long rotateMillis;
+    private final int maxFiles;
+    private final LongAdder droppedRecords = new LongAdder();
+
+    /** 以下字段只由持有 writeLock 的写入线程访问 */
+    private final Object writeLock = new Object();
+    private final StringBuilder line = new StringBuilder(256);
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    private final SimpleDateFormat fileFormat = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+    private final AuditQueue.RecordConsumer encoder = this::encode;
+    private Writer out;
+    private File currentFile;
+    private long openedAt;
+    private long reportedDropped;
+    private IOException writeFailure;
+
+    private volatile boolean available;
+    private HarvestScheduler.Task task;
+
+    /**
+     * @param directory 审计日志目录
+     * @param logger 日志输出
+     * @param settings 启动时的设置（缓冲区容量、写入间隔和文件轮换在重启前不会改变）
+     */
+    public AuditLog(File directory, Logger logger, Settings settings) {
+        this.directory = directory;
+        this.logger = logger;
+        this.queue = new AuditQueue(settings.getQueueCapacity());
+        this.flushIntervalTicks = settings.getFlushIntervalTicks();
+        this.rotateBytes = settings.getRotateSizeKb() * 1024L;
+        this.rotateMillis = settings.getRotateMinutes() * 60_000L;
+        this.maxFiles = settings.getMaxFiles();
+    }
+
+    /**
+     * 创建目录并启动后台写入任务
+     * @param scheduler 调度适配
+     */
+    public void start(HarvestScheduler scheduler) {
+        if (task != null) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.severe("无法创建审计日志目录 " + directory + "，本次运行不会记录审计日志");
+            return;
+        }
+        available = true;
+        task = scheduler.runAsyncTimer(this::flush, flushIntervalTicks, flushIntervalTicks);
+    }
+
+    /**
+     * 停止后台任务，写入所有剩余记录并关闭当前文件
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        synchronized (writeLock) {
+            if (!available) {
+                return;
+            }
+            flush();
+            closeFile();
+            available = false;
+        }
+    }
+
+    /**
+     * 记录一次审计掉落，可以在任意线程调用；只填写缓冲区中的预分配记录，不进行任何格式化或IO
+     * @param settings 当前配置快照中的审计设置
+     * @param player 收获的玩家（自动收割机为放置者）
+     * @param block 作物方块
+     * @param tool 使用的工具或收割机方块
+     * @param fortuneLevel 时运等级
+     * @param drop 掉落物
+     * @param amount 掉落数量
+     */
+    public void record(Settings settings, Player player, Block block, Material tool, int fortuneLevel,
+                       DropsManager.CustomDrop drop, int amount) {
+        if (!available || !settings.isEnabled()) {
+            return;
+        }
+        long position = queue.claim();
+        if (position < 0) {
+            droppedRecords.increment();
+            return;
+        }
+        AuditQueue.Record record = queue.get(position);
+        UUID id = player.getUniqueId();
+        record.time = System.currentTimeMillis();
+        record.playerMost = id.getMostSignificantBits();
+        record.playerLeast = id.getLeastSignificantBits();
+        record.playerName = player.getName();
+        record.worldName = block.getWorld().getName();
+        record.x = block.getX();
+        record.y = block.getY();
+        record.z = block.getZ();
+        record.tool = tool;
+        record.fortuneLevel = fortuneLevel;
+        record.item = drop.getMaterial();
+        record.displayName = drop.getDisplayName();
+        record.amount = amount;
+        queue.publish(position);
+    }
+
+    /**
+     * 后台任务：取出缓冲区中的记录编码后追加到当前文件，达到轮换条件时关闭文件
+     */
+    public void flush() {
+        synchronized (writeLock) {
+            if (!available) {
+                return;
+            }
+            long dropped = droppedRecords.sum();
+            if (queue.size() == 0 && dropped == reportedDropped) {
+                rotateIfDue();
+                return;
+            }
+            try {
+                if (out == null) {
+                    openFile();
+                }
+                if (dropped > reportedDropped) {
+                    out.write("# 缓冲区已满，丢弃了 " + (dropped - reportedDropped) + " 条记录\n");
+                    logger.warning("审计缓冲区已满，丢弃了 " + (dropped - reportedDropped) + " 条记录");
+                    reportedDropped = dropped;
+                }
+                writeFailure = null;
+                while (queue.drain(encoder, MAX_BATCH) == MAX_BATCH && writeFailure == null) {
+                    // 继续取出剩余的记录
+                }
+                if (writeFailure != null) {
+                    throw writeFailure;
+                }
+                out.flush();
+            } catch (IOException e) {
+                // 已取出的记录无法重新写入，换新文件后继续
+                logger.log(Level.WARNING, "写入审计日志失败", e);
+                closeFile();
+                return;
+            }
+            rotateIfDue();
+        }
+    }
+
+    /**
+     * 在异步线程中查询某个玩家的审计记录，查询前先写入缓冲区中的记录
+     * @param playerId 玩家UUID
+     * @param since 只返回此时间（毫秒时间戳）之后的记录
+     * @param limit 最多返回的记录数量，超出时保留最新的记录
+     * @return 查询结果
+     * @throws IOException 文件无法读取
+     */
+    public SearchResult search(UUID playerId, long since, int limit) throws IOException {
+        flush();
+        String id = playerId.toString();
+        Deque<String[]> latest = new ArrayDeque<>(limit);
+        long total = 0;
+        for (File file : listFiles()) {
+            // 最后写入时间早于查询起点的文件不可能包含符合条件的记录
+            if (file.lastModified() < since) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new UnfinishedGzipStream(
+                    new GZIPInputStream(new FileInputStream(file), 1 << 16)), StandardCharsets.UTF_8))) {
+                String text;
+                while ((text = reader.readLine()) != null) {
+                    if (text.isEmpty() || text.charAt(0) == '#') {
+                        continue;
+                    }
+                    String[] columns = text.split("\t", -1);
+                    if (columns.length < 13 || !id.equals(columns[PLAYER_COLUMN])) {
+                        continue;
+                    }
+                    try {
+                        if (Long.parseLong(columns[TIME_COLUMN]) < since) {
+                            continue;
+                        }
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    total++;
+                    if (latest.size() == limit) {
+                        latest.removeFirst();
+                    }
+                    latest.addLast(columns);
+                }
+            }
+        }
+        return new SearchResult(total, new ArrayList<>(latest));
+    }
+
+    /**
+     * 生成审计日志状态（带颜色代码）
+     * @return 状态行
+     */
+    public String status() {
+        File file = currentFile;
+        return "§e审计日志: §7待写入 §f" + queue.size() + "/" + queue.capacity()
+                + " §7| 缓冲区满丢弃 §f" + droppedRecords.sum()
+                + " §7| 当前文件 §f" + (file != null ? file.length() / 1024 : 0) + " KB"
+                + (available ? "" : " §c(未启用)");
+    }
+
+    /**
+     * 把一条记录编码为一行文本，只由持有 writeLock 的写入线程调用
+     */
+    private void encode(AuditQueue.Record record) {
+        if (writeFailure != null) {
+            return;
+        }
+        line.setLength(0);
+        line.append(record.time).append('\t')
+                .append(timeFormat.format(new Date(record.time))).append('\t')
+                .append(new UUID(record.playerMost, record.playerLeast)).append('\t')
+                .append(record.playerName).append('\t')
+                .append(record.worldName).append('\t')
+                .append(record.x).append('\t')
+                .append(record.y).append('\t')
+                .append(record.z).append('\t')
+                .append(record.tool != null ? record.tool.name() : "-").append('\t')
+                .append(record.fortuneLevel).append('\t')
+                .append(record.item.name()).append('\t');
+        appendText(record.displayName);
+        line.append('\t').append(record.amount).append('\n');
+        try {
+            out.append(line);
+        } catch (IOException e) {
+            writeFailure = e;
+        }
+    }
+
+    /**
+     * 追加名称，去掉会破坏行格式的字符
+     */
+    private void appendText(String text) {
+        if (text == null || text.isEmpty()) {
+            line.append('-');
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            line.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+        }
+    }
+
+    private void openFile() throws IOException {
+        long now = System.currentTimeMillis();
+        File file = new File(directory, FILE_PREFIX + fileFormat.format(new Date(now)) + FILE_SUFFIX);
+        while (file.exists()) {
+            now++;
+            file = new File(directory, FILE_PREFIX + fileFormat.format(new Date(now)) + FILE_SUFFIX);
+        }
+        // 每次写入后同步刷新压缩流，正在写入的文件也可以被查询读取
+        out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file), 1 << 16, true), StandardCharsets.UTF_8), 1 << 16);
+        out.write(HEADER);
+        out.write('\n');
+        currentFile = file;
+        openedAt = now;
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "关闭审计日志失败", e);
+        }
+        out = null;
+    }
+
+    /**
+     * 当前文件超过设定大小或时长时关闭，下一条记录写入新文件，并删除超出数量的旧文件
+     */
+    private void rotateIfDue() {
+        if (out == null || (currentFile.length() < rotateBytes
+                && System.currentTimeMillis() - openedAt < rotateMillis)) {
+            return;
+        }
+        closeFile();
+        List<File> files = listFiles();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            if (!files.get(i).delete()) {
+                logger.warning("无法删除旧的审计日志 " + files.get(i));
+            }
+        }
+    }
+
+    /**
+     * 按时间顺序列出所有审计日志文件
+     * @return 文件列表，最早的在前
+     */
+    private List<File> listFiles() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * 正在写入的文件还没有 gzip 结尾，读到已写入部分的末尾时按文件结束处理，
+     * 避免异常穿过字符解码器时丢失已经解压但尚未返回的文本
+     */
+    private static final class UnfinishedGzipStream extends FilterInputStream {
+        private UnfinishedGzipStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (EOFException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * 审计记录查询结果
+     */
+    public static final class SearchResult {
+        private final long total;
+        private final List<String[]> latest;
+
+        SearchResult(long total, List<String[]> latest) {
+            this.total = total;
+            this.latest = latest;
+        }
+
+        /**
+         * 符合条件的记录总数
+         * @return 记录数量
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * 最新的若干条记录，按时间顺序排列
+         * @return 每条记录的各列，列的顺序与文件相同
+         */
+        public List<String[]> getLatest() {
+            return latest;
+        }
+    }
+
+    /**
+     * 审计日志设置（config.yml 中的 audit 部分）
+     */
+    public static final class Settings {
+        private final boolean enabled;
+        private final int queueCapacity;
+        private final int flushIntervalTicks;
+        private final int rotateSizeKb;
+        private final int rotateMinutes;
+        private final int maxFiles;
+
+        public Settings(boolean enabled, int queueCapacity, int flushIntervalTicks, int rotateSizeKb,
+                        int rotateMinutes, int maxFiles) {
+            this.enabled = enabled;
+            this.queueCapacity = Math.max(256, queueCapacity);
+            this.flushIntervalTicks = Math.max(1, flushIntervalTicks);
+            this.rotateSizeKb = Math.max(64, rotateSizeKb);
+            this.rotateMinutes = Math.max(1, rotateMinutes);
+            this.maxFiles = Math.max(1, maxFiles);
+        }
+
+        /**
+         * 从配置节读取审计日志设置
+         * @param section audit 配置节，可以为null
+         * @return 审计日志设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(true, 8192, 40, 8192, 1440, 30);
+            }
+            return new Settings(
+                    section.getBoolean("enabled", true),
+                    section.getInt("queue-capacity", 8192),
+                    section.getInt("flush-interval-ticks", 40),
+                    section.getInt("rotate-size-kb", 8192),
+                    section.getInt("rotate-minutes", 1440),
+                    section.getInt("max-files", 30)
+            );
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public int getFlushIntervalTicks() {
+            return flushIntervalTicks;
+        }
+
+        public int getRotateSizeKb() {
+            return rotateSizeKb;
+        }
+
+        public int getRotateMinutes() {
+            return rotateMinutes;
+        }
+
+        public int getMaxFiles() {
+            return maxFiles;
+        }
+    }
+}
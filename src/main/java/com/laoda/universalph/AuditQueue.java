@@ -0,0 +1,140 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁的审计记录环形缓冲区（多生产者、单消费者）
+ * 每个槽位是一条预先分配的可变记录，生产者占用槽位后只填写字段，不格式化字符串也不创建对象；
+ * 缓冲区满时占用直接失败，由调用方丢弃并计数
+ * 与 {@link LedgerQueue} 相同，每个槽位的序号等于写入位置时可写，等于写入位置+1时可读
+ */
+final class AuditQueue {
+    private final int mask;
+    private final Record[] records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** 只由消费者线程读写 */
+    private long head;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    AuditQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        records = new Record[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            records[i] = new Record();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 占用一个槽位，可以在任意线程调用；填写完成后必须调用 {@link #publish(long)}
+     * @return 写入位置，缓冲区已满时返回-1
+     */
+    long claim() {
+        long position = tail.get();
+        while (true) {
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    return position;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return -1;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 获取已占用位置的记录
+     * @param position {@link #claim()} 返回的写入位置
+     * @return 槽位中的记录
+     */
+    Record get(long position) {
+        return records[(int) position & mask];
+    }
+
+    /**
+     * 发布已填写的记录，之后消费者才能读取
+     * @param position {@link #claim()} 返回的写入位置
+     */
+    void publish(long position) {
+        sequences.lazySet((int) position & mask, position + 1);
+    }
+
+    /**
+     * 取出已发布的记录，只能由唯一的消费者线程调用
+     * 记录在处理返回后即可被生产者覆盖，处理时不能保留记录的引用
+     * @param consumer 记录处理
+     * @param max 最多取出的数量
+     * @return 取出的数量
+     */
+    int drain(RecordConsumer consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Record record = records[index];
+            consumer.accept(record);
+            // 释放对掉落物和名称的引用，避免重载后旧的掉落表一直被缓冲区持有
+            record.playerName = null;
+            record.worldName = null;
+            record.tool = null;
+            record.item = null;
+            record.displayName = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * 当前缓冲区中的记录数量（近似值）
+     * @return 记录数量
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(mask + 1, tail.get() - head));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 一条审计记录，字段由生产者直接填写
+     */
+    static final class Record {
+        long time;
+        long playerMost;
+        long playerLeast;
+        String playerName;
+        String worldName;
+        int x;
+        int y;
+        int z;
+        Material tool;
+        int fortuneLevel;
+        Material item;
+        String displayName;
+        int amount;
+    }
+
+    /**
+     * 记录处理
+     */
+    interface RecordConsumer {
+        void accept(Record record);
+    }
+}
@@ -0,0 +1,588 @@
+package com.laoda.universalph;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+
+/**
+ * 自动收割机
+ * 玩家放置带有收割机Lore的方块后，该方块每隔一段时间收获周围范围内的成熟作物，使用与工具收获相同的掉落表，
+ * 掉落物生成在收割机上方，收获记录计入放置者；放置者不在线时收割机不工作
+ * 收割机只读取 {@link MatureCropIndex} 中范围内区块的成熟作物坐标，不扫描方块
+ * 单主线程服务器上由一个每tick运行的任务轮流驱动所有收割机，每tick运行的收割机数量和耗时都有上限，
+ * 到期但超出预算的收割机顺延到下一tick；区域多线程服务器上每台收割机由所在区域的线程单独驱动
+ * 收割机位置保存在插件目录的 harvesters.yml 中
+ */
+public class AutoHarvester implements Runnable, Listener {
+    private final UniversalPotatoHarvest plugin;
+    private final BlockBreakListener breakListener;
+    private final MatureCropIndex index;
+    private final File file;
+    private final Object writeLock = new Object();
+    /** 世界名称（小写）+ 打包坐标 → 收割机 */
+    private final Map<String, Harvester> byLocation = new ConcurrentHashMap<>();
+    private final List<Harvester> harvesters = new CopyOnWriteArrayList<>();
+    private HarvestScheduler.Task task;
+    private long tick;
+    private int cursor;
+
+    public AutoHarvester(UniversalPotatoHarvest plugin, BlockBreakListener breakListener, MatureCropIndex index) {
+        this.plugin = plugin;
+        this.breakListener = breakListener;
+        this.index = index;
+        this.file = new File(plugin.getDataFolder(), "harvesters.yml");
+    }
+
+    /**
+     * 读取已放置的收割机
+     */
+    public void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().log(Level.SEVERE, "无法读取 " + file + "，已放置的收割机不会工作", e);
+            return;
+        }
+
+        for (String line : config.getStringList("harvesters")) {
+            String[] parts = line.split(",");
+            try {
+                register(new Harvester(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                        Integer.parseInt(parts[3]), UUID.fromString(parts[4])));
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("harvesters.yml 中的无效记录: " + line);
+            }
+        }
+        plugin.getLogger().info("已加载 " + harvesters.size() + " 台自动收割机");
+    }
+
+    /**
+     * 启动收割任务
+     */
+    public void start() {
+        if (plugin.getHarvestScheduler().isRegionThreaded()) {
+            for (Harvester harvester : harvesters) {
+                scheduleRegional(harvester);
+            }
+        } else if (task == null) {
+            task = plugin.getHarvestScheduler().runGlobalTimer(this, 1L, 1L);
+        }
+    }
+
+    /**
+     * 停止收割任务并保存收割机位置
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        for (Harvester harvester : harvesters) {
+            harvester.cancel();
+        }
+        writeFile(serialize());
+    }
+
+    /**
+     * 单主线程服务器：从上次停下的位置开始轮询收割机，运行已到期的收割机直到达到本tick的预算
+     */
+    @Override
+    public void run() {
+        tick++;
+        if (harvesters.isEmpty()) {
+            return;
+        }
+        HarvestSnapshot snapshot = plugin.getSnapshot();
+        Settings settings = snapshot.getHarvesterSettings();
+        if (!settings.isEnabled()) {
+            return;
+        }
+        index.refresh(snapshot.getCrops());
+
+        long deadline = System.nanoTime() + settings.getMaxMicrosPerTick() * 1000L;
+        int cycles = settings.getMaxCyclesPerTick();
+        int size = harvesters.size();
+        for (int checked = 0; checked < size && cycles > 0; checked++) {
+            if (cursor >= harvesters.size()) {
+                cursor = 0;
+            }
+            Harvester harvester = harvesters.get(cursor++);
+            if (harvester.nextTick > tick) {
+                continue;
+            }
+            harvester.nextTick = tick + settings.getIntervalTicks();
+            cycle(snapshot, settings, harvester, deadline);
+            cycles--;
+            if (System.nanoTime() >= deadline) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 收割机的一次工作：读取范围内各区块已索引的成熟作物，逐个确认后收获
+     * @param snapshot 当前配置快照
+     * @param settings 收割机设置
+     * @param harvester 收割机
+     * @param deadline 本tick的截止时间
+     */
+    private void cycle(HarvestSnapshot snapshot, Settings settings, Harvester harvester, long deadline) {
+        World world = harvester.resolveWorld(plugin);
+        if (world == null) {
+            return;
+        }
+        int chunkX = harvester.x >> 4;
+        int chunkZ = harvester.z >> 4;
+        if (!world.isChunkLoaded(chunkX, chunkZ) || !plugin.getHarvestScheduler().ownsChunk(world, chunkX, chunkZ)) {
+            return;
+        }
+        if (world.getBlockAt(harvester.x, harvester.y, harvester.z).getType() != settings.getBlock()) {
+            // 收割机方块已被爆炸、活塞等移除
+            unregister(harvester);
+            save();
+            return;
+        }
+        watch(world, harvester, settings.getRadius());
+
+        Player owner = plugin.getServer().getPlayer(harvester.owner);
+        if (owner == null) {
+            return;
+        }
+
+        int radius = settings.getRadius();
+        Location dropLocation = new Location(world, harvester.x + 0.5, harvester.y + 1, harvester.z + 0.5);
+        int harvested = 0;
+        for (int cx = (harvester.x - radius) >> 4; cx <= (harvester.x + radius) >> 4; cx++) {
+            for (int cz = (harvester.z - radius) >> 4; cz <= (harvester.z + radius) >> 4; cz++) {
+                if (!world.isChunkLoaded(cx, cz) || !plugin.getHarvestScheduler().ownsChunk(world, cx, cz)) {
+                    continue;
+                }
+                for (long position : index.positionsIn(world, cx, cz)) {
+                    int x = LongHashSet.unpackX(position);
+                    int y = LongHashSet.unpackY(position);
+                    int z = LongHashSet.unpackZ(position);
+                    if (Math.abs(x - harvester.x) > radius || Math.abs(y - harvester.y) > radius
+                            || Math.abs(z - harvester.z) > radius) {
+                        continue;
+                    }
+                    if (harvest(snapshot, settings, world, owner, x, y, z, dropLocation)
+                            && (++harvested >= settings.getMaxBlocksPerCycle() || System.nanoTime() >= deadline)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 确认坐标处仍是成熟作物后以放置者的名义收获，已失效的坐标从索引中移除
+     * @return 是否收获了作物
+     */
+    private boolean harvest(HarvestSnapshot snapshot, Settings settings, World world, Player owner,
+                            int x, int y, int z, Location dropLocation) {
+        Block block = world.getBlockAt(x, y, z);
+        CropRule rule = snapshot.getCrops().get(block.getType());
+        if (rule == null || !rule.isMature(block.getData())) {
+            index.remove(world, x, y, z);
+            return false;
+        }
+
+        // 与区域收获相同，先触发方块破坏事件以尊重领地等保护插件
+        BlockBreakEvent check = new AreaHarvester.AreaBreakEvent(block, owner);
+        plugin.getServer().getPluginManager().callEvent(check);
+        if (check.isCancelled()) {
+            return false;
+        }
+
+        breakListener.harvestBlock(snapshot, owner, block, rule, dropLocation);
+        if (settings.isReplant()) {
+            block.setData(rule.replant(block.getData()));
+        } else {
+            block.setType(Material.AIR);
+        }
+        index.remove(world, x, y, z);
+        return true;
+    }
+
+    /**
+     * 按当前半径关注收割机范围内的区块，半径变化（配置重载）时先取消原来的关注
+     */
+    private void watch(World world, Harvester harvester, int radius) {
+        if (harvester.watchedRadius == radius) {
+            return;
+        }
+        if (harvester.watchedRadius >= 0) {
+            forEachChunk(harvester, harvester.watchedRadius, (cx, cz) -> index.unwatch(world, cx, cz));
+        }
+        forEachChunk(harvester, radius, (cx, cz) -> index.watch(world, cx, cz));
+        harvester.watchedRadius = radius;
+    }
+
+    private void unwatch(Harvester harvester) {
+        World world = harvester.world;
+        if (world != null && harvester.watchedRadius >= 0) {
+            forEachChunk(harvester, harvester.watchedRadius, (cx, cz) -> index.unwatch(world, cx, cz));
+        }
+        harvester.watchedRadius = -1;
+    }
+
+    private static void forEachChunk(Harvester harvester, int radius, ChunkAction action) {
+        for (int cx = (harvester.x - radius) >> 4; cx <= (harvester.x + radius) >> 4; cx++) {
+            for (int cz = (harvester.z - radius) >> 4; cz <= (harvester.z + radius) >> 4; cz++) {
+                action.accept(cx, cz);
+            }
+        }
+    }
+
+    private void register(Harvester harvester) {
+        if (byLocation.putIfAbsent(harvester.key(), harvester) == null) {
+            // 首次运行时间随机分布在一个间隔内，避免所有收割机在同一tick工作
+            harvester.nextTick = tick + ThreadLocalRandom.current().nextInt(
+                    (int) Math.max(1, plugin.getSnapshot().getHarvesterSettings().getIntervalTicks()));
+            harvesters.add(harvester);
+        }
+    }
+
+    private void unregister(Harvester harvester) {
+        if (byLocation.remove(harvester.key(), harvester)) {
+            harvesters.remove(harvester);
+            harvester.cancel();
+            unwatch(harvester);
+        }
+    }
+
+    /**
+     * 区域多线程服务器：在收割机所在区域的线程上按间隔运行
+     */
+    private void scheduleRegional(final Harvester harvester) {
+        World world = harvester.resolveWorld(plugin);
+        if (world == null) {
+            return;
+        }
+        Settings settings = plugin.getSnapshot().getHarvesterSettings();
+        harvester.task = plugin.getHarvestScheduler().runAtTimer(
+                new Location(world, harvester.x, harvester.y, harvester.z), () -> {
+                    HarvestSnapshot snapshot = plugin.getSnapshot();
+                    Settings current = snapshot.getHarvesterSettings();
+                    if (current.isEnabled()) {
+                        index.refresh(snapshot.getCrops());
+                        cycle(snapshot, current, harvester, System.nanoTime() + current.getMaxMicrosPerTick() * 1000L);
+                    }
+                },
+                1 + ThreadLocalRandom.current().nextInt((int) settings.getIntervalTicks()), settings.getIntervalTicks());
+    }
+
+    /**
+     * 把当前所有收割机的位置在调用线程上序列化，再在异步线程中写入文件
+     */
+    private void save() {
+        final String text = serialize();
+        plugin.getHarvestScheduler().runAsync(() -> writeFile(text));
+    }
+
+    private String serialize() {
+        List<String> lines = new ArrayList<>(harvesters.size());
+        for (Harvester harvester : harvesters) {
+            lines.add(harvester.worldName + "," + harvester.x + "," + harvester.y + "," + harvester.z + ","
+                    + harvester.owner);
+        }
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("harvesters", lines);
+        return config.saveToString();
+    }
+
+    /**
+     * 先写临时文件再原子替换
+     */
+    private void writeFile(String text) {
+        synchronized (writeLock) {
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                Files.write(temp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "无法保存收割机位置到 " + file, e);
+            }
+        }
+    }
+
+    /**
+     * 创建收割机物品，放置后成为一台收割机
+     * @param settings 收割机设置
+     * @return 收割机物品
+     */
+    public ItemStack createHarvesterItem(Settings settings) {
+        ItemStack item = new ItemStack(settings.getBlock());
+        ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(settings.getItemName());
+            List<String> lore = new ArrayList<>();
+            lore.add(settings.getItemLore());
+            lore.add("§e自动收获半径 " + settings.getRadius() + " 格内的成熟作物");
+            meta.setLore(lore);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    private static boolean isHarvesterItem(Settings settings, ItemStack item) {
+        if (item == null || item.getType() != settings.getBlock() || !item.hasItemMeta()) {
+            return false;
+        }
+        ItemMeta meta = item.getItemMeta();
+        return meta.hasLore() && meta.getLore().contains(settings.getItemLore());
+    }
+
+    /**
+     * 收割机数量与成熟作物索引的大小
+     * @return 状态信息
+     */
+    public String status() {
+        return "§7自动收割机: " + harvesters.size() + " 台，" + index.status();
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent event) {
+        Settings settings = plugin.getSnapshot().getHarvesterSettings();
+        if (!isHarvesterItem(settings, event.getItemInHand())) {
+            return;
+        }
+        Player player = event.getPlayer();
+        if (!settings.isEnabled() || !player.hasPermission("universalpotatoharvest.harvester")) {
+            event.setCancelled(true);
+            player.sendMessage("§c你不能放置自动收割机!");
+            return;
+        }
+
+        Block block = event.getBlockPlaced();
+        Harvester harvester = new Harvester(block.getWorld().getName(), block.getX(), block.getY(), block.getZ(),
+                player.getUniqueId());
+        register(harvester);
+        if (plugin.getHarvestScheduler().isRegionThreaded()) {
+            scheduleRegional(harvester);
+        }
+        save();
+        player.sendMessage("§a已放置自动收割机，收获半径 " + settings.getRadius() + " 格");
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
+    public void onBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        Settings settings = plugin.getSnapshot().getHarvesterSettings();
+        if (block.getType() != settings.getBlock() || harvesters.isEmpty()) {
+            return;
+        }
+        Harvester harvester = byLocation.get(Harvester.key(block.getWorld().getName(), block.getX(), block.getY(),
+                block.getZ()));
+        if (harvester == null) {
+            return;
+        }
+
+        // 拆除时返还收割机物品，而不是普通方块
+        unregister(harvester);
+        save();
+        event.setDropItems(false);
+        block.getWorld().dropItemNaturally(block.getLocation(), createHarvesterItem(settings));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        for (Harvester harvester : harvesters) {
+            if (world.equals(harvester.world)) {
+                // 索引会丢弃整个世界，世界重新加载后重新关注
+                harvester.world = null;
+                harvester.watchedRadius = -1;
+            }
+        }
+    }
+
+    private interface ChunkAction {
+        void accept(int chunkX, int chunkZ);
+    }
+
+    /**
+     * 自动收割机设置（config.yml 中的 auto-harvester 部分）
+     */
+    public static final class Settings {
+        private final boolean enabled;
+        private final Material block;
+        private final String itemName;
+        private final String itemLore;
+        private final int radius;
+        private final long intervalTicks;
+        private final int maxCyclesPerTick;
+        private final int maxBlocksPerCycle;
+        private final long maxMicrosPerTick;
+        private final boolean replant;
+
+        public Settings(boolean enabled, Material block, String itemName, String itemLore, int radius,
+                        long intervalTicks, int maxCyclesPerTick, int maxBlocksPerCycle, long maxMicrosPerTick,
+                        boolean replant) {
+            this.enabled = enabled;
+            this.block = block;
+            this.itemName = itemName;
+            this.itemLore = itemLore;
+            this.radius = Math.max(1, Math.min(64, radius));
+            this.intervalTicks = Math.max(1, intervalTicks);
+            this.maxCyclesPerTick = Math.max(1, maxCyclesPerTick);
+            this.maxBlocksPerCycle = Math.max(1, maxBlocksPerCycle);
+            this.maxMicrosPerTick = Math.max(1, maxMicrosPerTick);
+            this.replant = replant;
+        }
+
+        /**
+         * 从配置节读取收割机设置
+         * @param section auto-harvester 配置节，可以为null
+         * @return 收割机设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(false, Material.HOPPER, "§6自动收割机", "§7自动收割机", 16, 100, 8, 64, 2000, true);
+            }
+            Material block = Material.matchMaterial(section.getString("block", "HOPPER"));
+            if (block == null || !block.isBlock()) {
+                UniversalPotatoHarvest.LOGGER.warning("无效的收割机方块: " + section.getString("block") + "，将使用 HOPPER");
+                block = Material.HOPPER;
+            }
+            return new Settings(
+                    section.getBoolean("enabled", false),
+                    block,
+                    section.getString("item-name", "&6自动收割机").replace('&', '§'),
+                    section.getString("item-lore", "&7自动收割机").replace('&', '§'),
+                    section.getInt("radius", 16),
+                    section.getLong("interval-ticks", 100),
+                    section.getInt("max-harvesters-per-tick", 8),
+                    section.getInt("max-blocks-per-cycle", 64),
+                    section.getLong("max-micros-per-tick", 2000),
+                    section.getBoolean("replant", true)
+            );
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Material getBlock() {
+            return block;
+        }
+
+        public String getItemName() {
+            return itemName;
+        }
+
+        public String getItemLore() {
+            return itemLore;
+        }
+
+        public int getRadius() {
+            return radius;
+        }
+
+        public long getIntervalTicks() {
+            return intervalTicks;
+        }
+
+        public int getMaxCyclesPerTick() {
+            return maxCyclesPerTick;
+        }
+
+        public int getMaxBlocksPerCycle() {
+            return maxBlocksPerCycle;
+        }
+
+        public long getMaxMicrosPerTick() {
+            return maxMicrosPerTick;
+        }
+
+        public boolean isReplant() {
+            return replant;
+        }
+    }
+
+    /**
+     * 一台已放置的收割机
+     */
+    private static final class Harvester {
+        private final String worldName;
+        private final int x;
+        private final int y;
+        private final int z;
+        private final UUID owner;
+        private volatile World world;
+        /** 当前已关注区块使用的半径，-1 表示没有关注 */
+        private int watchedRadius = -1;
+        private long nextTick;
+        private volatile HarvestScheduler.Task task;
+
+        private Harvester(String worldName, int x, int y, int z, UUID owner) {
+            this.worldName = worldName;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.owner = owner;
+        }
+
+        private World resolveWorld(UniversalPotatoHarvest plugin) {
+            World current = world;
+            if (current == null) {
+                current = plugin.getServer().getWorld(worldName);
+                world = current;
+            }
+            return current;
+        }
+
+        private String key() {
+            return key(worldName, x, y, z);
+        }
+
+        private static String key(String worldName, int x, int y, int z) {
+            return worldName.toLowerCase() + ':' + LongHashSet.pack(x, y, z);
+        }
+
+        private void cancel() {
+            HarvestScheduler.Task current = task;
+            if (current != null) {
+                current.cancel();
+                task = null;
+            }
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package com.laoda.universalph;
 
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class BlockBreakListener implements Listener {
     private final UniversalPotatoHarvest plugin;
@@ -21,88 +23,142 @@ public class BlockBreakListener implements Listener {
 
     @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onBlockBreak(BlockBreakEvent event) {
-        Player player = event.getPlayer();
-        Block block = event.getBlock();
-
-        // 检查破坏的方块是否是马铃薯作物
-        if (block.getType() != Material.POTATO) {
+        // 区域收获为保护检查触发的事件由区域收获器自行处理，不计入事件统计
+        if (event instanceof AreaHarvester.AreaBreakEvent) {
             return;
         }
 
-        // 检查马铃薯是否完全成熟 (age = 7)
-        // 在1.12.2中，方块数据包含作物的年龄信息
-        if (block.getData() != 7) {
-            return;
-        }
+        HarvestMetrics metrics = plugin.getMetrics();
+        metrics.recordEvent();
+        Block block = event.getBlock();
 
-        // 检查玩家是否持有带有必需Lore的物品
-        ItemStack handItem = player.getInventory().getItemInMainHand();
-        if (handItem == null || handItem.getType() == Material.AIR) {
-            return;
-        }
+        // 本次事件只读取一次配置快照，保证重载期间看到的配置前后一致
+        HarvestSnapshot snapshot = plugin.getSnapshot();
 
-        ItemMeta meta = handItem.getItemMeta();
-        if (meta == null || !meta.hasLore()) {
+        // 按方块材质序号查找作物规则，非作物方块只需一次数组访问
+        CropRule rule = snapshot.getCrops().get(block.getType());
+        if (rule == null) {
+            metrics.recordNotCrop();
             return;
         }
 
-        String requiredLore = plugin.getRequiredLore();
-        boolean hasRequiredLore = false;
+        long start = System.nanoTime();
 
-        // 检查所有Lore行以找到必需的文本
-        for (String line : meta.getLore()) {
-            if (line.contains(requiredLore)) {
-                hasRequiredLore = true;
-                break;
-            }
+        // 检查作物是否完全成熟（成熟阶段由作物规则决定）
+        if (!rule.isMature(block.getData())) {
+            metrics.recordImmature();
+            return;
         }
 
-        if (!hasRequiredLore) {
+        // 检查玩家是否持有此作物接受的收割工具（识别结果按玩家缓存，换手持物品后失效）
+        Player player = event.getPlayer();
+        ItemStack handItem = player.getInventory().getItemInMainHand();
+        int triggerIndex = plugin.getToolCache().getTriggerIndex(player, handItem, snapshot.getTriggerMatcher());
+        if (!rule.accepts(triggerIndex)) {
+            metrics.recordNoTool();
+            metrics.recordHandler(System.nanoTime() - start);
             return;
         }
 
         // 所有条件满足 - 处理自定义掉落
         event.setDropItems(false); // 取消原版掉落
+        int fortuneLevel = plugin.getToolCache().getFortuneLevel(player, handItem, snapshot.getTriggerMatcher());
+        // 工具和汇总权限只在玩家所在的线程上读取，区域收获任务使用这里读取的结果
+        Material tool = handItem.getType();
+        boolean feedback = plugin.getFeedback().accepts(snapshot.getFeedbackSettings(), player);
+        harvestBlock(snapshot, player, block, rule, triggerIndex, fortuneLevel, tool, feedback);
 
-        // 获取玩家所在世界
-        World world = player.getWorld();
-        
-        // 从掉落物管理器获取基于维度的随机掉落物
-        ItemStack customDrop = plugin.getDropsManager().getRandomDrop(world);
-
-        // 如果工具上有时运附魔，则应用其效果
-        int fortuneLevel = handItem.getEnchantmentLevel(Enchantment.LOOT_BONUS_BLOCKS);
-        if (fortuneLevel > 0) {
-            // 简单的时运计算: 掉落数量乘以 (时运等级 + 1)
-            int extraDrops = fortuneLevel + 1;
-            int newAmount = customDrop.getAmount() * extraDrops;
-            customDrop.setAmount(Math.min(newAmount, customDrop.getMaxStackSize()));
+        // 工具配置了区域模式时，把周围的作物交给区域收获器分tick处理
+        AreaHarvester.ToolMode mode = snapshot.getAreaSettings().getMode(triggerIndex);
+        if (mode != null) {
+            plugin.getAreaHarvester().submit(snapshot.getAreaSettings(), player, block, triggerIndex, fortuneLevel,
+                    tool, feedback, mode);
         }
 
-        // 在世界中掉落自定义物品
-        block.getWorld().dropItemNaturally(block.getLocation(), customDrop);
-        
-        // 如果玩家有权限，显示调试信息
-        if (player.hasPermission("universalpotatoharvest.debug")) {
-            String worldType = getWorldTypeName(world);
-            player.sendMessage("§7[UPH] §e在 " + worldType + " 维度收获了特殊土豆!");
-        }
+        metrics.recordHandler(System.nanoTime() - start);
     }
-    
+
+    /**
+     * 为一个已确认可收获的作物方块生成并掉落自定义掉落物
+     * 工具和汇总权限由调用方在玩家所在的线程上读取，此方法可以在作物所在区域的线程上调用
+     * @param snapshot 本次事件读取到的配置快照
+     * @param player 收获的玩家
+     * @param block 作物方块
+     * @param rule 作物规则
+     * @param triggerIndex 玩家所用工具匹配的触发Lore下标
+     * @param fortuneLevel 玩家所用工具的时运等级
+     * @param tool 玩家所用工具的材质，写入审计日志
+     * @param feedback 玩家是否接收收获汇总
+     */
+    public void harvestBlock(HarvestSnapshot snapshot, Player player, Block block, CropRule rule, int triggerIndex,
+                             int fortuneLevel, Material tool, boolean feedback) {
+        // 按工具或掉落表的设置放入玩家背包，或在世界中掉落
+        InventoryDelivery.Mode deliveryMode = snapshot.getDeliverySettings().getMode(triggerIndex,
+                plugin.getDropsManager().getWorldTables().getDeliveryMode(snapshot, rule.getTableGroup(), block.getWorld()));
+        harvest(snapshot, player, block, rule, tool, fortuneLevel, feedback,
+                deliveryMode == InventoryDelivery.Mode.INVENTORY, block.getLocation());
+    }
+
+    /**
+     * 为自动收割机收获的作物方块生成掉落物，全部掉落在收割机处，收获记录计入收割机的放置者
+     * @param snapshot 本次读取到的配置快照
+     * @param owner 收割机的放置者
+     * @param block 作物方块
+     * @param rule 作物规则
+     * @param dropLocation 掉落位置
+     */
+    public void harvestBlock(HarvestSnapshot snapshot, Player owner, Block block, CropRule rule, Location dropLocation) {
+        // 自动收割机的收获不计入玩家的收获汇总
+        harvest(snapshot, owner, block, rule, snapshot.getHarvesterSettings().getBlock(), 0, false, false, dropLocation);
+    }
+
     /**
-     * 获取世界类型的友好名称
-     * @param world 世界对象
-     * @return 世界类型的友好名称
+     * 不读取玩家的权限或背包，可以在作物所在区域的线程上调用
+     * @param tool 写入审计日志的工具
+     * @param feedback 是否计入玩家的收获汇总
      */
-    private String getWorldTypeName(World world) {
-        switch (world.getEnvironment()) {
-            case NETHER:
-                return "下界";
-            case THE_END:
-                return "末地";
-            case NORMAL:
-            default:
-                return "主世界";
+    private void harvest(HarvestSnapshot snapshot, Player player, Block block, CropRule rule, Material tool,
+                         int fortuneLevel, boolean feedback, boolean toInventory, Location dropLocation) {
+        // 获取作物所在世界
+        World world = block.getWorld();
+        
+        // 从作物的掉落表组中获取基于维度的随机掉落物，数量按时运等级从预计算的分布中抽取
+        // 独立判定的掉落表一次收获可能得到0到多个掉落物
+        DropsManager dropsManager = plugin.getDropsManager();
+        List<DropsManager.CustomDrop> drops = new ArrayList<>(2);
+        dropsManager.sampleDrops(snapshot, rule.getTableGroup(), player, block, drops);
+
+        HarvestMetrics metrics = plugin.getMetrics();
+        metrics.recordHarvest();
+        // 玩家的收获计入收获汇总，窗口结束后发送一条消息
+        HarvestFeedback.Session session = feedback
+                ? plugin.getFeedback().begin(snapshot.getFeedbackSettings(), player, world) : null;
+        boolean rare = false;
+        int amount = 0;
+        for (DropsManager.CustomDrop drop : drops) {
+            ItemStack customDrop = dropsManager.createDrop(snapshot, drop, fortuneLevel);
+            metrics.recordDrop(world.getEnvironment(), customDrop.getType(), customDrop.getAmount());
+            rare |= drop != null && drop.isRare();
+            amount += customDrop.getAmount();
+            if (session != null) {
+                session.add(customDrop.getType(), drop != null ? drop.getDisplayName() : null, customDrop.getAmount());
+            }
+
+            // 高价值掉落物写入审计日志（只填写预分配的记录，由后台任务写入文件）
+            if (drop != null && drop.isAudit()) {
+                plugin.getAuditLog().record(snapshot.getAuditSettings(), player, block, tool, fortuneLevel, drop,
+                        customDrop.getAmount());
+            }
+
+            // 启用合并时会在本tick结束后与附近相同物品合并生成
+            if (toInventory) {
+                plugin.getInventoryDelivery().deliver(snapshot, player, block.getLocation(), customDrop);
+            } else {
+                plugin.getDropBatcher().drop(snapshot.getBatchSettings(), dropLocation, customDrop);
+            }
         }
+
+        // 写入玩家收获记录（只进入队列，由后台任务批量写入文件）
+        plugin.getLedger().record(snapshot.getLedgerSettings(), player, world.getEnvironment(), rare, amount);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package com.laoda.universalph;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * 配置文件监视：数据目录中的 config.yml 或 drops.yml 被修改后自动重载
+ * 连续的修改在静默一段时间后才触发一次重载，避免编辑器分多次写入时反复解析半写完的文件
+ * 重载与 /uph reload 相同，在异步线程中解析，只重新编译内容发生变化的掉落表
+ */
+public class ConfigWatcher implements Runnable {
+    private static final String CONFIG_FILE = "config.yml";
+    private static final String DROPS_FILE = "drops.yml";
+
+    private final UniversalPotatoHarvest plugin;
+    private final Path folder;
+    private volatile long debounceMillis;
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+        this.folder = plugin.getDataFolder().toPath();
+    }
+
+    /**
+     * 按设置启动或停止监视，每次加载配置后调用
+     * @param settings 监视设置
+     */
+    public synchronized void apply(Settings settings) {
+        debounceMillis = settings.getDebounceMillis();
+        if (settings.isEnabled()) {
+            start();
+        } else {
+            stop();
+        }
+    }
+
+    private void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法监视配置目录 " + folder + "，自动重载已禁用", e);
+            watchService = null;
+            return;
+        }
+
+        thread = new Thread(this, "UniversalPotatoHarvest-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+        plugin.getLogger().info("已开始监视配置文件，修改后 " + debounceMillis + " 毫秒内没有新的修改即自动重载");
+    }
+
+    /**
+     * 停止监视
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "关闭配置监视失败", e);
+        }
+        thread.interrupt();
+        thread = null;
+        watchService = null;
+    }
+
+    @Override
+    public void run() {
+        WatchService service = watchService;
+        long lastChange = 0;
+        boolean pending = false;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (pending) {
+                    long wait = lastChange + debounceMillis - System.currentTimeMillis();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.MILLISECONDS) : null;
+                } else {
+                    key = service.take();
+                }
+
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        String name = context instanceof Path ? ((Path) context).getFileName().toString() : null;
+                        if (CONFIG_FILE.equals(name) || DROPS_FILE.equals(name)) {
+                            lastChange = System.currentTimeMillis();
+                            pending = true;
+                        }
+                    }
+                    key.reset();
+                    continue;
+                }
+
+                // 静默期结束；上一次重载尚未完成时等待下一个静默期再试
+                if (plugin.reloadPluginConfig(plugin.getServer().getConsoleSender())) {
+                    pending = false;
+                } else {
+                    lastChange = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 监视已停止
+        }
+    }
+
+    /**
+     * 监视设置（config.yml 中的 hot-reload 部分）
+     */
+    public static final class Settings {
+        private final boolean enabled;
+        private final long debounceMillis;
+
+        public Settings(boolean enabled, long debounceMillis) {
+            this.enabled = enabled;
+            this.debounceMillis = Math.max(100, debounceMillis);
+        }
+
+        /**
+         * 从配置节读取监视设置
+         * @param section hot-reload 配置节，可以为null
+         * @return 监视设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(false, 1000);
+            }
+            return new Settings(section.getBoolean("enabled", false), section.getLong("debounce-ms", 1000));
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public long getDebounceMillis() {
+            return debounceMillis;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 作物规则表，按方块材质的序号直接索引
+ * 非作物方块只需一次数组访问即可排除，作物方块直接得到自己的规则和掉落表组
+ */
+public final class CropRegistry {
+    private final CropRule[] rules;
+    private final List<CropRule> ruleList;
+    private final List<String> tableGroups;
+
+    private CropRegistry(CropRule[] rules, List<CropRule> ruleList, List<String> tableGroups) {
+        this.rules = rules;
+        this.ruleList = ruleList;
+        this.tableGroups = tableGroups;
+    }
+
+    /**
+     * 获取方块对应的作物规则
+     * @param block 方块材质
+     * @return 作物规则，不是已启用的作物时返回null
+     */
+    public CropRule get(Material block) {
+        return rules[block.ordinal()];
+    }
+
+    /**
+     * 获取所有已启用的作物规则
+     * @return 不可修改的列表
+     */
+    public List<CropRule> getRules() {
+        return ruleList;
+    }
+
+    /**
+     * 掉落表组的数量，下标0始终是 drops.yml 顶层的共用掉落表
+     * @return 掉落表组数量
+     */
+    public int getTableGroupCount() {
+        return tableGroups.size();
+    }
+
+    /**
+     * 获取掉落表组名称
+     * @param index 掉落表组下标
+     * @return 掉落表组名称（小写），共用掉落表为空字符串
+     */
+    public String getTableGroup(int index) {
+        return tableGroups.get(index);
+    }
+
+    /**
+     * 收集所有触发Lore：trigger-item.lore 在前，各作物单独配置的触发Lore依次追加在后
+     * @param crops crops 配置节，可以为null
+     * @param baseLores trigger-item.lore 中的触发Lore
+     * @return 触发Lore列表
+     */
+    public static List<String> collectTriggerLores(ConfigurationSection crops, List<String> baseLores) {
+        List<String> lores = new ArrayList<>(baseLores);
+        if (crops == null) {
+            return lores;
+        }
+        for (String name : crops.getKeys(false)) {
+            ConfigurationSection crop = crops.getConfigurationSection(name);
+            if (crop == null || !crop.getBoolean("enabled", false)) {
+                continue;
+            }
+            for (String lore : readLores(crop)) {
+                if (!lores.contains(lore)) {
+                    lores.add(lore);
+                }
+            }
+        }
+        return lores;
+    }
+
+    /**
+     * 从配置节构建作物规则表
+     * @param crops crops 配置节，为null时只启用土豆
+     * @param triggerLores 由 {@link #collectTriggerLores} 得到的触发Lore列表
+     * @param baseLoreCount 其中来自 trigger-item.lore 的数量，未单独配置触发Lore的作物接受这些工具
+     * @param tableNames drops.yml 中的全部掉落表名称
+     * @return 作物规则表
+     */
+    public static CropRegistry fromConfig(ConfigurationSection crops, List<String> triggerLores, int baseLoreCount,
+                                          Set<String> tableNames) {
+        CropRule[] rules = new CropRule[Material.values().length];
+        List<CropRule> ruleList = new ArrayList<>();
+        List<String> tableGroups = new ArrayList<>();
+        tableGroups.add("");
+
+        if (crops == null) {
+            CropRule rule = buildRule(KnownCrop.POTATO, null, triggerLores, baseLoreCount, tableNames, tableGroups);
+            rules[rule.getBlock().ordinal()] = rule;
+            ruleList.add(rule);
+        } else {
+            for (String name : crops.getKeys(false)) {
+                ConfigurationSection crop = crops.getConfigurationSection(name);
+                if (crop == null || !crop.getBoolean("enabled", false)) {
+                    continue;
+                }
+                KnownCrop known = KnownCrop.find(name);
+                if (known == null) {
+                    UniversalPotatoHarvest.LOGGER.warning("未知的作物 \"" + name + "\"，可用的作物: potato, carrot, wheat, beetroot, nether_wart, cocoa");
+                    continue;
+                }
+                if (rules[known.block.ordinal()] != null) {
+                    continue;
+                }
+                CropRule rule = buildRule(known, crop, triggerLores, baseLoreCount, tableNames, tableGroups);
+                rules[known.block.ordinal()] = rule;
+                ruleList.add(rule);
+            }
+        }
+
+        return new CropRegistry(rules, Collections.unmodifiableList(ruleList), Collections.unmodifiableList(tableGroups));
+    }
+
+    private static CropRule buildRule(KnownCrop known, ConfigurationSection crop, List<String> triggerLores,
+                                      int baseLoreCount, Set<String> tableNames, List<String> tableGroups) {
+        boolean[] accepted = new boolean[triggerLores.size()];
+        List<String> lores = crop != null ? readLores(crop) : Collections.<String>emptyList();
+        if (lores.isEmpty()) {
+            for (int i = 0; i < baseLoreCount; i++) {
+                accepted[i] = true;
+            }
+        } else {
+            for (String lore : lores) {
+                accepted[triggerLores.indexOf(lore)] = true;
+            }
+        }
+
+        int matureAge = known.maxAge;
+        if (crop != null && crop.contains("mature-age")) {
+            matureAge = Math.max(0, Math.min(known.maxAge, crop.getInt("mature-age")));
+        }
+
+        // 未指定掉落表组时使用与作物同名的一组，没有则使用顶层的共用掉落表
+        String group = crop != null ? crop.getString("drops", known.name) : known.name;
+        group = group.toLowerCase();
+        int groupIndex = 0;
+        if (hasTableGroup(tableNames, group)) {
+            groupIndex = tableGroups.indexOf(group);
+            if (groupIndex < 0) {
+                groupIndex = tableGroups.size();
+                tableGroups.add(group);
+            }
+        } else if (crop != null && crop.contains("drops")) {
+            UniversalPotatoHarvest.LOGGER.warning("drops.yml 中没有掉落表组 " + group + "，作物 " + known.name + " 将使用共用掉落表");
+        }
+
+        return new CropRule(known.name, known.block, known.ageShift, known.ageMask, matureAge, accepted, groupIndex);
+    }
+
+    private static boolean hasTableGroup(Set<String> tableNames, String group) {
+        String prefix = group + DropsManager.TABLE_GROUP_SEPARATOR;
+        for (String tableName : tableNames) {
+            if (tableName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<String> readLores(ConfigurationSection crop) {
+        if (crop.isList("trigger-lore")) {
+            return crop.getStringList("trigger-lore");
+        }
+        String lore = crop.getString("trigger-lore");
+        return lore != null && !lore.isEmpty() ? Collections.singletonList(lore) : Collections.<String>emptyList();
+    }
+
+    /**
+     * 支持的作物及其生长阶段在1.12.2方块数据中的位置
+     */
+    private enum KnownCrop {
+        POTATO("potato", Material.POTATO, 0, 0x7, 7),
+        CARROT("carrot", Material.CARROT, 0, 0x7, 7),
+        WHEAT("wheat", Material.CROPS, 0, 0x7, 7),
+        BEETROOT("beetroot", Material.BEETROOT_BLOCK, 0, 0x3, 3),
+        NETHER_WART("nether_wart", Material.NETHER_WARTS, 0, 0x3, 3),
+        // 可可豆的低两位是朝向，生长阶段在第2-3位
+        COCOA("cocoa", Material.COCOA, 2, 0x3, 2);
+
+        private final String name;
+        private final Material block;
+        private final int ageShift;
+        private final int ageMask;
+        private final int maxAge;
+
+        KnownCrop(String name, Material block, int ageShift, int ageMask, int maxAge) {
+            this.name = name;
+            this.block = block;
+            this.ageShift = ageShift;
+            this.ageMask = ageMask;
+            this.maxAge = maxAge;
+        }
+
+        private static KnownCrop find(String name) {
+            for (KnownCrop crop : values()) {
+                if (crop.name.equalsIgnoreCase(name)) {
+                    return crop;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+
+/**
+ * 一种作物的收获规则：方块类型、成熟判断、可用的触发Lore和使用的掉落表组
+ * 在加载配置时构建，之后不再修改
+ */
+public final class CropRule {
+    private final String name;
+    private final Material block;
+    private final int ageShift;
+    private final int ageMask;
+    private final int matureAge;
+    private final boolean[] acceptedTriggers;
+    private final int tableGroup;
+
+    /**
+     * @param name 作物名称（config.yml 中 crops 下的键）
+     * @param block 作物方块
+     * @param ageShift 生长阶段在方块数据中的起始位
+     * @param ageMask 生长阶段的位掩码（右移后）
+     * @param matureAge 视为成熟的最小生长阶段
+     * @param acceptedTriggers 按触发Lore下标标记此作物接受的收割工具
+     * @param tableGroup 掉落表组下标（见 {@link CropRegistry#getTableGroup(int)}）
+     */
+    public CropRule(String name, Material block, int ageShift, int ageMask, int matureAge,
+                    boolean[] acceptedTriggers, int tableGroup) {
+        this.name = name;
+        this.block = block;
+        this.ageShift = ageShift;
+        this.ageMask = ageMask;
+        this.matureAge = matureAge;
+        this.acceptedTriggers = acceptedTriggers;
+        this.tableGroup = tableGroup;
+    }
+
+    /**
+     * 根据方块数据判断作物是否成熟
+     * @param data 方块数据
+     * @return 是否成熟
+     */
+    public boolean isMature(byte data) {
+        return ((data >> ageShift) & ageMask) >= matureAge;
+    }
+
+    /**
+     * 把方块数据中的生长阶段清零，保留其他位（例如可可豆的朝向），用于收获后重新种下
+     * @param data 方块数据
+     * @return 刚种下时的方块数据
+     */
+    public byte replant(byte data) {
+        return (byte) (data & ~(ageMask << ageShift));
+    }
+
+    /**
+     * 判断收割工具是否可以收获此作物
+     * @param triggerIndex 工具匹配到的触发Lore下标
+     * @return 是否可以收获
+     */
+    public boolean accepts(int triggerIndex) {
+        return triggerIndex >= 0 && triggerIndex < acceptedTriggers.length && acceptedTriggers[triggerIndex];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Material getBlock() {
+        return block;
+    }
+
+    public int getMatureAge() {
+        return matureAge;
+    }
+
+    public int getTableGroup() {
+        return tableGroup;
+    }
+}
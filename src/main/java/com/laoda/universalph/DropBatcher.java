@@ -0,0 +1,265 @@
+package com.laoda.universalph;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 掉落物合并器
+ * 收集同一刷新周期内产生的掉落物，按世界、位置网格和相同物品分组，周期结束时每组只生成一个掉落物实体
+ * 在区域多线程服务器上不进行合并，掉落物直接在所属区域的线程上生成
+ */
+public class DropBatcher implements Runnable {
+    private final UniversalPotatoHarvest plugin;
+    private final Map<CellKey, List<PendingDrop>> pending = new HashMap<>();
+    private HarvestScheduler.Task task;
+    private int ticksSinceFlush;
+
+    public DropBatcher(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 按当前配置启动刷新任务
+     */
+    public void start() {
+        if (plugin.getHarvestScheduler().isRegionThreaded()) {
+            if (plugin.getSnapshot().getBatchSettings().isEnabled()) {
+                plugin.getLogger().warning("区域多线程服务器不支持掉落物合并，drop-batching 设置将被忽略");
+            }
+            return;
+        }
+        apply(plugin.getSnapshot().getBatchSettings());
+    }
+
+    /**
+     * 按配置启动或停止每tick运行一次的刷新任务（实际刷新间隔由配置决定），启动和重载后在主线程调用
+     * 关闭合并时不保留定时任务，并立即生成缓冲区中剩余的掉落物
+     * @param settings 新的合并设置
+     */
+    public void apply(Settings settings) {
+        if (plugin.getHarvestScheduler().isRegionThreaded()) {
+            return;
+        }
+        if (settings.isEnabled()) {
+            if (task == null) {
+                task = plugin.getHarvestScheduler().runGlobalTimer(this, 1L, 1L);
+            }
+        } else if (task != null) {
+            task.cancel();
+            task = null;
+            flush();
+        }
+    }
+
+    /**
+     * 停止刷新任务，并立即生成所有尚未生成的掉落物
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flush();
+    }
+
+    /**
+     * 在指定位置掉落物品；启用合并时放入缓冲区，否则立即生成
+     * @param settings 当前配置快照中的合并设置
+     * @param location 掉落位置
+     * @param item 掉落物品，数量可以超过最大堆叠数量，生成时会拆分为多个物品堆
+     */
+    public void drop(Settings settings, Location location, ItemStack item) {
+        if (!settings.isEnabled() || task == null) {
+            // 收获通常已经在掉落位置所属的线程上，直接生成，不再经过调度器
+            HarvestScheduler scheduler = plugin.getHarvestScheduler();
+            if (scheduler.ownsChunk(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
+                dropSplit(location, item, item.getAmount());
+            } else {
+                scheduler.runAt(location, () -> dropSplit(location, item, item.getAmount()));
+            }
+            return;
+        }
+
+        int cellSize = settings.getMergeRadius();
+        CellKey key = new CellKey(location.getWorld().getUID(),
+                Math.floorDiv(location.getBlockX(), cellSize),
+                Math.floorDiv(location.getBlockY(), cellSize),
+                Math.floorDiv(location.getBlockZ(), cellSize));
+
+        List<PendingDrop> cell = pending.get(key);
+        if (cell == null) {
+            cell = new ArrayList<>(2);
+            pending.put(key, cell);
+        }
+
+        // 同一网格内的不同物品种类很少，线性查找相同物品即可
+        for (PendingDrop existing : cell) {
+            if (existing.item.isSimilar(item)) {
+                existing.amount += item.getAmount();
+                return;
+            }
+        }
+        cell.add(new PendingDrop(location, item));
+    }
+
+    @Override
+    public void run() {
+        Settings settings = plugin.getSnapshot().getBatchSettings();
+        if (++ticksSinceFlush >= settings.getFlushInterval()) {
+            flush();
+        }
+    }
+
+    /**
+     * 生成缓冲区中的全部掉落物，超过最大堆叠数量的部分拆分为多个物品堆
+     */
+    public void flush() {
+        ticksSinceFlush = 0;
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        for (List<PendingDrop> cell : pending.values()) {
+            for (PendingDrop drop : cell) {
+                dropSplit(drop.location, drop.item, drop.amount);
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * 生成指定数量的物品，超过最大堆叠数量的部分拆分为多个物品堆
+     * @param location 掉落位置
+     * @param item 物品模板
+     * @param amount 总数量
+     */
+    private static void dropSplit(Location location, ItemStack item, int amount) {
+        World world = location.getWorld();
+        int maxStackSize = Math.max(1, item.getMaxStackSize());
+        if (amount <= maxStackSize) {
+            item.setAmount(amount);
+            world.dropItemNaturally(location, item);
+            return;
+        }
+
+        int remaining = amount;
+        while (remaining > 0) {
+            ItemStack stack = item.clone();
+            stack.setAmount(Math.min(remaining, maxStackSize));
+            remaining -= stack.getAmount();
+            world.dropItemNaturally(location, stack);
+        }
+    }
+
+    /**
+     * 掉落物合并设置（config.yml 中的 drop-batching 部分）
+     */
+    public static final class Settings {
+        private final boolean enabled;
+        private final int flushInterval;
+        private final int mergeRadius;
+
+        public Settings(boolean enabled, int flushInterval, int mergeRadius) {
+            this.enabled = enabled;
+            this.flushInterval = Math.max(1, flushInterval);
+            this.mergeRadius = Math.max(1, mergeRadius);
+        }
+
+        /**
+         * 从配置节读取合并设置
+         * @param section drop-batching 配置节，可以为null
+         * @return 合并设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return disabled();
+            }
+            return new Settings(
+                    section.getBoolean("enabled", false),
+                    section.getInt("flush-interval-ticks", 1),
+                    section.getInt("merge-radius", 4)
+            );
+        }
+
+        /**
+         * 不合并，直接掉落
+         * @return 关闭合并的设置
+         */
+        public static Settings disabled() {
+            return new Settings(false, 1, 4);
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getFlushInterval() {
+            return flushInterval;
+        }
+
+        public int getMergeRadius() {
+            return mergeRadius;
+        }
+    }
+
+    /**
+     * 合并网格的键：世界 + 按合并半径划分的网格坐标
+     */
+    private static final class CellKey {
+        private final UUID world;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        private CellKey(UUID world, int x, int y, int z) {
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CellKey)) {
+                return false;
+            }
+            CellKey other = (CellKey) o;
+            return x == other.x && y == other.y && z == other.z && world.equals(other.world);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = world.hashCode();
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + z;
+            return result;
+        }
+    }
+
+    /**
+     * 等待生成的一组相同物品，生成位置取该组第一个掉落物的位置
+     */
+    private static final class PendingDrop {
+        private final Location location;
+        private final ItemStack item;
+        private int amount;
+
+        private PendingDrop(Location location, ItemStack item) {
+            this.location = location;
+            this.item = item;
+            this.amount = item.getAmount();
+        }
+    }
+}
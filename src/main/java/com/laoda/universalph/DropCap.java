@@ -0,0 +1,144 @@
+package com.laoda.universalph;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 掉落物的产出上限（drops.yml 中掉落物的 cap 部分）：每名玩家以及全服在滑动时间窗口内最多获得的次数
+ * 计数器属于掉落物本身，重载时配置没有变化的掉落物继续使用原来的计数器
+ * 只有抽中带上限的掉落物时才会检查，全服计数按线程分段，每名玩家的计数器在不活跃后由定时任务清理
+ */
+public final class DropCap {
+    private final int perPlayer;
+    private final int server;
+    private final long windowMillis;
+    private final RateWindow serverWindow;
+    private final ConcurrentHashMap<UUID, RateWindow> playerWindows;
+
+    /**
+     * @param perPlayer 每名玩家在窗口内的上限，0 表示不限
+     * @param server 全服在窗口内的上限，0 表示不限
+     * @param windowMillis 窗口时长（毫秒）
+     */
+    public DropCap(int perPlayer, int server, long windowMillis) {
+        this.perPlayer = perPlayer;
+        this.server = server;
+        this.windowMillis = windowMillis;
+        this.serverWindow = server > 0 ? new RateWindow(windowMillis, Runtime.getRuntime().availableProcessors()) : null;
+        this.playerWindows = perPlayer > 0 ? new ConcurrentHashMap<UUID, RateWindow>() : null;
+    }
+
+    /**
+     * 解析 cap 配置
+     * @param map cap 下的键值
+     * @return 产出上限，没有配置任何上限时返回null
+     * @throws IllegalArgumentException 配置内容无效
+     */
+    public static DropCap fromMap(Map<?, ?> map) {
+        int perPlayer = map.containsKey("per-player") ? Integer.parseInt(String.valueOf(map.get("per-player"))) : 0;
+        int server = map.containsKey("server") ? Integer.parseInt(String.valueOf(map.get("server"))) : 0;
+        if (perPlayer < 0 || server < 0) {
+            throw new IllegalArgumentException("产出上限不能为负数");
+        }
+        long windowMillis = parseWindow(map.containsKey("window") ? String.valueOf(map.get("window")) : "1h");
+        return perPlayer > 0 || server > 0 ? new DropCap(perPlayer, server, windowMillis) : null;
+    }
+
+    /**
+     * 解析窗口时长，格式为 数字+单位（s 秒、m 分钟、h 小时、d 天），例如 30m
+     * @throws IllegalArgumentException 格式无效
+     */
+    static long parseWindow(String value) {
+        String text = value.trim().toLowerCase();
+        long unit;
+        switch (text.isEmpty() ? ' ' : text.charAt(text.length() - 1)) {
+            case 's':
+                unit = 1000L;
+                break;
+            case 'm':
+                unit = 60_000L;
+                break;
+            case 'h':
+                unit = 3_600_000L;
+                break;
+            case 'd':
+                unit = 86_400_000L;
+                break;
+            default:
+                throw new IllegalArgumentException("无效的窗口时长: " + value + "，例如 30s、10m、1h、1d");
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(text.substring(0, text.length() - 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的窗口时长: " + value + "，例如 30s、10m、1h、1d");
+        }
+        if (amount <= 0) {
+            throw new IllegalArgumentException("窗口时长必须大于0: " + value);
+        }
+        return amount * unit;
+    }
+
+    /**
+     * 尝试为一次掉落计数，任一上限已满时不计数并返回false
+     * @param playerId 收获的玩家，为null时只检查全服上限
+     * @param now 当前时间（毫秒）
+     * @return 是否可以掉落
+     */
+    public boolean tryAcquire(UUID playerId, long now) {
+        RateWindow playerWindow = null;
+        if (playerWindows != null && playerId != null) {
+            playerWindow = playerWindows.get(playerId);
+            if (playerWindow == null) {
+                playerWindow = new RateWindow(windowMillis, 1);
+                RateWindow existing = playerWindows.putIfAbsent(playerId, playerWindow);
+                if (existing != null) {
+                    playerWindow = existing;
+                }
+            }
+            if (!playerWindow.tryAcquire(perPlayer, now)) {
+                return false;
+            }
+        }
+
+        if (serverWindow != null && !serverWindow.tryAcquire(server, now)) {
+            if (playerWindow != null) {
+                playerWindow.release(now);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 移除窗口内没有任何计数的玩家计数器
+     * 与收获同时进行时，刚被移除的计数器上最多丢失一次计数
+     * @param now 当前时间（毫秒）
+     * @return 移除的数量
+     */
+    public int evictIdle(long now) {
+        if (playerWindows == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (Map.Entry<UUID, RateWindow> entry : playerWindows.entrySet()) {
+            if (entry.getValue().isIdle(now) && playerWindows.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int getPerPlayer() {
+        return perPlayer;
+    }
+
+    public int getServer() {
+        return server;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+}
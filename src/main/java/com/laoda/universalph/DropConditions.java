@@ -0,0 +1,119 @@
+package com.laoda.universalph;
+
+import org.bukkit.block.Biome;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 掉落物的生效条件（drops.yml 中掉落物的 conditions 部分），所有条件都满足时掉落物才参与抽取
+ * 只保存配置内容；掉落表加载时由 {@link DropTable} 把所有掉落物的条件编译为预先划分好的抽样表
+ */
+public final class DropConditions {
+    /** 没有任何条件 */
+    public static final DropConditions NONE = new DropConditions(null, Integer.MIN_VALUE, Integer.MAX_VALUE, null, null, null);
+
+    private final boolean[] biomes;
+    private final int minY;
+    private final int maxY;
+    private final Boolean night;
+    private final Boolean storm;
+    private final String permission;
+
+    /**
+     * @param biomes 按生物群系序号标记允许的生物群系，null 表示不限
+     * @param minY 最低Y坐标（含）
+     * @param maxY 最高Y坐标（含）
+     * @param night true 只在夜晚，false 只在白天，null 表示不限
+     * @param storm true 只在下雨或雷暴时，false 只在晴天，null 表示不限
+     * @param permission 玩家必须拥有的权限，null 表示不限
+     */
+    public DropConditions(boolean[] biomes, int minY, int maxY, Boolean night, Boolean storm, String permission) {
+        this.biomes = biomes;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.night = night;
+        this.storm = storm;
+        this.permission = permission;
+    }
+
+    /**
+     * 解析 conditions 配置
+     * @param map conditions 下的键值
+     * @return 生效条件
+     * @throws IllegalArgumentException 配置内容无效
+     */
+    public static DropConditions fromMap(Map<?, ?> map) {
+        boolean[] biomes = null;
+        Object biomeValue = map.get("biomes");
+        if (biomeValue != null) {
+            biomes = new boolean[Biome.values().length];
+            List<?> names = biomeValue instanceof List ? (List<?>) biomeValue : Collections.singletonList(biomeValue);
+            for (Object name : names) {
+                try {
+                    biomes[Biome.valueOf(String.valueOf(name).toUpperCase()).ordinal()] = true;
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("无效的生物群系: " + name);
+                }
+            }
+        }
+
+        int minY = map.containsKey("y-min") ? Integer.parseInt(String.valueOf(map.get("y-min"))) : Integer.MIN_VALUE;
+        int maxY = map.containsKey("y-max") ? Integer.parseInt(String.valueOf(map.get("y-max"))) : Integer.MAX_VALUE;
+
+        Boolean night = null;
+        if (map.containsKey("time")) {
+            String time = String.valueOf(map.get("time"));
+            if (!"night".equalsIgnoreCase(time) && !"day".equalsIgnoreCase(time)) {
+                throw new IllegalArgumentException("无效的时间条件: " + time + "，只能是 day 或 night");
+            }
+            night = "night".equalsIgnoreCase(time);
+        }
+
+        Boolean storm = null;
+        if (map.containsKey("weather")) {
+            String weather = String.valueOf(map.get("weather"));
+            if (!"storm".equalsIgnoreCase(weather) && !"clear".equalsIgnoreCase(weather)) {
+                throw new IllegalArgumentException("无效的天气条件: " + weather + "，只能是 storm 或 clear");
+            }
+            storm = "storm".equalsIgnoreCase(weather);
+        }
+
+        String permission = map.containsKey("permission") ? String.valueOf(map.get("permission")) : null;
+        return new DropConditions(biomes, minY, maxY, night, storm, permission);
+    }
+
+    /**
+     * 是否没有任何条件
+     * @return 是否无条件
+     */
+    public boolean isEmpty() {
+        return biomes == null && minY == Integer.MIN_VALUE && maxY == Integer.MAX_VALUE
+                && night == null && storm == null && permission == null;
+    }
+
+    public boolean[] getBiomes() {
+        return biomes;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    public Boolean getNight() {
+        return night;
+    }
+
+    public Boolean getStorm() {
+        return storm;
+    }
+
+    public String getPermission() {
+        return permission;
+    }
+}
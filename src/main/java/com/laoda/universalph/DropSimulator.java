@@ -0,0 +1,322 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 掉落表模拟器
+ * 对已解析的别名表或独立判定表和预计算的时运数量分布（与生产环境相同）进行大量模拟，估算每万次收获的期望产出和波动
+ * 任务按试验次数二分后交给 fork-join 线程池，每个子任务使用从父任务 split 出来的独立随机数流
+ */
+public final class DropSimulator {
+    /** 单个子任务处理的试验次数，低于此数量不再拆分 */
+    private static final long LEAF_TRIALS = 1L << 16;
+    /** 报告中的期望值按多少次收获折算 */
+    public static final int PER_HARVESTS = 10_000;
+
+    private final ForkJoinPool pool;
+
+    public DropSimulator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public DropSimulator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 模拟指定次数的收获
+     * @param table 维度掉落表
+     * @param fortuneLevel 时运等级
+     * @param trials 试验次数
+     * @param seed 随机种子
+     * @return 模拟结果
+     */
+    public Result simulate(AliasTable<DropsManager.CustomDrop> table, int fortuneLevel, long trials, long seed) {
+        if (table.isEmpty() || trials <= 0) {
+            return Result.empty(table.getItems(), fortuneLevel);
+        }
+        return pool.invoke(new SimulationTask(table, null, fortuneLevel, 0, trials, new SplittableRandom(seed)));
+    }
+
+    /**
+     * 模拟指定次数的独立判定收获，每次试验调用一次 {@link IndependentSampler#sample}
+     * @param sampler 独立判定的随机表
+     * @param fortuneLevel 时运等级
+     * @param trials 试验次数
+     * @param seed 随机种子
+     * @return 模拟结果
+     */
+    public Result simulate(IndependentSampler<DropsManager.CustomDrop> sampler, int fortuneLevel, long trials,
+                           long seed) {
+        if (sampler.isEmpty() || trials <= 0) {
+            return Result.empty(sampler.getItems(), fortuneLevel);
+        }
+        return pool.invoke(new SimulationTask(null, sampler, fortuneLevel, 0, trials, new SplittableRandom(seed)));
+    }
+
+    /**
+     * 按掉落表的抽取方式模拟并生成报告，只模拟所有条件都不满足时的掉落物
+     * @param dimension 维度名称
+     * @param dropTable 维度掉落表
+     * @param trials 每个时运等级的试验次数
+     * @param fortuneLevels 需要模拟的时运等级
+     * @param seed 随机种子
+     * @return 报告行
+     */
+    public List<String> report(String dimension, DropTable dropTable, long trials, int[] fortuneLevels, long seed) {
+        if (dropTable.isIndependent()) {
+            return report(dimension, dropTable.getIndependentVariant(0), trials, fortuneLevels, seed);
+        }
+        return report(dimension, dropTable.getBaseTable(), trials, fortuneLevels, seed);
+    }
+
+    /**
+     * 模拟并生成报告（带颜色代码）
+     * @param dimension 维度名称
+     * @param table 维度掉落表
+     * @param trials 每个时运等级的试验次数
+     * @param fortuneLevels 需要模拟的时运等级
+     * @param seed 随机种子
+     * @return 报告行
+     */
+    public List<String> report(String dimension, AliasTable<DropsManager.CustomDrop> table, long trials,
+                               int[] fortuneLevels, long seed) {
+        List<String> lines = new ArrayList<>();
+        lines.add("§6===== 掉落模拟: " + dimension + " (" + trials + " 次/时运等级) =====");
+
+        long start = System.nanoTime();
+        for (int level : fortuneLevels) {
+            Result result = simulate(table, level, trials, seed + level);
+            lines.add("§e时运 " + level + ":");
+            for (Map.Entry<Material, double[]> entry : result.byMaterial().entrySet()) {
+                double[] stats = entry.getValue();
+                lines.add(String.format("  §7%s §f期望 %.2f §7/ 万次，标准差 §f%.2f",
+                        entry.getKey().name(), stats[0], stats[1]));
+            }
+        }
+        lines.add(String.format("§7耗时 %.1f 毫秒，并行度 %d", (System.nanoTime() - start) / 1_000_000.0,
+                pool.getParallelism()));
+        return lines;
+    }
+
+    /**
+     * 模拟独立判定的掉落表并生成报告（带颜色代码）
+     * 一次收获可能同时得到多个掉落物，因此按条目分别报告命中率、每万次收获的期望数量和标准差
+     * @param dimension 维度名称
+     * @param sampler 独立判定的随机表
+     * @param trials 每个时运等级的试验次数
+     * @param fortuneLevels 需要模拟的时运等级
+     * @param seed 随机种子
+     * @return 报告行
+     */
+    public List<String> report(String dimension, IndependentSampler<DropsManager.CustomDrop> sampler, long trials,
+                               int[] fortuneLevels, long seed) {
+        List<String> lines = new ArrayList<>();
+        lines.add("§6===== 掉落模拟: " + dimension + " (独立判定，" + trials + " 次/时运等级) =====");
+
+        long start = System.nanoTime();
+        for (int level : fortuneLevels) {
+            Result result = simulate(sampler, level, trials, seed + level);
+            lines.add(String.format("§e时运 %d: §7平均每次收获 §f%.3f §7个掉落物", level, result.getHitsPerTrial()));
+            List<DropsManager.CustomDrop> drops = sampler.getItems();
+            for (int i = 0; i < drops.size(); i++) {
+                double[] stats = result.byEntry(i);
+                lines.add(String.format("  §7#%d %s §f命中率 %.3f%% §7，期望 §f%.2f §7/ 万次，标准差 §f%.2f",
+                        i + 1, drops.get(i).getMaterial().name(), stats[0] * 100, stats[1], stats[2]));
+            }
+        }
+        lines.add(String.format("§7耗时 %.1f 毫秒，并行度 %d", (System.nanoTime() - start) / 1_000_000.0,
+                pool.getParallelism()));
+        return lines;
+    }
+
+    /**
+     * 一次模拟的结果，按掉落表条目统计
+     */
+    public static final class Result {
+        private final List<DropsManager.CustomDrop> drops;
+        private final int fortuneLevel;
+        private final long trials;
+        private final long[] hits;
+        private final long[] sums;
+        private final long[] squareSums;
+
+        Result(List<DropsManager.CustomDrop> drops, int fortuneLevel, long trials, long[] hits, long[] sums,
+               long[] squareSums) {
+            this.drops = drops;
+            this.fortuneLevel = fortuneLevel;
+            this.trials = trials;
+            this.hits = hits;
+            this.sums = sums;
+            this.squareSums = squareSums;
+        }
+
+        private static Result empty(List<DropsManager.CustomDrop> drops, int fortuneLevel) {
+            return new Result(drops, fortuneLevel, 0, new long[drops.size()], new long[drops.size()],
+                    new long[drops.size()]);
+        }
+
+        public int getFortuneLevel() {
+            return fortuneLevel;
+        }
+
+        public long getTrials() {
+            return trials;
+        }
+
+        /**
+         * 平均每次收获得到的掉落物数量，按权重抽取时总是1（表不为空时）
+         * @return 平均命中数
+         */
+        public double getHitsPerTrial() {
+            long total = 0;
+            for (long hit : hits) {
+                total += hit;
+            }
+            return trials > 0 ? (double) total / trials : 0;
+        }
+
+        /**
+         * 单个条目的统计：命中率、每万次收获的期望数量，以及万次收获总量的标准差
+         * @param index 条目下标
+         * @return {命中率, 期望, 标准差}
+         */
+        public double[] byEntry(int index) {
+            double hitRate = trials > 0 ? (double) hits[index] / trials : 0;
+            double mean = trials > 0 ? (double) sums[index] / trials : 0;
+            double meanSquare = trials > 0 ? (double) squareSums[index] / trials : 0;
+            double variance = Math.max(0, meanSquare - mean * mean);
+            return new double[]{hitRate, mean * PER_HARVESTS, Math.sqrt(variance * PER_HARVESTS)};
+        }
+
+        /**
+         * 按物品材质汇总：每万次收获的期望数量，以及万次收获总量的标准差
+         * 同一次收获只会抽中一个条目，因此同材质条目的和与平方和可以直接相加；只适用于按权重抽取的结果
+         * @return 材质到 {期望, 标准差} 的映射，按掉落表中首次出现的顺序排列
+         */
+        public Map<Material, double[]> byMaterial() {
+            Map<Material, long[]> totals = new LinkedHashMap<>();
+            for (int i = 0; i < drops.size(); i++) {
+                long[] total = totals.get(drops.get(i).getMaterial());
+                if (total == null) {
+                    total = new long[2];
+                    totals.put(drops.get(i).getMaterial(), total);
+                }
+                total[0] += sums[i];
+                total[1] += squareSums[i];
+            }
+
+            Map<Material, double[]> stats = new LinkedHashMap<>();
+            for (Map.Entry<Material, long[]> entry : totals.entrySet()) {
+                double mean = trials > 0 ? (double) entry.getValue()[0] / trials : 0;
+                double meanSquare = trials > 0 ? (double) entry.getValue()[1] / trials : 0;
+                double variance = Math.max(0, meanSquare - mean * mean);
+                stats.put(entry.getKey(), new double[]{mean * PER_HARVESTS, Math.sqrt(variance * PER_HARVESTS)});
+            }
+            return stats;
+        }
+
+        private Result merge(Result other) {
+            for (int i = 0; i < sums.length; i++) {
+                hits[i] += other.hits[i];
+                sums[i] += other.sums[i];
+                squareSums[i] += other.squareSums[i];
+            }
+            return new Result(drops, fortuneLevel, trials + other.trials, hits, sums, squareSums);
+        }
+    }
+
+    /**
+     * 模拟 [from, to) 范围内的试验，范围过大时二分
+     * table 和 sampler 只有一个不为null，分别对应按权重抽取和独立判定
+     */
+    private static final class SimulationTask extends RecursiveTask<Result> {
+        private final AliasTable<DropsManager.CustomDrop> table;
+        private final IndependentSampler<DropsManager.CustomDrop> sampler;
+        private final int fortuneLevel;
+        private final long from;
+        private final long to;
+        private final SplittableRandom random;
+
+        SimulationTask(AliasTable<DropsManager.CustomDrop> table, IndependentSampler<DropsManager.CustomDrop> sampler,
+                       int fortuneLevel, long from, long to, SplittableRandom random) {
+            this.table = table;
+            this.sampler = sampler;
+            this.fortuneLevel = fortuneLevel;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > LEAF_TRIALS) {
+                long mid = from + (to - from) / 2;
+                SimulationTask left = new SimulationTask(table, sampler, fortuneLevel, from, mid, random.split());
+                SimulationTask right = new SimulationTask(table, sampler, fortuneLevel, mid, to, random);
+                left.fork();
+                Result rightResult = right.compute();
+                return left.join().merge(rightResult);
+            }
+
+            List<DropsManager.CustomDrop> drops = sampler != null ? sampler.getItems() : table.getItems();
+            int size = drops.size();
+            FortuneTable[] fortuneTables = new FortuneTable[size];
+            for (int i = 0; i < size; i++) {
+                fortuneTables[i] = drops.get(i).getFortuneTable();
+            }
+
+            long[] hits = new long[size];
+            long[] sums = new long[size];
+            long[] squareSums = new long[size];
+            if (sampler != null) {
+                sampleIndependent(drops, fortuneTables, hits, sums, squareSums);
+            } else {
+                for (long trial = from; trial < to; trial++) {
+                    int index = table.pickIndex(random.nextDouble());
+                    int amount = fortuneTables[index].roll(fortuneLevel, random.nextDouble());
+                    hits[index]++;
+                    sums[index] += amount;
+                    squareSums[index] += (long) amount * amount;
+                }
+            }
+            return new Result(drops, fortuneLevel, to - from, hits, sums, squareSums);
+        }
+
+        /**
+         * 每次试验调用一次独立判定，命中的每个掉落物分别按时运分布抽取数量
+         * IndependentSampler 需要 java.util.Random，由本子任务的随机数流派生一个只在本线程使用的实例
+         */
+        private void sampleIndependent(List<DropsManager.CustomDrop> drops, FortuneTable[] fortuneTables,
+                                       long[] hits, long[] sums, long[] squareSums) {
+            Map<DropsManager.CustomDrop, Integer> indices = new IdentityHashMap<>();
+            for (int i = 0; i < drops.size(); i++) {
+                indices.put(drops.get(i), i);
+            }
+
+            Random leafRandom = new Random(random.nextLong());
+            List<DropsManager.CustomDrop> out = new ArrayList<>();
+            for (long trial = from; trial < to; trial++) {
+                out.clear();
+                sampler.sample(leafRandom, out);
+                for (DropsManager.CustomDrop drop : out) {
+                    int index = indices.get(drop);
+                    int amount = fortuneTables[index].roll(fortuneLevel, leafRandom.nextDouble());
+                    hits[index]++;
+                    sums[index] += amount;
+                    squareSums[index] += (long) amount * amount;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package com.laoda.universalph;
+
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 编译后的掉落表
+ * 加载时把所有掉落物的生效条件去重为一组互不相同的条件，每种条件组合（条件满足情况的位掩码）
+ * 预先编译一张只包含该组合下生效掉落物的别名表，掉落物集合相同的组合共用同一张表
+ * 收获时每个条件只判断一次（生物群系只读取一次，只有配置了权限条件才调用 hasPermission），
+ * 得到位掩码后直接取对应的别名表抽样，不需要在收获时过滤掉落物或重新计算权重
+ * 每种条件组合还预先编译一张只包含稀有掉落物的别名表，保底时直接切换到这张表
+ * 独立判定模式的掉落表中每个掉落物按 chance 分别判定，每种条件组合编译为一张 {@link IndependentSampler}
+ */
+public final class DropTable {
+    /** 一个掉落表中最多允许的不同条件数量，对应最多 2^12 种条件组合 */
+    public static final int MAX_CONDITIONS = 12;
+    /** 夜晚的开始与结束时间（tick） */
+    private static final long NIGHT_START = 13000;
+    private static final long NIGHT_END = 23000;
+
+    /** 没有任何掉落物的空表 */
+    public static final DropTable EMPTY = compile(Collections.<DropsManager.CustomDrop>emptyList(), Mode.WEIGHTED);
+
+    private final List<DropsManager.CustomDrop> drops;
+    private final Mode mode;
+    private final Condition[] conditions;
+    private final AliasTable<DropsManager.CustomDrop>[] variants;
+    private final AliasTable<DropsManager.CustomDrop>[] rareVariants;
+    private final IndependentSampler<DropsManager.CustomDrop>[] independentVariants;
+    private final int distinctVariants;
+
+    private DropTable(List<DropsManager.CustomDrop> drops, Mode mode, Condition[] conditions,
+                      AliasTable<DropsManager.CustomDrop>[] variants,
+                      AliasTable<DropsManager.CustomDrop>[] rareVariants,
+                      IndependentSampler<DropsManager.CustomDrop>[] independentVariants, int distinctVariants) {
+        this.drops = drops;
+        this.mode = mode;
+        this.conditions = conditions;
+        this.variants = variants;
+        this.rareVariants = rareVariants;
+        this.independentVariants = independentVariants;
+        this.distinctVariants = distinctVariants;
+    }
+
+    /**
+     * 编译按权重抽取一个掉落物的掉落表
+     * @param drops 掉落物列表
+     * @return 编译后的掉落表
+     */
+    public static DropTable compile(List<DropsManager.CustomDrop> drops) {
+        return compile(drops, Mode.WEIGHTED);
+    }
+
+    /**
+     * 编译掉落表
+     * 按权重抽取时 chance 作为权重使用（总和不为1时自动归一化），未单独配置 rare 的掉落物按在全部掉落物中的概率确定是否为稀有掉落；
+     * 独立判定时 chance 就是每次收获得到该掉落物的概率，稀有掉落也直接按 chance 判断
+     * 不同条件的数量超过 {@link #MAX_CONDITIONS} 时，引入新条件的掉落物会被忽略
+     * @param drops 掉落物列表
+     * @param mode 抽取方式
+     * @return 编译后的掉落表
+     */
+    @SuppressWarnings("unchecked")
+    public static DropTable compile(List<DropsManager.CustomDrop> drops, Mode mode) {
+        List<Condition> conditions = new ArrayList<>();
+        List<DropsManager.CustomDrop> accepted = new ArrayList<>(drops.size());
+        List<int[]> masks = new ArrayList<>(drops.size());
+        double totalWeight = 0;
+
+        for (DropsManager.CustomDrop drop : drops) {
+            DropConditions spec = drop.getConditions();
+            List<Condition> required = new ArrayList<>(2);
+            List<Condition> forbidden = new ArrayList<>(2);
+            if (spec.getBiomes() != null) {
+                required.add(Condition.biome(spec.getBiomes()));
+            }
+            if (spec.getMinY() != Integer.MIN_VALUE || spec.getMaxY() != Integer.MAX_VALUE) {
+                required.add(Condition.yRange(spec.getMinY(), spec.getMaxY()));
+            }
+            if (spec.getNight() != null) {
+                (spec.getNight() ? required : forbidden).add(Condition.NIGHT);
+            }
+            if (spec.getStorm() != null) {
+                (spec.getStorm() ? required : forbidden).add(Condition.STORM);
+            }
+            if (spec.getPermission() != null) {
+                required.add(Condition.permission(spec.getPermission()));
+            }
+
+            int added = 0;
+            for (Condition condition : required) {
+                added += conditions.contains(condition) ? 0 : 1;
+            }
+            for (Condition condition : forbidden) {
+                added += conditions.contains(condition) ? 0 : 1;
+            }
+            if (conditions.size() + added > MAX_CONDITIONS) {
+                UniversalPotatoHarvest.LOGGER.warning("掉落表中的不同条件超过 " + MAX_CONDITIONS + " 个，掉落物 "
+                        + drop.getMaterial() + " 已忽略");
+                continue;
+            }
+
+            masks.add(new int[]{bits(conditions, required), bits(conditions, forbidden)});
+            accepted.add(drop);
+            totalWeight += Math.max(0, drop.getChance());
+        }
+
+        BitSet rare = new BitSet(accepted.size());
+        for (int i = 0; i < accepted.size(); i++) {
+            DropsManager.CustomDrop drop = accepted.get(i);
+            if (mode == Mode.INDEPENDENT) {
+                drop.resolveRare(Math.max(0, drop.getChance()));
+            } else {
+                drop.resolveRare(totalWeight > 0 ? Math.max(0, drop.getChance()) / totalWeight : 0);
+            }
+            rare.set(i, drop.isRare());
+        }
+
+        // 每种条件组合只包含条件满足的掉落物，掉落物集合相同的组合（以及稀有掉落表）共用一张别名表
+        int combinations = 1 << conditions.size();
+        AliasTable<DropsManager.CustomDrop>[] variants = new AliasTable[combinations];
+        AliasTable<DropsManager.CustomDrop>[] rareVariants = new AliasTable[combinations];
+        IndependentSampler<DropsManager.CustomDrop>[] independentVariants =
+                mode == Mode.INDEPENDENT ? new IndependentSampler[combinations] : null;
+        Map<BitSet, AliasTable<DropsManager.CustomDrop>> compiled = new HashMap<>();
+        Map<BitSet, IndependentSampler<DropsManager.CustomDrop>> compiledIndependent = new HashMap<>();
+        for (int mask = 0; mask < combinations; mask++) {
+            BitSet included = new BitSet(accepted.size());
+            for (int i = 0; i < accepted.size(); i++) {
+                int[] drop = masks.get(i);
+                if ((mask & drop[0]) == drop[0] && (mask & drop[1]) == 0) {
+                    included.set(i);
+                }
+            }
+            variants[mask] = aliasTable(accepted, included, compiled);
+            if (independentVariants != null) {
+                independentVariants[mask] = independentSampler(accepted, included, compiledIndependent);
+            }
+
+            BitSet includedRare = (BitSet) included.clone();
+            includedRare.and(rare);
+            rareVariants[mask] = aliasTable(accepted, includedRare, compiled);
+        }
+
+        return new DropTable(Collections.unmodifiableList(accepted), mode, conditions.toArray(new Condition[0]),
+                variants, rareVariants, independentVariants,
+                independentVariants != null ? compiledIndependent.size() : compiled.size());
+    }
+
+    private static IndependentSampler<DropsManager.CustomDrop> independentSampler(
+            List<DropsManager.CustomDrop> drops, BitSet included,
+            Map<BitSet, IndependentSampler<DropsManager.CustomDrop>> compiled) {
+        IndependentSampler<DropsManager.CustomDrop> sampler = compiled.get(included);
+        if (sampler == null) {
+            List<DropsManager.CustomDrop> items = new ArrayList<>(included.cardinality());
+            double[] probabilities = new double[included.cardinality()];
+            for (int i = included.nextSetBit(0); i >= 0; i = included.nextSetBit(i + 1)) {
+                probabilities[items.size()] = drops.get(i).getChance();
+                items.add(drops.get(i));
+            }
+            sampler = new IndependentSampler<>(items, probabilities);
+            compiled.put(included, sampler);
+        }
+        return sampler;
+    }
+
+    private static AliasTable<DropsManager.CustomDrop> aliasTable(List<DropsManager.CustomDrop> drops, BitSet included,
+                                                                  Map<BitSet, AliasTable<DropsManager.CustomDrop>> compiled) {
+        AliasTable<DropsManager.CustomDrop> table = compiled.get(included);
+        if (table == null) {
+            List<DropsManager.CustomDrop> items = new ArrayList<>(included.cardinality());
+            double[] weights = new double[included.cardinality()];
+            for (int i = included.nextSetBit(0); i >= 0; i = included.nextSetBit(i + 1)) {
+                weights[items.size()] = drops.get(i).getChance();
+                items.add(drops.get(i));
+            }
+            table = new AliasTable<>(items, weights);
+            compiled.put(included, table);
+        }
+        return table;
+    }
+
+    private static int bits(List<Condition> conditions, List<Condition> selected) {
+        int bits = 0;
+        for (Condition condition : selected) {
+            int index = conditions.indexOf(condition);
+            if (index < 0) {
+                index = conditions.size();
+                conditions.add(condition);
+            }
+            bits |= 1 << index;
+        }
+        return bits;
+    }
+
+    /**
+     * 判断本次收获满足哪些条件，返回对应的预编译别名表，可以在任意线程调用
+     * @param player 收获的玩家
+     * @param block 作物方块
+     * @return 别名表
+     */
+    public AliasTable<DropsManager.CustomDrop> select(Player player, Block block) {
+        return variants[mask(player, block)];
+    }
+
+    /**
+     * 判断本次收获满足哪些条件，可以在任意线程调用
+     * @param player 收获的玩家
+     * @param block 作物方块
+     * @return 条件组合，用于 {@link #getVariant(int)} 和 {@link #getRareVariant(int)}
+     */
+    public int mask(Player player, Block block) {
+        if (conditions.length == 0) {
+            return 0;
+        }
+
+        int mask = 0;
+        int biome = -1;
+        for (int i = 0; i < conditions.length; i++) {
+            Condition condition = conditions[i];
+            boolean satisfied;
+            switch (condition.type) {
+                case BIOME:
+                    if (biome < 0) {
+                        biome = block.getBiome().ordinal();
+                    }
+                    satisfied = condition.biomes[biome];
+                    break;
+                case Y_RANGE:
+                    int y = block.getY();
+                    satisfied = y >= condition.minY && y <= condition.maxY;
+                    break;
+                case NIGHT:
+                    long time = block.getWorld().getTime() % 24000;
+                    satisfied = time >= NIGHT_START && time < NIGHT_END;
+                    break;
+                case STORM:
+                    satisfied = block.getWorld().hasStorm();
+                    break;
+                case PERMISSION:
+                default:
+                    satisfied = player.hasPermission(condition.permission);
+                    break;
+            }
+            if (satisfied) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * 获取某个条件组合下的别名表
+     * @param mask 条件组合
+     * @return 别名表
+     */
+    public AliasTable<DropsManager.CustomDrop> getVariant(int mask) {
+        return variants[mask];
+    }
+
+    /**
+     * 获取某个条件组合下只包含稀有掉落物的别名表
+     * @param mask 条件组合
+     * @return 别名表，该组合下没有稀有掉落物时为空表
+     */
+    public AliasTable<DropsManager.CustomDrop> getRareVariant(int mask) {
+        return rareVariants[mask];
+    }
+
+    /**
+     * 获取某个条件组合下独立判定的随机表，只有独立判定模式的掉落表可用
+     * @param mask 条件组合
+     * @return 独立判定的随机表
+     */
+    public IndependentSampler<DropsManager.CustomDrop> getIndependentVariant(int mask) {
+        return independentVariants[mask];
+    }
+
+    /**
+     * 所有条件都不满足时使用的别名表，包含无条件的掉落物以及要求白天或晴天的掉落物
+     * @return 别名表
+     */
+    public AliasTable<DropsManager.CustomDrop> getBaseTable() {
+        return variants[0];
+    }
+
+    /**
+     * 获取表中的全部掉落物（包括有条件的掉落物）
+     * @return 不可修改的掉落物列表
+     */
+    public List<DropsManager.CustomDrop> getDrops() {
+        return drops;
+    }
+
+    /**
+     * 获取抽取方式
+     * @return 抽取方式
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 是否为独立判定模式，此时一次收获可能得到0到多个掉落物
+     * @return 是否独立判定
+     */
+    public boolean isIndependent() {
+        return mode == Mode.INDEPENDENT;
+    }
+
+    /**
+     * 表中是否没有任何掉落物
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return drops.isEmpty();
+    }
+
+    /**
+     * 不同条件的数量
+     * @return 条件数量
+     */
+    public int getConditionCount() {
+        return conditions.length;
+    }
+
+    /**
+     * 实际编译出的不同别名表数量
+     * @return 别名表数量
+     */
+    public int getVariantCount() {
+        return distinctVariants;
+    }
+
+    /**
+     * 掉落表的抽取方式
+     */
+    public enum Mode {
+        /** 按权重抽取，每次收获恰好得到一个掉落物 */
+        WEIGHTED,
+        /** 每个掉落物按 chance 分别判定，每次收获得到0到多个掉落物 */
+        INDEPENDENT;
+
+        /**
+         * 解析抽取方式名称（不区分大小写）
+         * @param name 名称
+         * @param fallback 名称无效时返回的值
+         * @return 抽取方式
+         */
+        public static Mode parse(String name, Mode fallback) {
+            if (name != null) {
+                for (Mode mode : values()) {
+                    if (mode.name().equalsIgnoreCase(name.trim())) {
+                        return mode;
+                    }
+                }
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * 抽取方式设置（config.yml 中的 roll-mode 部分）
+     */
+    public static final class Settings {
+        private final Mode defaultMode;
+        private final Map<String, Mode> tables;
+
+        public Settings(Mode defaultMode, Map<String, Mode> tables) {
+            this.defaultMode = defaultMode;
+            this.tables = tables;
+        }
+
+        /**
+         * 从配置节读取抽取方式设置
+         * @param section roll-mode 配置节，可以为null
+         * @return 抽取方式设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(Mode.WEIGHTED, Collections.<String, Mode>emptyMap());
+            }
+            Mode defaultMode = parse(section.getString("default", "weighted"), Mode.WEIGHTED);
+            Map<String, Mode> tables = new HashMap<>();
+            ConfigurationSection tablesSection = section.getConfigurationSection("tables");
+            if (tablesSection != null) {
+                // 作物专用的掉落表写作 组名/掉落表名
+                for (String key : tablesSection.getKeys(false)) {
+                    tables.put(key.toLowerCase(), parse(tablesSection.getString(key), defaultMode));
+                }
+            }
+            return new Settings(defaultMode, Collections.unmodifiableMap(tables));
+        }
+
+        private static Mode parse(String name, Mode fallback) {
+            Mode mode = Mode.parse(name, null);
+            if (mode == null) {
+                UniversalPotatoHarvest.LOGGER.warning("无效的抽取方式: " + name + "，可选 weighted 或 independent");
+                return fallback;
+            }
+            return mode;
+        }
+
+        /**
+         * 获取掉落表使用的抽取方式
+         * @param tableName 掉落表名称（小写）
+         * @return 抽取方式
+         */
+        public Mode getMode(String tableName) {
+            Mode mode = tables.get(tableName);
+            return mode != null ? mode : defaultMode;
+        }
+
+        public Mode getDefaultMode() {
+            return defaultMode;
+        }
+
+        /**
+         * 获取单独配置了抽取方式的掉落表
+         * @return 掉落表名称（小写）到抽取方式的不可修改映射
+         */
+        public Map<String, Mode> getTables() {
+            return tables;
+        }
+    }
+
+    private enum ConditionType {
+        BIOME, Y_RANGE, NIGHT, STORM, PERMISSION
+    }
+
+    /**
+     * 去重后的单个条件
+     */
+    private static final class Condition {
+        private static final Condition NIGHT = new Condition(ConditionType.NIGHT, null, 0, 0, null);
+        private static final Condition STORM = new Condition(ConditionType.STORM, null, 0, 0, null);
+
+        private final ConditionType type;
+        private final boolean[] biomes;
+        private final int minY;
+        private final int maxY;
+        private final String permission;
+
+        private Condition(ConditionType type, boolean[] biomes, int minY, int maxY, String permission) {
+            this.type = type;
+            this.biomes = biomes;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.permission = permission;
+        }
+
+        private static Condition biome(boolean[] biomes) {
+            return new Condition(ConditionType.BIOME, biomes, 0, 0, null);
+        }
+
+        private static Condition yRange(int minY, int maxY) {
+            return new Condition(ConditionType.Y_RANGE, null, minY, maxY, null);
+        }
+
+        private static Condition permission(String permission) {
+            return new Condition(ConditionType.PERMISSION, null, 0, 0, permission);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Condition)) {
+                return false;
+            }
+            Condition other = (Condition) o;
+            return type == other.type && minY == other.minY && maxY == other.maxY
+                    && Arrays.equals(biomes, other.biomes) && Objects.equals(permission, other.permission);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = type.hashCode();
+            result = 31 * result + Arrays.hashCode(biomes);
+            result = 31 * result + minY;
+            result = 31 * result + maxY;
+            result = 31 * result + Objects.hashCode(permission);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.block.Biome;
+import org.bukkit.enchantments.Enchantment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * 已解析掉落表的二进制缓存（drops.cache）：drops.yml 解析成功后写入，下次启动时内容没有变化就直接读取，跳过YAML解析
+ * 缓存以内容哈希为键，哈希覆盖 drops.yml 原文、时运设置、抽取方式设置以及材质和生物群系的序号表，
+ * 任何一项变化（包括更换服务端版本导致序号变化）都会使缓存失效
+ * 文件格式: magic, 版本, 哈希, 掉落表数, 每个掉落表 {名称, 抽取方式, 掉落物数, 掉落物...}, CRC32
+ * 每个掉落物还保存其配置内容的哈希（{@link #sourceKey}），从缓存启动后的重载仍然可以复用没有变化的掉落物
+ * 附魔按名称保存；时运分布、物品模板和别名表在读取后重新构建，只省去YAML解析和逐项校验
+ */
+public final class DropsCache {
+    private static final int MAGIC = 0x55504844;
+    private static final int VERSION = 3;
+    private static final int KEY_BYTES = 32;
+    private static final int HEADER_BYTES = 4 + 4 + KEY_BYTES;
+
+    private static final byte ABSENT = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final File file;
+    private final Object writeLock = new Object();
+
+    /**
+     * @param file 缓存文件
+     */
+    public DropsCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 计算一次加载的缓存键
+     * @param text drops.yml 原文
+     * @param fortune 时运设置
+     * @param rollSettings 抽取方式设置
+     * @return SHA-256 哈希
+     */
+    public static byte[] key(byte[] text, FortuneTable.Settings fortune, DropTable.Settings rollSettings) {
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+        digest.update(text);
+
+        StringBuilder settings = new StringBuilder();
+        settings.append('\n').append(fortune.getMode()).append(',').append(fortune.getChance())
+                .append(',').append(fortune.getMaxLevel());
+        settings.append('\n').append(rollSettings.getDefaultMode());
+        for (Map.Entry<String, DropTable.Mode> entry : new TreeMap<>(rollSettings.getTables()).entrySet()) {
+            settings.append(',').append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        // 材质和生物群系按序号保存，序号表变化时缓存失效
+        settings.append('\n');
+        for (Material material : Material.values()) {
+            settings.append(material.name()).append(',');
+        }
+        settings.append('\n');
+        for (Biome biome : Biome.values()) {
+            settings.append(biome.name()).append(',');
+        }
+        digest.update(settings.toString().getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    /**
+     * 计算一个掉落物配置内容的哈希，内容和键的顺序都相同的配置得到相同的哈希
+     * @param source 掉落物配置
+     * @return 十六进制的 SHA-256 哈希
+     */
+    public static String sourceKey(Map<?, ?> source) {
+        byte[] hash = sha256().digest(String.valueOf(source).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取缓存，键不一致或文件不完整时返回null
+     * @param key 本次加载的缓存键
+     * @param owner 掉落物所属的管理器
+     * @return 掉落表名称到掉落物列表与抽取方式，按文件中的顺序
+     * @throws IOException 文件无法读取或已损坏
+     */
+    public Map<String, CachedTable> read(byte[] key, DropsManager owner) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 4 || size > Integer.MAX_VALUE) {
+                throw new IOException("掉落表缓存大小无效: " + size);
+            }
+            // 直接读入堆外缓冲区；不使用内存映射，避免 Windows 上映射未释放时无法替换文件
+            buffer = ByteBuffer.allocateDirect((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // 读取到文件末尾
+            }
+            buffer.flip();
+        }
+        if (buffer.limit() < HEADER_BYTES + 4) {
+            throw new IOException("掉落表缓存不完整: " + file);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        byte[] stored = new byte[KEY_BYTES];
+        buffer.get(stored);
+        if (!Arrays.equals(stored, key)) {
+            return null;
+        }
+
+        CRC32 checksum = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.position(0).limit(buffer.limit() - 4);
+        checksum.update(body);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException("掉落表缓存校验失败: " + file);
+        }
+
+        Material[] materials = Material.values();
+        Biome[] biomes = Biome.values();
+        DropTable.Mode[] modes = DropTable.Mode.values();
+        FortuneTable.Mode[] fortuneModes = FortuneTable.Mode.values();
+        int maxLevel = buffer.getInt();
+        int tableCount = buffer.getInt();
+        Map<String, CachedTable> tables = new LinkedHashMap<>();
+        try {
+            for (int t = 0; t < tableCount; t++) {
+                String name = getString(buffer);
+                DropTable.Mode mode = modes[buffer.get()];
+                int dropCount = buffer.getInt();
+                List<DropsManager.CustomDrop> drops = new ArrayList<>(dropCount);
+                List<String> sourceKeys = new ArrayList<>(dropCount);
+                for (int d = 0; d < dropCount; d++) {
+                    sourceKeys.add(getString(buffer));
+                    Material material = materials[buffer.getInt()];
+                    double chance = buffer.getDouble();
+                    int minAmount = buffer.getInt();
+                    int maxAmount = buffer.getInt();
+                    String displayName = getString(buffer);
+
+                    int loreCount = buffer.getInt();
+                    List<String> lore = new ArrayList<>(loreCount);
+                    for (int i = 0; i < loreCount; i++) {
+                        lore.add(getString(buffer));
+                    }
+
+                    int enchantCount = buffer.getInt();
+                    Map<Enchantment, Integer> enchants = new HashMap<>();
+                    for (int i = 0; i < enchantCount; i++) {
+                        Enchantment enchant = Enchantment.getByName(getString(buffer));
+                        int level = buffer.getInt();
+                        if (enchant == null) {
+                            throw new IOException("掉落表缓存中的附魔已不存在");
+                        }
+                        enchants.put(enchant, level);
+                    }
+
+                    FortuneTable.Mode fortuneMode = fortuneModes[buffer.get()];
+                    double fortuneChance = buffer.getDouble();
+                    FortuneTable fortune = FortuneTable.build(fortuneMode, fortuneChance, minAmount, maxAmount, maxLevel);
+                    Boolean rare = getBoolean(buffer.get());
+                    DropConditions conditions = readConditions(buffer, biomes);
+                    DropCap cap = buffer.get() == TRUE
+                            ? new DropCap(buffer.getInt(), buffer.getInt(), buffer.getLong()) : null;
+
+                    boolean audit = buffer.get() == TRUE;
+
+                    drops.add(owner.new CustomDrop(material, chance, minAmount, maxAmount, displayName, lore, enchants,
+                            fortune, rare, conditions, cap, audit));
+                }
+                tables.put(name, new CachedTable(drops, sourceKeys, mode));
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("掉落表缓存已损坏: " + file, e);
+        }
+        if (buffer.remaining() != 4) {
+            throw new IOException("掉落表缓存已损坏: " + file);
+        }
+        return tables;
+    }
+
+    /**
+     * 写入缓存，先写临时文件再原子替换
+     * @param key 本次加载的缓存键
+     * @param maxLevel 时运分布预计算的最高等级
+     * @param tables 掉落表名称到掉落物列表与抽取方式
+     * @throws IOException 写入失败
+     */
+    public void write(byte[] key, int maxLevel, Map<String, CachedTable> tables) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(key);
+        out.writeInt(maxLevel);
+        out.writeInt(tables.size());
+        for (Map.Entry<String, CachedTable> entry : tables.entrySet()) {
+            putString(out, entry.getKey());
+            out.writeByte(entry.getValue().mode.ordinal());
+            out.writeInt(entry.getValue().drops.size());
+            for (int d = 0; d < entry.getValue().drops.size(); d++) {
+                DropsManager.CustomDrop drop = entry.getValue().drops.get(d);
+                putString(out, entry.getValue().sourceKeys.get(d));
+                out.writeInt(drop.getMaterial().ordinal());
+                out.writeDouble(drop.getChance());
+                out.writeInt(drop.getMinAmount());
+                out.writeInt(drop.getMaxAmount());
+                putString(out, drop.getDisplayName());
+
+                List<String> lore = drop.getLore() != null ? drop.getLore() : Collections.<String>emptyList();
+                out.writeInt(lore.size());
+                for (String line : lore) {
+                    putString(out, line);
+                }
+
+                out.writeInt(drop.getEnchants().size());
+                for (Map.Entry<Enchantment, Integer> enchant : drop.getEnchants().entrySet()) {
+                    putString(out, enchant.getKey().getName());
+                    out.writeInt(enchant.getValue());
+                }
+
+                out.writeByte(drop.getFortuneTable().getMode().ordinal());
+                out.writeDouble(drop.getFortuneTable().getChance());
+                out.writeByte(booleanByte(drop.getRareSetting()));
+                writeConditions(out, drop.getConditions());
+                DropCap cap = drop.getCap();
+                out.writeByte(cap != null ? TRUE : ABSENT);
+                if (cap != null) {
+                    out.writeInt(cap.getPerPlayer());
+                    out.writeInt(cap.getServer());
+                    out.writeLong(cap.getWindowMillis());
+                }
+                out.writeByte(drop.isAudit() ? TRUE : FALSE);
+            }
+        }
+        out.flush();
+
+        byte[] data = bytes.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(data, 0, data.length);
+
+        synchronized (writeLock) {
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream stream = new FileOutputStream(temp)) {
+                DataOutputStream fileOut = new DataOutputStream(stream);
+                fileOut.write(data);
+                fileOut.writeInt((int) checksum.getValue());
+                fileOut.flush();
+                stream.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static DropConditions readConditions(ByteBuffer buffer, Biome[] values) {
+        if (buffer.get() == ABSENT) {
+            return DropConditions.NONE;
+        }
+        boolean[] biomes = null;
+        int biomeCount = buffer.getInt();
+        if (biomeCount >= 0) {
+            biomes = new boolean[values.length];
+            for (int i = 0; i < biomeCount; i++) {
+                biomes[buffer.getInt()] = true;
+            }
+        }
+        int minY = buffer.getInt();
+        int maxY = buffer.getInt();
+        Boolean night = getBoolean(buffer.get());
+        Boolean storm = getBoolean(buffer.get());
+        String permission = getString(buffer);
+        return new DropConditions(biomes, minY, maxY, night, storm, permission);
+    }
+
+    private static void writeConditions(DataOutputStream out, DropConditions conditions) throws IOException {
+        if (conditions.isEmpty()) {
+            out.writeByte(ABSENT);
+            return;
+        }
+        out.writeByte(TRUE);
+        boolean[] biomes = conditions.getBiomes();
+        if (biomes == null) {
+            out.writeInt(-1);
+        } else {
+            int count = 0;
+            for (boolean allowed : biomes) {
+                count += allowed ? 1 : 0;
+            }
+            out.writeInt(count);
+            for (int i = 0; i < biomes.length; i++) {
+                if (biomes[i]) {
+                    out.writeInt(i);
+                }
+            }
+        }
+        out.writeInt(conditions.getMinY());
+        out.writeInt(conditions.getMaxY());
+        out.writeByte(booleanByte(conditions.getNight()));
+        out.writeByte(booleanByte(conditions.getStorm()));
+        putString(out, conditions.getPermission());
+    }
+
+    private static byte booleanByte(Boolean value) {
+        return value == null ? ABSENT : value ? TRUE : FALSE;
+    }
+
+    private static Boolean getBoolean(byte value) {
+        return value == ABSENT ? null : Boolean.valueOf(value == TRUE);
+    }
+
+    /**
+     * 字符串保存为 长度 + UTF-8 字节，null 的长度为 -1
+     */
+    private static void putString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 一个掉落表的掉落物、各掉落物配置内容的哈希与抽取方式
+     */
+    public static final class CachedTable {
+        private final List<DropsManager.CustomDrop> drops;
+        private final List<String> sourceKeys;
+        private final DropTable.Mode mode;
+
+        public CachedTable(List<DropsManager.CustomDrop> drops, List<String> sourceKeys, DropTable.Mode mode) {
+            if (drops.size() != sourceKeys.size()) {
+                throw new IllegalArgumentException("掉落物数量与配置哈希数量不一致");
+            }
+            this.drops = drops;
+            this.sourceKeys = sourceKeys;
+            this.mode = mode;
+        }
+
+        public List<DropsManager.CustomDrop> getDrops() {
+            return drops;
+        }
+
+        public List<String> getSourceKeys() {
+            return sourceKeys;
+        }
+
+        public DropTable.Mode getMode() {
+            return mode;
+        }
+    }
+}
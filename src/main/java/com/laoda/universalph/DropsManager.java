@@ -2,219 +2,697 @@ package com.laoda.universalph;
 
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class DropsManager {
+    /** 未配置 rare 时，在所属掉落表中概率低于此值的掉落物记为稀有掉落 */
+    public static final double RARE_PROBABILITY = 0.05;
+    /** 作物专用掉落表组中的掉落表名称格式为 组名/掉落表名 */
+    public static final char TABLE_GROUP_SEPARATOR = '/';
+
     private final UniversalPotatoHarvest plugin;
-    private FileConfiguration dropsConfig;
-    private File dropsFile;
-    private final Map<String, List<CustomDrop>> dimensionDrops = new HashMap<>();
-    private final Random random = new Random();
+    private final Logger logger;
+    private final HarvestMetrics metrics;
+    private final WorldDropTables worldTables;
+    private final PityTracker pity;
+    private final File dropsFile;
+    private final DropsCache cache;
+    /** 上一次加载的各掉落表及其配置内容，只由加载配置的线程读写 */
+    private Map<String, LoadedTable> loadedTables = Collections.emptyMap();
+    private FortuneTable.Settings loadedFortune;
+    /** 上一次加载的缓存键与结果，文件内容和设置都没有变化时直接返回 */
+    private byte[] loadedKey;
+    private Map<String, DropTable> loadedResult;
+    /** 本次加载中无效的掉落物数量，有无效的掉落物时不写入缓存，下次启动仍然解析YAML并给出提示 */
+    private int loadErrors;
+    /** 本次加载中的警告数量（例如无效的时运算法），与无效的掉落物一样，有警告时不写入缓存 */
+    private int loadWarnings;
 
     public DropsManager(UniversalPotatoHarvest plugin) {
         this.plugin = plugin;
-        loadDropsConfig();
+        this.logger = plugin.getLogger();
+        this.metrics = plugin.getMetrics();
+        this.worldTables = new WorldDropTables(plugin);
+        this.pity = new PityTracker(new File(plugin.getDataFolder(), "pity.dat"), logger);
+        this.dropsFile = new File(plugin.getDataFolder(), "drops.yml");
+        this.cache = new DropsCache(new File(plugin.getDataFolder(), "drops.cache"));
     }
 
     /**
-     * 加载掉落物配置文件
+     * 创建不依赖插件实例的掉落物管理器，供离线工具和基准测试在没有服务器的情况下解析掉落表
+     * 此时文件不存在不会自动生成，且只能使用带快照参数的 {@link #getRandomDrop(HarvestSnapshot, World)}
+     * @param dropsFile 掉落物配置文件
+     * @param logger 日志输出
      */
-    public void loadDropsConfig() {
-        if (dropsFile == null) {
-            dropsFile = new File(plugin.getDataFolder(), "drops.yml");
-        }
+    public DropsManager(File dropsFile, Logger logger) {
+        this(dropsFile, null, logger);
+    }
 
-        if (!dropsFile.exists()) {
+    /**
+     * 创建不依赖插件实例的掉落物管理器，并使用指定的掉落表缓存
+     * @param dropsFile 掉落物配置文件
+     * @param cacheFile 掉落表缓存文件，为null时不使用缓存
+     * @param logger 日志输出
+     */
+    public DropsManager(File dropsFile, File cacheFile, Logger logger) {
+        this.plugin = null;
+        this.logger = logger;
+        this.metrics = new HarvestMetrics();
+        this.worldTables = new WorldDropTables(null);
+        this.pity = new PityTracker(null, logger);
+        this.dropsFile = dropsFile;
+        this.cache = cacheFile != null ? new DropsCache(cacheFile) : null;
+    }
+
+    /**
+     * 加载掉落物配置文件，并编译所有维度的别名表
+     * 与上一次加载相比内容没有变化的掉落表直接复用，内容变化的掉落表中没有变化的掉落物也不再重新解析
+     * 此方法不修改任何正在使用的掉落表，可以在异步线程中调用，但同一时间只能有一个线程加载
+     * @param fortune 时运设置，作为没有单独配置时运的掉落物的默认值
+     * @return 维度名称到别名表的不可修改映射
+     * @throws IOException 文件无法读取
+     * @throws InvalidConfigurationException YAML格式错误
+     */
+    public Map<String, DropTable> loadDropsConfig(FortuneTable.Settings fortune)
+            throws IOException, InvalidConfigurationException {
+        return loadDropsConfig(fortune, DropTable.Settings.fromConfig(null));
+    }
+
+    /**
+     * 加载掉落物配置文件，并按各掉落表的抽取方式编译
+     * 文件内容和设置都与上一次加载相同时直接返回上一次的结果；第一次加载时如果掉落表缓存的键一致，则从缓存读取，不解析YAML
+     * @param fortune 时运设置，作为没有单独配置时运的掉落物的默认值
+     * @param rollSettings 各掉落表的抽取方式
+     * @return 维度名称到别名表的不可修改映射
+     * @throws IOException 文件无法读取
+     * @throws InvalidConfigurationException YAML格式错误
+     */
+    public Map<String, DropTable> loadDropsConfig(FortuneTable.Settings fortune, DropTable.Settings rollSettings)
+            throws IOException, InvalidConfigurationException {
+        if (!dropsFile.exists() && plugin != null) {
             plugin.saveResource("drops.yml", false);
         }
 
-        dropsConfig = YamlConfiguration.loadConfiguration(dropsFile);
-        loadDrops();
+        byte[] bytes = Files.readAllBytes(dropsFile.toPath());
+        byte[] key = DropsCache.key(bytes, fortune, rollSettings);
+        if (Arrays.equals(key, loadedKey)) {
+            logger.info("drops.yml 没有变化，继续使用已加载的 " + loadedResult.size() + " 个掉落表");
+            return loadedResult;
+        }
+        if (loadedKey == null && cache != null) {
+            Map<String, DropTable> cached = loadFromCache(key, fortune);
+            if (cached != null) {
+                loadedKey = key;
+                loadedResult = cached;
+                return cached;
+            }
+        }
+
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        SourceLines lines = new SourceLines(text);
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(text);
+        } catch (InvalidConfigurationException e) {
+            logger.severe("drops.yml 格式错误" + lines.describeYamlError(e.getMessage()));
+            throw e;
+        }
+        loadErrors = 0;
+        loadWarnings = 0;
+        Map<String, DropTable> tables = loadDrops(config, fortune, rollSettings, lines);
+        loadedKey = key;
+        loadedResult = tables;
+        if (cache != null && loadErrors == 0 && loadWarnings == 0) {
+            writeCache(key, fortune);
+        }
+        return tables;
     }
 
     /**
-     * 保存掉落物配置到文件
+     * 从掉落表缓存读取所有掉落表并重新编译，缓存不存在、键不一致或已损坏时返回null
+     * 缓存中带有各掉落物配置内容的哈希，之后的重载与解析YAML启动时一样复用没有变化的掉落表和掉落物
+     * @param key 本次加载的缓存键
+     * @param fortune 时运设置
+     * @return 掉落表名称到掉落表的不可修改映射
      */
-    public void saveDropsConfig() {
-        if (dropsConfig == null || dropsFile == null) {
-            return;
+    private Map<String, DropTable> loadFromCache(byte[] key, FortuneTable.Settings fortune) {
+        Map<String, DropsCache.CachedTable> cached;
+        try {
+            cached = cache.read(key, this);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "无法读取掉落表缓存，将重新解析 drops.yml", e);
+            return null;
+        }
+        if (cached == null) {
+            return null;
+        }
+
+        Map<String, LoadedTable> loaded = new HashMap<>();
+        Map<String, DropTable> tables = new HashMap<>();
+        for (Map.Entry<String, DropsCache.CachedTable> entry : cached.entrySet()) {
+            List<CustomDrop> drops = entry.getValue().getDrops();
+            DropTable table = DropTable.compile(drops, entry.getValue().getMode());
+            loaded.put(entry.getKey(), new LoadedTable(entry.getValue().getSourceKeys(),
+                    drops.toArray(new CustomDrop[0]), new boolean[drops.size()], table, 0));
+            tables.put(entry.getKey(), table);
         }
+        loadedTables = loaded;
+        loadedFortune = fortune;
+        logger.info("drops.yml 没有变化，已从缓存加载 " + tables.size() + " 个掉落表");
+        return Collections.unmodifiableMap(tables);
+    }
 
+    /**
+     * 把本次加载的所有有效掉落物写入掉落表缓存，写入失败只影响下次启动的速度
+     * @param key 本次加载的缓存键
+     * @param fortune 时运设置
+     */
+    private void writeCache(byte[] key, FortuneTable.Settings fortune) {
+        Map<String, DropsCache.CachedTable> tables = new TreeMap<>();
+        for (Map.Entry<String, LoadedTable> entry : loadedTables.entrySet()) {
+            LoadedTable table = entry.getValue();
+            List<CustomDrop> drops = new ArrayList<>(table.drops.length);
+            List<String> sourceKeys = new ArrayList<>(table.drops.length);
+            for (int i = 0; i < table.drops.length; i++) {
+                if (table.drops[i] != null) {
+                    drops.add(table.drops[i]);
+                    sourceKeys.add(table.sourceKeys.get(i));
+                }
+            }
+            tables.put(entry.getKey(), new DropsCache.CachedTable(drops, sourceKeys, table.table.getMode()));
+        }
         try {
-            dropsConfig.save(dropsFile);
+            cache.write(key, fortune.getMaxLevel(), tables);
         } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "无法保存掉落物配置到 " + dropsFile, e);
+            logger.log(Level.WARNING, "无法写入掉落表缓存", e);
         }
     }
 
     /**
-     * 从配置文件加载所有维度的掉落物
+     * 从配置文件加载所有维度的掉落物，并编译为别名表
+     * 顶层的列表是共用掉落表；顶层的配置节是某种作物专用的掉落表组，其中的掉落表以 组名/掉落表名 保存
+     * @param dropsConfig 已解析的掉落物配置
+     * @param fortune 默认时运设置
+     * @param rollSettings 各掉落表的抽取方式
+     * @param lines 配置文件原文，用于在错误信息中指出行号
+     * @return 维度名称到别名表的不可修改映射
      */
-    private void loadDrops() {
-        dimensionDrops.clear();
+    private Map<String, DropTable> loadDrops(FileConfiguration dropsConfig, FortuneTable.Settings fortune,
+                                             DropTable.Settings rollSettings, SourceLines lines) {
+        // 默认时运设置变化时所有掉落物的数量分布都可能变化，不能复用上一次的结果
+        Map<String, LoadedTable> previous = fortune.equals(loadedFortune)
+                ? loadedTables : Collections.<String, LoadedTable>emptyMap();
+        Map<String, CustomDrop> previousDrops = new HashMap<>();
+        for (Map.Entry<String, LoadedTable> entry : previous.entrySet()) {
+            LoadedTable table = entry.getValue();
+            List<String> dropKeys = dropKeys(entry.getKey(), table.sourceKeys);
+            for (int i = 0; i < table.drops.length; i++) {
+                // 解析时给出警告的掉落物重新解析，使警告再次出现并阻止写入缓存
+                if (table.drops[i] != null && !table.warned[i]) {
+                    previousDrops.put(dropKeys.get(i), table.drops[i]);
+                }
+            }
+        }
 
-        // 获取配置文件中的所有维度
+        Map<String, LoadedTable> loaded = new HashMap<>();
         for (String dimension : dropsConfig.getKeys(false)) {
-            List<CustomDrop> drops = new ArrayList<>();
-            ConfigurationSection dimensionSection = dropsConfig.getConfigurationSection(dimension);
+            ConfigurationSection groupSection = dropsConfig.getConfigurationSection(dimension);
 
-            if (dimensionSection != null) {
-                for (Map<?, ?> dropMap : dimensionSection.getMapList("")) {
-                    CustomDrop drop = parseDropFromMap(dropMap);
-                    if (drop != null) {
-                        drops.add(drop);
-                    }
+            if (groupSection != null) {
+                for (String groupTable : groupSection.getKeys(false)) {
+                    String tableName = dimension.toLowerCase() + TABLE_GROUP_SEPARATOR + groupTable.toLowerCase();
+                    loaded.put(tableName, loadTable(tableName, groupSection.getMapList(groupTable), fortune,
+                            rollSettings.getMode(tableName), lines, previous.get(tableName), previousDrops));
                 }
             } else {
-                // 如果维度部分不是一个配置节，则尝试作为列表读取
-                List<Map<?, ?>> dropsList = dropsConfig.getMapList(dimension);
-                for (Map<?, ?> dropMap : dropsList) {
-                    CustomDrop drop = parseDropFromMap(dropMap);
-                    if (drop != null) {
-                        drops.add(drop);
-                    }
-                }
+                String tableName = dimension.toLowerCase();
+                loaded.put(tableName, loadTable(tableName, dropsConfig.getMapList(dimension), fortune,
+                        rollSettings.getMode(tableName), lines, previous.get(tableName), previousDrops));
             }
+        }
 
-            dimensionDrops.put(dimension.toLowerCase(), drops);
+        Map<String, DropTable> tables = new HashMap<>();
+        int reused = 0;
+        for (Map.Entry<String, LoadedTable> entry : loaded.entrySet()) {
+            tables.put(entry.getKey(), entry.getValue().table);
+            if (entry.getValue() == previous.get(entry.getKey())) {
+                reused++;
+            }
         }
+        loadedTables = loaded;
+        loadedFortune = fortune;
 
-        plugin.getLogger().info("已加载 " + dimensionDrops.size() + " 个维度的掉落物配置");
+        logger.info("已加载 " + tables.size() + " 个掉落表的掉落物配置"
+                + (reused > 0 ? "，其中 " + reused + " 个没有变化" : ""));
+        return Collections.unmodifiableMap(tables);
     }
 
     /**
-     * 从配置映射中解析单个掉落物
+     * 解析一个掉落表中的所有掉落物，并按生效条件编译为预先划分的别名表
+     * 内容和抽取方式与上一次加载相同时直接返回上一次的结果；有无效的掉落物且存在上一次的结果时，继续使用上一次的结果
+     * @param tableName 掉落表名称
+     * @param source 掉落物配置列表
+     * @param fortune 默认时运设置
+     * @param mode 抽取方式
+     * @param lines 配置文件原文
+     * @param previous 上一次加载的同名掉落表，可以为null
+     * @param previousDrops 上一次加载的所有掉落物，按 {@link #dropKeys} 的复用键索引
+     * @return 加载结果
      */
-    private CustomDrop parseDropFromMap(Map<?, ?> map) {
-        try {
-            String materialName = String.valueOf(map.get("material"));
-            Material material = Material.matchMaterial(materialName);
-            
-            if (material == null) {
-                plugin.getLogger().warning("无效的物品材质: " + materialName);
-                return null;
-            }
+    private LoadedTable loadTable(String tableName, List<Map<?, ?>> source, FortuneTable.Settings fortune,
+                                  DropTable.Mode mode, SourceLines lines, LoadedTable previous,
+                                  Map<String, CustomDrop> previousDrops) {
+        List<String> sourceKeys = new ArrayList<>(source.size());
+        for (Map<?, ?> dropMap : source) {
+            sourceKeys.add(DropsCache.sourceKey(dropMap));
+        }
+        if (previous != null && previous.table.getMode() == mode && sourceKeys.equals(previous.sourceKeys)) {
+            loadErrors += previous.errors;
+            loadWarnings += previous.warnings;
+            return previous;
+        }
 
-            double chance = 1.0;
-            if (map.containsKey("chance")) {
-                chance = Double.parseDouble(String.valueOf(map.get("chance")));
+        List<String> dropKeys = dropKeys(tableName, sourceKeys);
+        CustomDrop[] parsed = new CustomDrop[source.size()];
+        boolean[] warned = new boolean[source.size()];
+        List<CustomDrop> drops = new ArrayList<>(source.size());
+        int errors = 0;
+        for (int i = 0; i < source.size(); i++) {
+            Map<?, ?> dropMap = source.get(i);
+            CustomDrop existing = previousDrops.get(dropKeys.get(i));
+            int warningsBefore = loadWarnings;
+            try {
+                parsed[i] = existing != null ? new CustomDrop(existing) : parseDropFromMap(dropMap, fortune);
+                warned[i] = loadWarnings > warningsBefore;
+                drops.add(parsed[i]);
+            } catch (RuntimeException e) {
+                errors++;
+                String reason = e.getMessage() != null ? e.getMessage() : e.toString();
+                logger.warning("掉落表 " + tableName + " 的第 " + (i + 1) + " 个掉落物无效: " + reason
+                        + lines.describe(lines.locate(tableName, i)));
             }
+        }
 
-            int minAmount = 1;
-            int maxAmount = 1;
-            if (map.containsKey("amount")) {
-                String amountStr = String.valueOf(map.get("amount"));
-                if (amountStr.contains("-")) {
-                    String[] parts = amountStr.split("-");
-                    minAmount = Integer.parseInt(parts[0]);
-                    maxAmount = Integer.parseInt(parts[1]);
-                } else {
-                    minAmount = maxAmount = Integer.parseInt(amountStr);
-                }
+        loadErrors += errors;
+        if (errors > 0 && previous != null) {
+            logger.warning("掉落表 " + tableName + " 有 " + errors + " 个无效的掉落物，继续使用上一次加载成功的版本");
+            return previous;
+        }
+
+        DropTable table = DropTable.compile(drops, mode);
+        if (table.getConditionCount() > 0) {
+            logger.info("掉落表 " + tableName + " 包含 " + table.getConditionCount() + " 个不同的条件，已编译为 "
+                    + table.getVariantCount() + " 张别名表");
+        }
+        return new LoadedTable(sourceKeys, parsed, warned, table, errors);
+    }
+
+    /**
+     * 生成掉落表中各掉落物的复用键：掉落表名称 + 配置内容的哈希 + 同一掉落表中相同内容的序号
+     * 复用的掉落物共用产出上限计数，因此不同掉落表中、或同一掉落表中配置内容相同的掉落物不能复用同一个结果
+     * @param tableName 掉落表名称
+     * @param sourceKeys 各掉落物配置内容的哈希
+     * @return 与 sourceKeys 一一对应的复用键
+     */
+    private static List<String> dropKeys(String tableName, List<String> sourceKeys) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        List<String> keys = new ArrayList<>(sourceKeys.size());
+        for (String sourceKey : sourceKeys) {
+            Integer seen = occurrences.get(sourceKey);
+            int occurrence = seen != null ? seen + 1 : 0;
+            occurrences.put(sourceKey, occurrence);
+            keys.add(tableName + '/' + sourceKey + '#' + occurrence);
+        }
+        return keys;
+    }
+
+    /**
+     * 从配置映射中解析单个掉落物
+     * @throws IllegalArgumentException 材质、数量等配置无效
+     */
+    private CustomDrop parseDropFromMap(Map<?, ?> map, FortuneTable.Settings fortune) {
+        String materialName = String.valueOf(map.get("material"));
+        Material material = Material.matchMaterial(materialName);
+        
+        if (material == null) {
+            throw new IllegalArgumentException("无效的物品材质: " + materialName);
+        }
+
+        double chance = 1.0;
+        if (map.containsKey("chance")) {
+            chance = Double.parseDouble(String.valueOf(map.get("chance")));
+        }
+
+        int minAmount = 1;
+        int maxAmount = 1;
+        if (map.containsKey("amount")) {
+            String amountStr = String.valueOf(map.get("amount"));
+            if (amountStr.contains("-")) {
+                String[] parts = amountStr.split("-");
+                minAmount = Integer.parseInt(parts[0]);
+                maxAmount = Integer.parseInt(parts[1]);
+            } else {
+                minAmount = maxAmount = Integer.parseInt(amountStr);
             }
+        }
 
-            String displayName = map.containsKey("display-name") ? 
-                String.valueOf(map.get("display-name")) : null;
+        String displayName = map.containsKey("display-name") ? 
+            String.valueOf(map.get("display-name")) : null;
 
-            List<String> lore = new ArrayList<>();
-            if (map.containsKey("lore")) {
-                Object loreObj = map.get("lore");
-                if (loreObj instanceof List) {
-                    for (Object line : (List<?>) loreObj) {
-                        lore.add(String.valueOf(line));
-                    }
+        List<String> lore = new ArrayList<>();
+        if (map.containsKey("lore")) {
+            Object loreObj = map.get("lore");
+            if (loreObj instanceof List) {
+                for (Object line : (List<?>) loreObj) {
+                    lore.add(String.valueOf(line));
                 }
             }
+        }
 
-            Map<Enchantment, Integer> enchants = new HashMap<>();
-            if (map.containsKey("enchants")) {
-                Object enchantsObj = map.get("enchants");
-                if (enchantsObj instanceof List) {
-                    for (Object enchantObj : (List<?>) enchantsObj) {
-                        String enchantStr = String.valueOf(enchantObj);
-                        String[] parts = enchantStr.split(":");
-                        if (parts.length == 2) {
-                            Enchantment enchant = Enchantment.getByName(parts[0].toUpperCase());
-                            int level = Integer.parseInt(parts[1]);
-                            if (enchant != null) {
-                                enchants.put(enchant, level);
-                            }
+        Map<Enchantment, Integer> enchants = new HashMap<>();
+        if (map.containsKey("enchants")) {
+            Object enchantsObj = map.get("enchants");
+            if (enchantsObj instanceof List) {
+                for (Object enchantObj : (List<?>) enchantsObj) {
+                    String enchantStr = String.valueOf(enchantObj);
+                    String[] parts = enchantStr.split(":");
+                    if (parts.length == 2) {
+                        Enchantment enchant = Enchantment.getByName(parts[0].toUpperCase());
+                        int level = Integer.parseInt(parts[1]);
+                        if (enchant != null) {
+                            enchants.put(enchant, level);
                         }
                     }
                 }
             }
+        }
 
-            return new CustomDrop(material, chance, minAmount, maxAmount, displayName, lore, enchants);
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.WARNING, "解析掉落物时出错", e);
-            return null;
+        // 单独配置的时运算法优先于 config.yml 中的默认设置
+        FortuneTable.Mode fortuneMode = fortune.getMode();
+        if (map.containsKey("fortune")) {
+            String modeName = String.valueOf(map.get("fortune"));
+            fortuneMode = FortuneTable.Mode.parse(modeName, null);
+            if (fortuneMode == null) {
+                logger.warning("无效的时运算法: " + modeName + "，将使用默认设置");
+                loadWarnings++;
+                fortuneMode = fortune.getMode();
+            }
+        }
+        double fortuneChance = fortune.getChance();
+        if (map.containsKey("fortune-chance")) {
+            fortuneChance = Double.parseDouble(String.valueOf(map.get("fortune-chance")));
+        }
+        FortuneTable fortuneTable = FortuneTable.build(fortuneMode, fortuneChance, minAmount, maxAmount,
+                fortune.getMaxLevel());
+
+        // 是否计入玩家收获记录中的稀有掉落，未配置时按概率判断
+        Boolean rare = map.containsKey("rare") ? Boolean.valueOf(String.valueOf(map.get("rare"))) : null;
+
+        // 生效条件，加载时与同一掉落表中其他掉落物的条件一起编译
+        DropConditions conditions = DropConditions.NONE;
+        Object conditionsObj = map.get("conditions");
+        if (conditionsObj instanceof Map) {
+            conditions = DropConditions.fromMap((Map<?, ?>) conditionsObj);
+        }
+
+        // 产出上限，达到上限时重新抽取
+        DropCap cap = null;
+        Object capObj = map.get("cap");
+        if (capObj instanceof Map) {
+            cap = DropCap.fromMap((Map<?, ?>) capObj);
         }
+
+        // 高价值掉落物，每次掉落都写入审计日志
+        boolean audit = map.containsKey("audit") && Boolean.parseBoolean(String.valueOf(map.get("audit")));
+
+        return new CustomDrop(material, chance, minAmount, maxAmount, displayName, lore, enchants, fortuneTable,
+                rare, conditions, cap, audit);
     }
 
     /**
-     * 根据世界获取随机掉落物
+     * 根据世界获取随机掉落物（使用当前生效的配置快照）
      * @param world 玩家所在的世界
      * @return 随机选择的掉落物，如果没有配置则返回默认掉落物
      */
     public ItemStack getRandomDrop(World world) {
-        String worldType = getWorldType(world);
-        List<CustomDrop> drops = dimensionDrops.get(worldType);
+        return getRandomDrop(plugin.getSnapshot(), world);
+    }
+
+    /**
+     * 根据世界从指定的配置快照中获取随机掉落物
+     * @param snapshot 本次事件读取到的配置快照
+     * @param world 玩家所在的世界
+     * @return 随机选择的掉落物，如果没有配置则返回默认掉落物
+     */
+    public ItemStack getRandomDrop(HarvestSnapshot snapshot, World world) {
+        return getRandomDrop(snapshot, world, 0);
+    }
+
+    /**
+     * 根据世界从指定的配置快照中获取随机掉落物，并按时运等级抽取数量（使用共用掉落表）
+     * @param snapshot 本次事件读取到的配置快照
+     * @param world 玩家所在的世界
+     * @param fortuneLevel 工具的时运等级
+     * @return 随机选择的掉落物，数量可能超过最大堆叠数量，如果没有配置则返回默认掉落物
+     */
+    public ItemStack getRandomDrop(HarvestSnapshot snapshot, World world, int fortuneLevel) {
+        AliasTable<CustomDrop> table = worldTables.get(snapshot, 0, world).getBaseTable();
+        return createDrop(snapshot, sampleWithinCaps(table, null), fortuneLevel);
+    }
+
+    /**
+     * 从作物所在世界使用的掉落表中，按本次收获满足的条件选出预编译的别名表，再按概率抽取一个掉落物
+     * 启用保底时，玩家连续没有稀有掉落的次数越多，越有可能直接从同一条件组合的稀有掉落表中抽取
+     * @param snapshot 本次事件读取到的配置快照
+     * @param tableGroup 作物使用的掉落表组（见 {@link CropRule#getTableGroup()}），0 为共用掉落表
+     * @param player 收获的玩家
+     * @param block 作物方块
+     * @return 抽中的掉落物，没有为该世界配置掉落物或没有满足条件的掉落物时返回null
+     */
+    public CustomDrop sampleDrop(HarvestSnapshot snapshot, int tableGroup, Player player, Block block) {
+        DropTable dropTable = worldTables.get(snapshot, tableGroup, block.getWorld());
+        if (dropTable.isEmpty()) {
+            return null;
+        }
+
+        // 每个条件只判断一次得到条件组合，再根据概率选择掉落物：一次随机数 + 一次数组访问
+        // 每个线程使用自己的随机数生成器，多个区域线程同时收获时互不竞争
+        long start = System.nanoTime();
+        int mask = dropTable.mask(player, block);
+        AliasTable<CustomDrop> table = dropTable.getVariant(mask);
+        AliasTable<CustomDrop> rareTable = dropTable.getRareVariant(mask);
+        PityTracker.Settings pitySettings = snapshot.getPitySettings();
+        UUID playerId = player.getUniqueId();
+
+        // 只有包含稀有掉落物的表参与保底计数
+        boolean counted = pitySettings.isEnabled() && !rareTable.isEmpty();
+        if (counted) {
+            double boost = pitySettings.getBoost(pity.next(playerId));
+            if (boost >= 1 || (boost > 0 && ThreadLocalRandom.current().nextDouble() < boost)) {
+                table = rareTable;
+            }
+        }
 
-        // 如果没有为该维度配置掉落物，则使用默认掉落物
-        if (drops == null || drops.isEmpty()) {
-            return plugin.createCustomDrop();
+        CustomDrop drop = sampleWithinCaps(table, playerId);
+        if (counted && drop != null && drop.isRare()) {
+            pity.reset(playerId);
         }
+        metrics.recordSelection(System.nanoTime() - start);
+        return drop;
+    }
 
-        // 根据概率选择掉落物
-        double totalWeight = 0;
-        for (CustomDrop drop : drops) {
-            totalWeight += drop.getChance();
+    /**
+     * 从作物所在世界使用的掉落表中抽取本次收获的所有掉落物
+     * 按权重抽取的掉落表恰好添加一个结果（可能为null，表示使用默认掉落物）；
+     * 独立判定的掉落表中每个掉落物分别判定，可能添加0到多个结果，已达到产出上限的掉落物直接跳过
+     * 启用保底时，独立判定的掉落表在没有命中稀有掉落物时，按保底概率额外从稀有掉落表中抽取一个
+     * @param snapshot 本次事件读取到的配置快照
+     * @param tableGroup 作物使用的掉落表组，0 为共用掉落表
+     * @param player 收获的玩家
+     * @param block 作物方块
+     * @param out 抽中的掉落物
+     */
+    public void sampleDrops(HarvestSnapshot snapshot, int tableGroup, Player player, Block block,
+                            List<CustomDrop> out) {
+        DropTable dropTable = worldTables.get(snapshot, tableGroup, block.getWorld());
+        if (!dropTable.isIndependent()) {
+            out.add(sampleDrop(snapshot, tableGroup, player, block));
+            return;
         }
 
-        double randomValue = random.nextDouble() * totalWeight;
-        double currentWeight = 0;
+        long start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int mask = dropTable.mask(player, block);
+        UUID playerId = player.getUniqueId();
+        int first = out.size();
+        dropTable.getIndependentVariant(mask).sample(random, out);
 
-        for (CustomDrop drop : drops) {
-            currentWeight += drop.getChance();
-            if (randomValue <= currentWeight) {
-                return drop.createItemStack();
+        // 只对命中的带上限掉落物计数，达到上限的掉落物本次不掉落
+        boolean rare = false;
+        long now = 0;
+        for (int i = out.size() - 1; i >= first; i--) {
+            CustomDrop drop = out.get(i);
+            if (drop.cap != null) {
+                if (now == 0) {
+                    now = System.currentTimeMillis();
+                }
+                if (!drop.cap.tryAcquire(playerId, now)) {
+                    metrics.recordCapped();
+                    out.remove(i);
+                    continue;
+                }
             }
+            rare |= drop.isRare();
         }
 
-        // 如果没有选中任何掉落物（理论上不应该发生），则返回默认掉落物
-        return plugin.createCustomDrop();
+        AliasTable<CustomDrop> rareTable = dropTable.getRareVariant(mask);
+        PityTracker.Settings pitySettings = snapshot.getPitySettings();
+        if (pitySettings.isEnabled() && !rareTable.isEmpty()) {
+            if (rare) {
+                pity.reset(playerId);
+            } else {
+                double boost = pitySettings.getBoost(pity.next(playerId));
+                if (boost >= 1 || (boost > 0 && random.nextDouble() < boost)) {
+                    CustomDrop drop = sampleWithinCaps(rareTable, playerId);
+                    if (drop != null) {
+                        out.add(drop);
+                        pity.reset(playerId);
+                    }
+                }
+            }
+        }
+        metrics.recordSelection(System.nanoTime() - start);
     }
 
     /**
-     * 获取世界类型（主世界、下界或末地）
-     * @param world 世界对象
-     * @return 世界类型的字符串表示
+     * 按概率抽取一个掉落物，结果等同于在未达到产出上限的掉落物中按原有权重抽取
+     * 先用别名表抽取一次；抽中已达到上限的掉落物时，把它排除后在剩余的掉落物中按权重逐个累加重新抽取，
+     * 直到抽中未达到上限的掉落物，所有掉落物都达到上限时返回null（使用默认掉落物）
+     * @param table 别名表
+     * @param playerId 收获的玩家，为null时只检查全服上限
+     * @return 掉落物，表为空或都达到上限时返回null
      */
-    private String getWorldType(World world) {
-        switch (world.getEnvironment()) {
-            case NETHER:
-                return "nether";
-            case THE_END:
-                return "the_end";
-            case NORMAL:
-            default:
-                return "world";
+    private CustomDrop sampleWithinCaps(AliasTable<CustomDrop> table, UUID playerId) {
+        if (table.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<CustomDrop> items = table.getItems();
+        int index = table.pickIndex(random.nextDouble());
+        CustomDrop drop = items.get(index);
+        if (drop.cap == null) {
+            return drop;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean[] capped = null;
+        double remaining = 1.0;
+        while (!drop.cap.tryAcquire(playerId, now)) {
+            metrics.recordCapped();
+            if (capped == null) {
+                capped = new boolean[items.size()];
+            }
+            capped[index] = true;
+            remaining -= table.getProbability(index);
+
+            // 在尚未发现达到上限的掉落物中按权重抽取
+            index = -1;
+            double target = random.nextDouble() * remaining;
+            for (int i = 0; i < items.size(); i++) {
+                if (capped[i] || table.getProbability(i) <= 0) {
+                    continue;
+                }
+                index = i;
+                target -= table.getProbability(i);
+                if (target < 0) {
+                    break;
+                }
+            }
+            if (index < 0) {
+                return null;
+            }
+            drop = items.get(index);
+            if (drop.cap == null) {
+                return drop;
+            }
         }
+        return drop;
+    }
+
+    /**
+     * 清理所有掉落物上限中不活跃玩家的计数器，可以在异步线程中调用
+     * @param snapshot 当前生效的配置快照
+     */
+    public void evictIdleCaps(HarvestSnapshot snapshot) {
+        long now = System.currentTimeMillis();
+        for (String tableName : snapshot.getTableNames()) {
+            for (CustomDrop drop : snapshot.getDimensionTable(tableName).getDrops()) {
+                if (drop.cap != null) {
+                    drop.cap.evictIdle(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * 为抽中的掉落物生成物品，数量按时运等级从预计算的分布中抽取
+     * @param snapshot 本次事件读取到的配置快照
+     * @param drop 抽中的掉落物，为null时使用默认掉落物
+     * @param fortuneLevel 工具的时运等级
+     * @return 物品，数量可能超过最大堆叠数量
+     */
+    public ItemStack createDrop(HarvestSnapshot snapshot, CustomDrop drop, int fortuneLevel) {
+        // 如果没有为该世界配置掉落物，则使用默认掉落物
+        if (drop == null) {
+            ItemStack item = snapshot.createDefaultDrop();
+            item.setAmount(snapshot.getDefaultFortune().roll(fortuneLevel, ThreadLocalRandom.current().nextDouble()));
+            return item;
+        }
+
+        long start = System.nanoTime();
+        ItemStack item = drop.createItemStack(fortuneLevel);
+        metrics.recordItemCreation(System.nanoTime() - start);
+        return item;
+    }
+
+    /**
+     * 获取按世界缓存的掉落表
+     * @return 世界掉落表缓存
+     */
+    public WorldDropTables getWorldTables() {
+        return worldTables;
+    }
+
+    /**
+     * 获取稀有掉落保底计数
+     * @return 保底计数
+     */
+    public PityTracker getPity() {
+        return pity;
     }
 
     /**
      * 自定义掉落物类
+     * 物品模板（颜色代码、Lore、附魔）在加载时构建一次，收获时只需克隆并设置数量
      */
     public class CustomDrop {
         private final Material material;
@@ -224,9 +702,18 @@ public class DropsManager {
         private final String displayName;
         private final List<String> lore;
         private final Map<Enchantment, Integer> enchants;
+        private final FortuneTable fortune;
+        private final Boolean rareSetting;
+        private final DropConditions conditions;
+        private final DropCap cap;
+        private final boolean audit;
+        private final ItemStack template;
+        private boolean rare;
 
         public CustomDrop(Material material, double chance, int minAmount, int maxAmount, 
-                          String displayName, List<String> lore, Map<Enchantment, Integer> enchants) {
+                          String displayName, List<String> lore, Map<Enchantment, Integer> enchants,
+                          FortuneTable fortune, Boolean rare, DropConditions conditions, DropCap cap,
+                          boolean audit) {
             this.material = material;
             this.chance = chance;
             this.minAmount = minAmount;
@@ -234,6 +721,32 @@ public class DropsManager {
             this.displayName = displayName;
             this.lore = lore;
             this.enchants = enchants;
+            this.fortune = fortune;
+            this.rareSetting = rare;
+            this.conditions = conditions;
+            this.cap = cap;
+            this.audit = audit;
+            this.template = buildTemplate();
+        }
+
+        /**
+         * 复用配置内容没有变化的掉落物：共用物品模板、数量分布和产出上限计数，稀有标记在编译新的掉落表时重新确定
+         * @param source 上一次加载的掉落物
+         */
+        CustomDrop(CustomDrop source) {
+            this.material = source.material;
+            this.chance = source.chance;
+            this.minAmount = source.minAmount;
+            this.maxAmount = source.maxAmount;
+            this.displayName = source.displayName;
+            this.lore = source.lore;
+            this.enchants = source.enchants;
+            this.fortune = source.fortune;
+            this.rareSetting = source.rareSetting;
+            this.conditions = source.conditions;
+            this.cap = source.cap;
+            this.audit = source.audit;
+            this.template = source.template;
         }
 
         public Material getMaterial() {
@@ -244,18 +757,88 @@ public class DropsManager {
             return chance;
         }
 
+        public int getMinAmount() {
+            return minAmount;
+        }
+
+        public int getMaxAmount() {
+            return maxAmount;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public List<String> getLore() {
+            return lore;
+        }
+
+        public Map<Enchantment, Integer> getEnchants() {
+            return enchants;
+        }
+
         /**
-         * 创建物品堆
-         * @return 根据配置创建的物品堆
+         * 获取配置中的 rare 设置
+         * @return 是否稀有，未配置时为null
          */
-        public ItemStack createItemStack() {
-            // 计算随机数量
-            int amount = minAmount;
-            if (maxAmount > minAmount) {
-                amount = minAmount + random.nextInt(maxAmount - minAmount + 1);
-            }
+        Boolean getRareSetting() {
+            return rareSetting;
+        }
+
+        /**
+         * 是否为稀有掉落（计入玩家收获记录）
+         * @return 是否稀有
+         */
+        public boolean isRare() {
+            return rare;
+        }
+
+        /**
+         * 获取掉落物的生效条件
+         * @return 生效条件，没有条件时为 {@link DropConditions#NONE}
+         */
+        public DropConditions getConditions() {
+            return conditions;
+        }
+
+        /**
+         * 获取掉落物的产出上限
+         * @return 产出上限，没有上限时为null
+         */
+        public DropCap getCap() {
+            return cap;
+        }
+
+        /**
+         * 是否写入审计日志（配置中的 audit）
+         * @return 是否审计
+         */
+        public boolean isAudit() {
+            return audit;
+        }
+
+        /**
+         * 编译掉落表时确定是否为稀有掉落，配置中的 rare 优先
+         * @param probability 在所属掉落表中的概率
+         */
+        void resolveRare(double probability) {
+            rare = rareSetting != null ? rareSetting : probability < RARE_PROBABILITY;
+        }
+
+        /**
+         * 获取预计算的各时运等级数量分布
+         * @return 数量分布
+         */
+        public FortuneTable getFortuneTable() {
+            return fortune;
+        }
 
-            ItemStack item = new ItemStack(material, amount);
+        /**
+         * 构建带有名称、Lore和附魔的物品模板
+         * @return 数量为1的物品模板
+         */
+        private ItemStack buildTemplate() {
+            ItemStack item = new ItemStack(material, 1);
             ItemMeta meta = item.getItemMeta();
 
             if (meta != null) {
@@ -283,5 +866,177 @@ public class DropsManager {
 
             return item;
         }
+
+        /**
+         * 创建物品堆（不受时运影响）
+         * @return 根据配置创建的物品堆
+         */
+        public ItemStack createItemStack() {
+            return createItemStack(0);
+        }
+
+        /**
+         * 创建物品堆，数量从预计算的时运分布中抽取
+         * @param fortuneLevel 时运等级
+         * @return 根据配置创建的物品堆，数量可能超过最大堆叠数量
+         */
+        public ItemStack createItemStack(int fortuneLevel) {
+            ItemStack item = template.clone();
+            item.setAmount(fortune.roll(fortuneLevel, ThreadLocalRandom.current().nextDouble()));
+            return item;
+        }
+    }
+
+    /**
+     * 一个掉落表的加载结果，下次加载时用于判断哪些掉落表和掉落物需要重新编译
+     */
+    private static final class LoadedTable {
+        /** 各掉落物配置内容的哈希，见 {@link DropsCache#sourceKey} */
+        private final List<String> sourceKeys;
+        /** 与 sourceKeys 一一对应，无效的掉落物为null */
+        private final CustomDrop[] drops;
+        /** 与 sourceKeys 一一对应，解析时给出警告的掉落物为true */
+        private final boolean[] warned;
+        private final DropTable table;
+        /** 无效的掉落物数量 */
+        private final int errors;
+        /** 给出警告的掉落物数量 */
+        private final int warnings;
+
+        private LoadedTable(List<String> sourceKeys, CustomDrop[] drops, boolean[] warned, DropTable table,
+                            int errors) {
+            this.sourceKeys = sourceKeys;
+            this.drops = drops;
+            this.warned = warned;
+            this.table = table;
+            this.errors = errors;
+            int warnings = 0;
+            for (boolean w : warned) {
+                if (w) {
+                    warnings++;
+                }
+            }
+            this.warnings = warnings;
+        }
+    }
+
+    /**
+     * drops.yml 的原文，用于在错误信息中附上出错的行
+     */
+    private static final class SourceLines {
+        private static final Pattern YAML_LINE = Pattern.compile("line (\\d+)");
+
+        private final String[] lines;
+
+        private SourceLines(String text) {
+            this.lines = text.split("\\r?\\n", -1);
+        }
+
+        /**
+         * 查找掉落表中第 index 个掉落物所在的行
+         * @param tableName 掉落表名称，作物专用的掉落表带有组名前缀
+         * @param index 掉落物下标
+         * @return 行号（从1开始），找不到时返回0
+         */
+        private int locate(String tableName, int index) {
+            int separator = tableName.indexOf(TABLE_GROUP_SEPARATOR);
+            String[] path = separator < 0 ? new String[]{tableName}
+                    : new String[]{tableName.substring(0, separator), tableName.substring(separator + 1)};
+
+            int line = 0;
+            int indent = -1;
+            for (String key : path) {
+                line = findKey(key, line, indent);
+                if (line < 0) {
+                    return 0;
+                }
+                indent = indentOf(lines[line]);
+                line++;
+            }
+
+            // 只数与第一个列表项缩进相同的 "- "，跳过 lore 等嵌套列表
+            int itemIndent = -1;
+            int count = 0;
+            for (int i = line; i < lines.length; i++) {
+                String trimmed = lines[i].trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                int current = indentOf(lines[i]);
+                if (trimmed.startsWith("-")) {
+                    if (itemIndent < 0) {
+                        itemIndent = current;
+                    }
+                    if (current == itemIndent && count++ == index) {
+                        return i + 1;
+                    }
+                } else if (current <= indent) {
+                    break;
+                }
+            }
+            return 0;
+        }
+
+        private int findKey(String key, int from, int parentIndent) {
+            for (int i = from; i < lines.length; i++) {
+                String trimmed = lines[i].trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                int current = indentOf(lines[i]);
+                if (current <= parentIndent) {
+                    return -1;
+                }
+                if ((parentIndent >= 0 || current == 0) && trimmed.replace("\"", "").replace("'", "")
+                        .toLowerCase().startsWith(key + ":")) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indentOf(String line) {
+            int indent = 0;
+            while (indent < line.length() && line.charAt(indent) == ' ') {
+                indent++;
+            }
+            return indent;
+        }
+
+        /**
+         * 描述某一行的内容
+         * @param line 行号（从1开始），为0时返回空字符串
+         * @return 附加在错误信息后的说明
+         */
+        private String describe(int line) {
+            if (line <= 0 || line > lines.length) {
+                return "";
+            }
+            return "（第 " + line + " 行: " + lines[line - 1].trim() + "）";
+        }
+
+        /**
+         * 从YAML解析错误中取出出错的行号，附上该行及前后各一行
+         * @param message 解析错误信息
+         * @return 附加在错误信息后的说明
+         */
+        private String describeYamlError(String message) {
+            int line = 0;
+            if (message != null) {
+                Matcher matcher = YAML_LINE.matcher(message);
+                while (matcher.find()) {
+                    line = Integer.parseInt(matcher.group(1));
+                }
+            }
+            if (line <= 0 || line > lines.length) {
+                return ": " + message;
+            }
+
+            StringBuilder context = new StringBuilder("，第 ").append(line).append(" 行附近:");
+            for (int i = Math.max(1, line - 1); i <= Math.min(lines.length, line + 1); i++) {
+                context.append('\n').append(i == line ? "> " : "  ").append(i).append(" | ").append(lines[i - 1]);
+            }
+            return context.toString();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+package com.laoda.universalph;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一个掉落物在每个时运等级下的最终数量分布
+ * 在加载时把 随机基础数量 + 时运算法 展开为每级一张别名表，收获时只需一次抽样
+ */
+public final class FortuneTable {
+    private final Mode mode;
+    private final double chance;
+    private final List<AliasTable<Integer>> levels;
+    private final int[] fixedAmounts;
+
+    private FortuneTable(Mode mode, double chance, List<AliasTable<Integer>> levels, int[] fixedAmounts) {
+        this.mode = mode;
+        this.chance = chance;
+        this.levels = levels;
+        this.fixedAmounts = fixedAmounts;
+    }
+
+    /**
+     * 为数量范围 [minAmount, maxAmount] 构建 0 到 maxLevel 级时运的数量分布
+     * @param mode 时运算法
+     * @param chance chance 模式下每级时运额外掉落一份的概率
+     * @param minAmount 最小基础数量
+     * @param maxAmount 最大基础数量
+     * @param maxLevel 预计算的最高时运等级，更高的等级按此等级处理
+     * @return 数量分布
+     */
+    public static FortuneTable build(Mode mode, double chance, int minAmount, int maxAmount, int maxLevel) {
+        if (maxAmount < minAmount) {
+            maxAmount = minAmount;
+        }
+        int baseCount = maxAmount - minAmount + 1;
+        double baseProbability = 1.0 / baseCount;
+
+        List<AliasTable<Integer>> levels = new ArrayList<>(maxLevel + 1);
+        int[] fixedAmounts = new int[maxLevel + 1];
+        for (int level = 0; level <= maxLevel; level++) {
+            // 最终数量 → 概率，按数量排序便于查看
+            Map<Integer, Double> distribution = new TreeMap<>();
+            for (int base = minAmount; base <= maxAmount; base++) {
+                if (level == 0 || mode == Mode.NONE) {
+                    distribution.merge(base, baseProbability, Double::sum);
+                } else if (mode == Mode.MULTIPLY) {
+                    distribution.merge(base * (level + 1), baseProbability, Double::sum);
+                } else if (mode == Mode.ADD) {
+                    distribution.merge(base + level, baseProbability, Double::sum);
+                } else {
+                    // 每级时运独立地以 chance 的概率额外掉落一份，额外份数服从二项分布
+                    for (int extra = 0; extra <= level; extra++) {
+                        double p = binomial(level, extra, chance);
+                        if (p > 0) {
+                            distribution.merge(base * (extra + 1), baseProbability * p, Double::sum);
+                        }
+                    }
+                }
+            }
+
+            List<Integer> amounts = new ArrayList<>(distribution.keySet());
+            double[] weights = new double[amounts.size()];
+            int i = 0;
+            for (double weight : distribution.values()) {
+                weights[i++] = weight;
+            }
+            levels.add(new AliasTable<>(amounts, weights));
+            fixedAmounts[level] = amounts.size() == 1 ? amounts.get(0) : -1;
+        }
+        return new FortuneTable(mode, chance, levels, fixedAmounts);
+    }
+
+    /**
+     * 抽取一次最终数量
+     * @param fortuneLevel 时运等级，超过预计算范围时按最高等级处理
+     * @param uniform [0, 1) 区间内均匀分布的随机数
+     * @return 最终数量（可能超过物品的最大堆叠数量）
+     */
+    public int roll(int fortuneLevel, double uniform) {
+        int level = Math.max(0, Math.min(fortuneLevel, fixedAmounts.length - 1));
+        int fixed = fixedAmounts[level];
+        if (fixed >= 0) {
+            return fixed;
+        }
+        return levels.get(level).pick(uniform);
+    }
+
+    /**
+     * 获取某个时运等级的数量分布
+     * @param fortuneLevel 时运等级
+     * @return 数量 → 概率 的别名表
+     */
+    public AliasTable<Integer> getDistribution(int fortuneLevel) {
+        return levels.get(Math.max(0, Math.min(fortuneLevel, levels.size() - 1)));
+    }
+
+    /**
+     * 获取构建时使用的时运算法
+     * @return 时运算法
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * 获取构建时使用的额外掉落概率（chance 算法）
+     * @return 概率
+     */
+    public double getChance() {
+        return chance;
+    }
+
+    private static double binomial(int n, int k, double p) {
+        double coefficient = 1;
+        for (int i = 1; i <= k; i++) {
+            coefficient = coefficient * (n - k + i) / i;
+        }
+        return coefficient * Math.pow(p, k) * Math.pow(1 - p, n - k);
+    }
+
+    /**
+     * 时运算法
+     */
+    public enum Mode {
+        /** 不受时运影响 */
+        NONE,
+        /** 数量乘以 (时运等级 + 1) */
+        MULTIPLY,
+        /** 数量加上时运等级 */
+        ADD,
+        /** 每级时运有一定概率额外掉落一份基础数量 */
+        CHANCE;
+
+        /**
+         * 解析配置中的时运算法名称
+         * @param name 名称（不区分大小写），可以为null
+         * @param fallback 名称为空或无效时使用的算法
+         * @return 时运算法
+         */
+        public static Mode parse(String name, Mode fallback) {
+            if (name == null || name.isEmpty()) {
+                return fallback;
+            }
+            try {
+                return valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                return fallback;
+            }
+        }
+    }
+
+    /**
+     * 时运设置（config.yml 中 settings 部分的时运选项），作为没有单独配置时运的掉落物的默认值
+     */
+    public static final class Settings {
+        private final Mode mode;
+        private final double chance;
+        private final int maxLevel;
+
+        public Settings(Mode mode, double chance, int maxLevel) {
+            this.mode = mode;
+            this.chance = Math.max(0, Math.min(1, chance));
+            this.maxLevel = Math.max(0, maxLevel);
+        }
+
+        /**
+         * 从配置节读取时运设置
+         * @param section settings 配置节，可以为null
+         * @return 时运设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return defaults();
+            }
+            Mode mode = section.getBoolean("apply-fortune", true)
+                    ? Mode.parse(section.getString("fortune-calculation"), Mode.MULTIPLY)
+                    : Mode.NONE;
+            return new Settings(mode, section.getDouble("fortune-chance", 0.5), section.getInt("max-fortune-level", 10));
+        }
+
+        /**
+         * 默认设置：multiply 算法，预计算到10级
+         * @return 默认时运设置
+         */
+        public static Settings defaults() {
+            return new Settings(Mode.MULTIPLY, 0.5, 10);
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public double getChance() {
+            return chance;
+        }
+
+        public int getMaxLevel() {
+            return maxLevel;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return mode == other.mode && Double.compare(chance, other.chance) == 0 && maxLevel == other.maxLevel;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mode.hashCode();
+            result = 31 * result + Double.hashCode(chance);
+            result = 31 * result + maxLevel;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package com.laoda.universalph;
+
+import net.md_5.bungee.api.ChatMessageType;
+import net.md_5.bungee.api.chat.TextComponent;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 收获汇总消息
+ * 每个玩家的收获在一个短时间窗口内累计（收获次数、维度、各掉落物数量），窗口结束后只发送一条动作栏或聊天消息，
+ * 代替每次收获都检查权限、拼接字符串并发送一条聊天消息
+ * 权限检查结果按玩家缓存，重新进入服务器、切换世界、重载配置或超过缓存时间后重新检查
+ */
+public class HarvestFeedback implements Listener {
+    /** 检查窗口是否结束的间隔 */
+    private static final long FLUSH_PERIOD_TICKS = 10L;
+
+    private final UniversalPotatoHarvest plugin;
+    private final Map<UUID, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<UUID, CachedPermission> permissions = new ConcurrentHashMap<>();
+    private HarvestScheduler.Task task;
+
+    public HarvestFeedback(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start() {
+        task = plugin.getHarvestScheduler().runAsyncTimer(this::flushDue, FLUSH_PERIOD_TICKS, FLUSH_PERIOD_TICKS);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        sessions.clear();
+        permissions.clear();
+    }
+
+    /**
+     * 判断玩家是否接收收获汇总，需要在玩家所在的线程上调用（会读取玩家的权限）
+     * 区域收获在提交任务时调用一次，把结果随任务传到原点所在区域的线程
+     * @param settings 当前配置快照中的汇总设置
+     * @param player 收获的玩家
+     * @return 是否接收收获汇总
+     */
+    public boolean accepts(Settings settings, Player player) {
+        return settings.getMode() != Mode.OFF && hasPermission(settings, player);
+    }
+
+    /**
+     * 记录一次收获，返回的会话用于累计本次收获的掉落物；不读取玩家状态，可以在任意线程调用
+     * @param settings 当前配置快照中的汇总设置
+     * @param player 收获的玩家，调用方已通过 {@link #accepts(Settings, Player)} 确认接收汇总
+     * @param world 作物所在世界
+     * @return 玩家的汇总会话
+     */
+    public Session begin(Settings settings, Player player, World world) {
+        Session session = sessions.get(player.getUniqueId());
+        if (session == null) {
+            session = sessions.computeIfAbsent(player.getUniqueId(), id -> new Session());
+        }
+        session.harvest(settings, player, world.getEnvironment(), System.currentTimeMillis());
+        return session;
+    }
+
+    /**
+     * 读取缓存的权限检查结果，缓存不存在、已过期或配置已重载时重新检查
+     */
+    private boolean hasPermission(Settings settings, Player player) {
+        if (settings.getPermission().isEmpty()) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        CachedPermission cached = permissions.get(player.getUniqueId());
+        if (cached == null || cached.settings != settings || now >= cached.expiresAt) {
+            cached = new CachedPermission(settings, player.hasPermission(settings.getPermission()),
+                    now + settings.getPermissionCacheMillis());
+            permissions.put(player.getUniqueId(), cached);
+        }
+        return cached.allowed;
+    }
+
+    /**
+     * 为窗口已结束的会话生成汇总消息，交给玩家所在的线程发送
+     */
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        for (Session session : sessions.values()) {
+            final Player player;
+            final Settings settings;
+            final String message;
+            synchronized (session) {
+                if (session.harvests == 0 || now - session.windowStart < session.settings.getWindowMillis()) {
+                    continue;
+                }
+                player = session.player;
+                settings = session.settings;
+                message = session.render();
+                session.reset();
+            }
+            plugin.getHarvestScheduler().runFor(player, () -> send(settings, player, message));
+        }
+    }
+
+    private static void send(Settings settings, Player player, String message) {
+        if (!player.isOnline()) {
+            return;
+        }
+        if (settings.getMode() == Mode.ACTION_BAR) {
+            player.spigot().sendMessage(ChatMessageType.ACTION_BAR, TextComponent.fromLegacyText(message));
+        } else {
+            player.sendMessage(settings.getPrefix() + message);
+        }
+    }
+
+    /**
+     * 获取维度的友好名称
+     * @param environment 维度类型
+     * @return 维度的友好名称
+     */
+    static String dimensionName(World.Environment environment) {
+        switch (environment) {
+            case NETHER:
+                return "下界";
+            case THE_END:
+                return "末地";
+            case NORMAL:
+            default:
+                return "主世界";
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        permissions.remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        // 权限插件可以按世界设置权限
+        permissions.remove(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        UUID id = event.getPlayer().getUniqueId();
+        permissions.remove(id);
+        sessions.remove(id);
+    }
+
+    /**
+     * 一个玩家当前窗口内的收获累计，所有字段由会话自身的锁保护
+     */
+    public static final class Session {
+        private Player player;
+        private Settings settings;
+        private World.Environment environment;
+        private int harvests;
+        private int total;
+        private long windowStart;
+        /** 掉落物名称（自定义显示名称或材质名） → 数量，窗口结束后清空并复用 */
+        private final Map<String, ItemCount> items = new HashMap<>();
+
+        private synchronized void harvest(Settings settings, Player player, World.Environment environment, long now) {
+            if (harvests == 0) {
+                windowStart = now;
+            }
+            this.player = player;
+            this.settings = settings;
+            this.environment = environment;
+            harvests++;
+        }
+
+        /**
+         * 累计一个掉落物
+         * @param type 掉落物材质
+         * @param displayName 掉落物的自定义显示名称（使用&作为颜色代码），没有时为null
+         * @param amount 数量
+         */
+        public synchronized void add(Material type, String displayName, int amount) {
+            String key = displayName != null ? displayName : type.name();
+            ItemCount count = items.get(key);
+            if (count == null) {
+                count = new ItemCount(displayName != null ? displayName.replace('&', '§')
+                        : type.name().toLowerCase().replace('_', ' '));
+                items.put(key, count);
+            }
+            count.amount += amount;
+            total += amount;
+        }
+
+        private String render() {
+            StringBuilder itemText = new StringBuilder();
+            if (items.isEmpty()) {
+                itemText.append(settings.getEmpty().format());
+            } else {
+                List<ItemCount> sorted = new ArrayList<>(items.values());
+                Collections.sort(sorted, (a, b) -> Integer.compare(b.amount, a.amount));
+                int shown = Math.min(sorted.size(), settings.getMaxItems());
+                for (int i = 0; i < shown; i++) {
+                    if (i > 0) {
+                        itemText.append(settings.getSeparator());
+                    }
+                    settings.getItemFormat().appendTo(itemText, sorted.get(i).name, sorted.get(i).amount);
+                }
+                if (shown < sorted.size()) {
+                    settings.getMore().appendTo(itemText, sorted.size() - shown);
+                }
+            }
+            return settings.getFormat().format(harvests, dimensionName(environment), itemText, total,
+                    player.getName());
+        }
+
+        private void reset() {
+            harvests = 0;
+            total = 0;
+            items.clear();
+        }
+    }
+
+    private static final class ItemCount {
+        private final String name;
+        private int amount;
+
+        private ItemCount(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * 缓存的权限检查结果，属于某一份配置快照
+     */
+    private static final class CachedPermission {
+        private final Settings settings;
+        private final boolean allowed;
+        private final long expiresAt;
+
+        private CachedPermission(Settings settings, boolean allowed, long expiresAt) {
+            this.settings = settings;
+            this.allowed = allowed;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 汇总消息的发送位置
+     */
+    public enum Mode {
+        ACTION_BAR,
+        CHAT,
+        OFF;
+
+        static Mode parse(String name) {
+            if (name == null) {
+                return ACTION_BAR;
+            }
+            switch (name.trim().toLowerCase()) {
+                case "chat":
+                    return CHAT;
+                case "off":
+                case "none":
+                    return OFF;
+                case "action-bar":
+                case "actionbar":
+                default:
+                    return ACTION_BAR;
+            }
+        }
+    }
+
+    /**
+     * 收获汇总设置，消息模板在加载配置时预编译
+     */
+    public static final class Settings {
+        private final Mode mode;
+        private final String permission;
+        private final long windowMillis;
+        private final long permissionCacheMillis;
+        private final int maxItems;
+        private final String prefix;
+        private final MessageTemplate format;
+        private final MessageTemplate itemFormat;
+        private final String separator;
+        private final MessageTemplate more;
+        private final MessageTemplate empty;
+
+        public Settings(Mode mode, String permission, int windowTicks, int permissionCacheSeconds, int maxItems,
+                        String prefix, String format, String itemFormat, String separator, String more,
+                        String empty) {
+            this.mode = mode;
+            this.permission = permission != null ? permission.trim() : "";
+            this.windowMillis = Math.max(1, windowTicks) * 50L;
+            this.permissionCacheMillis = Math.max(0, permissionCacheSeconds) * 1000L;
+            this.maxItems = Math.max(1, maxItems);
+            this.prefix = prefix != null ? prefix.replace('&', '§') : "";
+            this.format = MessageTemplate.compile(format, "harvests", "dimension", "items", "amount", "player");
+            this.itemFormat = MessageTemplate.compile(itemFormat, "item", "amount");
+            this.separator = separator != null ? separator.replace('&', '§') : "";
+            this.more = MessageTemplate.compile(more, "count");
+            this.empty = MessageTemplate.compile(empty);
+        }
+
+        /**
+         * 从 messages 配置节读取前缀和收获汇总设置
+         * @param section messages 配置节，可以为null
+         * @return 收获汇总设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            String prefix = section != null ? section.getString("prefix", "&6[UPH] &r") : "&6[UPH] &r";
+            ConfigurationSection summary = section != null ? section.getConfigurationSection("harvest-summary") : null;
+            if (summary == null) {
+                return new Settings(Mode.ACTION_BAR, "universalpotatoharvest.debug", 60, 30, 4, prefix,
+                        "&e在{dimension}收获了 {harvests} 株作物: {items}", "&f{amount} {item}", "&7, ",
+                        " &7等 {count} 种", "&7没有掉落物");
+            }
+            return new Settings(
+                    Mode.parse(summary.getString("mode", "action-bar")),
+                    summary.getString("permission", "universalpotatoharvest.debug"),
+                    summary.getInt("window-ticks", 60),
+                    summary.getInt("permission-cache-seconds", 30),
+                    summary.getInt("max-items", 4),
+                    prefix,
+                    summary.getString("format", "&e在{dimension}收获了 {harvests} 株作物: {items}"),
+                    summary.getString("item-format", "&f{amount} {item}"),
+                    summary.getString("separator", "&7, "),
+                    summary.getString("more", " &7等 {count} 种"),
+                    summary.getString("empty", "&7没有掉落物")
+            );
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return 接收汇总消息需要的权限，为空时所有玩家都会收到
+         */
+        public String getPermission() {
+            return permission;
+        }
+
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        public long getPermissionCacheMillis() {
+            return permissionCacheMillis;
+        }
+
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        public MessageTemplate getFormat() {
+            return format;
+        }
+
+        public MessageTemplate getItemFormat() {
+            return itemFormat;
+        }
+
+        public String getSeparator() {
+            return separator;
+        }
+
+        public MessageTemplate getMore() {
+            return more;
+        }
+
+        public MessageTemplate getEmpty() {
+            return empty;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 收获统计
+ * 所有计数器都是分段的 LongAdder，记录一次只需一次无竞争的累加，可以放在每次方块破坏的热路径上
+ */
+public class HarvestMetrics {
+    private final long startedAt = System.currentTimeMillis();
+
+    private final LongAdder eventsSeen = new LongAdder();
+    private final LongAdder rejectedNotCrop = new LongAdder();
+    private final LongAdder rejectedImmature = new LongAdder();
+    private final LongAdder rejectedNoTool = new LongAdder();
+    private final LongAdder harvested = new LongAdder();
+    private final LongAdder capped = new LongAdder();
+
+    private final LongAdder[] dropsByDimension = newAdders(World.Environment.values().length);
+    private final LongAdder[] dropsByMaterial = newAdders(Material.values().length);
+
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    private final LatencyHistogram selectionLatency = new LatencyHistogram();
+    private final LatencyHistogram itemCreationLatency = new LatencyHistogram();
+
+    public void recordEvent() {
+        eventsSeen.increment();
+    }
+
+    public void recordNotCrop() {
+        rejectedNotCrop.increment();
+    }
+
+    public void recordImmature() {
+        rejectedImmature.increment();
+    }
+
+    public void recordNoTool() {
+        rejectedNoTool.increment();
+    }
+
+    public void recordHarvest() {
+        harvested.increment();
+    }
+
+    public void recordCapped() {
+        capped.increment();
+    }
+
+    /**
+     * 记录一次产出的掉落物
+     * @param environment 维度
+     * @param material 物品材质
+     * @param amount 数量
+     */
+    public void recordDrop(World.Environment environment, Material material, int amount) {
+        dropsByDimension[environment.ordinal()].add(amount);
+        dropsByMaterial[material.ordinal()].add(amount);
+    }
+
+    /**
+     * 记录一次完整事件处理（通过作物检查之后）的耗时
+     * @param nanos 纳秒
+     */
+    public void recordHandler(long nanos) {
+        handlerLatency.record(nanos);
+    }
+
+    /**
+     * 记录一次掉落表抽样的耗时
+     * @param nanos 纳秒
+     */
+    public void recordSelection(long nanos) {
+        selectionLatency.record(nanos);
+    }
+
+    /**
+     * 记录一次物品生成（createItemStack）的耗时
+     * @param nanos 纳秒
+     */
+    public void recordItemCreation(long nanos) {
+        itemCreationLatency.record(nanos);
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        eventsSeen.reset();
+        rejectedNotCrop.reset();
+        rejectedImmature.reset();
+        rejectedNoTool.reset();
+        harvested.reset();
+        capped.reset();
+        for (LongAdder adder : dropsByDimension) {
+            adder.reset();
+        }
+        for (LongAdder adder : dropsByMaterial) {
+            adder.reset();
+        }
+        handlerLatency.reset();
+        selectionLatency.reset();
+        itemCreationLatency.reset();
+    }
+
+    /**
+     * 生成统计报告（带颜色代码）
+     * @param topMaterials 最多列出的物品种类数
+     * @return 报告行
+     */
+    public List<String> report(int topMaterials) {
+        List<String> lines = new ArrayList<>();
+        long uptimeSeconds = Math.max(1, (System.currentTimeMillis() - startedAt) / 1000);
+        lines.add("§6===== UniversalPotatoHarvest 统计 (" + uptimeSeconds + " 秒) =====");
+        lines.add("§e方块破坏事件: §f" + eventsSeen.sum()
+                + " §7| 非作物 §f" + rejectedNotCrop.sum()
+                + " §7| 未成熟 §f" + rejectedImmature.sum()
+                + " §7| 非收割工具 §f" + rejectedNoTool.sum()
+                + " §7| 收获 §f" + harvested.sum()
+                + " §7| 达到产出上限 §f" + capped.sum());
+
+        StringBuilder dimensions = new StringBuilder("§e按维度掉落数量:");
+        for (World.Environment environment : World.Environment.values()) {
+            dimensions.append(" §7").append(environment.name()).append(" §f")
+                    .append(dropsByDimension[environment.ordinal()].sum());
+        }
+        lines.add(dimensions.toString());
+
+        // 取数量最多的若干种物品
+        Material[] materials = Material.values();
+        long[] totals = new long[materials.length];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = dropsByMaterial[i].sum();
+        }
+        StringBuilder top = new StringBuilder("§e按物品掉落数量:");
+        for (int n = 0; n < topMaterials; n++) {
+            int best = -1;
+            for (int i = 0; i < totals.length; i++) {
+                if (totals[i] > 0 && (best < 0 || totals[i] > totals[best])) {
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            top.append(" §7").append(materials[best].name()).append(" §f").append(totals[best]);
+            totals[best] = 0;
+        }
+        lines.add(top.toString());
+
+        lines.add("§e事件处理耗时: " + handlerLatency.summary());
+        lines.add("§e掉落表抽样耗时: " + selectionLatency.summary());
+        lines.add("§e物品生成耗时: " + itemCreationLatency.summary());
+        return lines;
+    }
+
+    private static LongAdder[] newAdders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 统计设置（config.yml 中的 metrics 部分）
+     */
+    public static final class Settings {
+        private final int dumpIntervalMinutes;
+        private final String dumpFile;
+
+        public Settings(int dumpIntervalMinutes, String dumpFile) {
+            this.dumpIntervalMinutes = Math.max(0, dumpIntervalMinutes);
+            this.dumpFile = dumpFile;
+        }
+
+        /**
+         * 从配置节读取统计设置
+         * @param section metrics 配置节，可以为null
+         * @return 统计设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(0, "stats.log");
+            }
+            return new Settings(section.getInt("dump-interval-minutes", 0), section.getString("dump-file", "stats.log"));
+        }
+
+        /**
+         * 定期写入统计文件的间隔
+         * @return 分钟数，0 表示不写入
+         */
+        public int getDumpIntervalMinutes() {
+            return dumpIntervalMinutes;
+        }
+
+        public String getDumpFile() {
+            return dumpFile;
+        }
+    }
+
+    /**
+     * 固定分桶的延迟直方图
+     * 第 i 个桶记录 [2^(i-1), 2^i) 纳秒的样本，记录一次只需一次位运算和一次累加
+     */
+    static final class LatencyHistogram {
+        private static final int BUCKETS = 40;
+
+        private final LongAdder[] buckets = newAdders(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+            buckets[bucket].increment();
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+
+        /**
+         * 估算分位数，返回所在桶的上界
+         * @param quantile 0-1 之间的分位
+         * @return 纳秒
+         */
+        long percentile(double quantile) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return i == 0 ? 0 : 1L << i;
+                }
+            }
+            return maxNanos.get();
+        }
+
+        String summary() {
+            long samples = count.sum();
+            if (samples == 0) {
+                return "§7无数据";
+            }
+            return "§7次数 §f" + samples
+                    + " §7平均 §f" + formatNanos(totalNanos.sum() / samples)
+                    + " §7p50 §f" + formatNanos(percentile(0.5))
+                    + " §7p99 §f" + formatNanos(percentile(0.99))
+                    + " §7最大 §f" + formatNanos(maxNanos.get());
+        }
+
+        private static String formatNanos(long nanos) {
+            if (nanos >= 1_000_000) {
+                return String.format("%.2fms", nanos / 1_000_000.0);
+            }
+            if (nanos >= 1_000) {
+                return String.format("%.1fµs", nanos / 1_000.0);
+            }
+            return nanos + "ns";
+        }
+    }
+}
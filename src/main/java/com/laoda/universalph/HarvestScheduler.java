@@ -0,0 +1,289 @@
+package com.laoda.universalph;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 任务调度适配
+ * 普通服务器使用 Bukkit 调度器；在按区域多线程运行的服务器（Folia 等）上，
+ * 方块和掉落物相关的任务交给位置所属区域的调度器，玩家相关的任务交给实体调度器
+ * 区域调度器的 API 不在 1.12.2 的 Bukkit API 中，因此通过反射调用
+ */
+public abstract class HarvestScheduler {
+    protected final Plugin plugin;
+
+    protected HarvestScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 根据服务器类型创建调度适配
+     * @param plugin 插件实例
+     * @return 调度适配
+     */
+    public static HarvestScheduler create(Plugin plugin) {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return new RegionScheduler(plugin);
+        } catch (ClassNotFoundException e) {
+            return new BukkitScheduler(plugin);
+        } catch (ReflectiveOperationException e) {
+            plugin.getLogger().warning("无法使用区域调度器，将使用Bukkit调度器: " + e);
+            return new BukkitScheduler(plugin);
+        }
+    }
+
+    /**
+     * 服务器是否按区域多线程处理事件
+     * @return 是否为区域多线程服务器
+     */
+    public abstract boolean isRegionThreaded();
+
+    /**
+     * 在异步线程中执行任务
+     * @param task 任务
+     */
+    public abstract void runAsync(Runnable task);
+
+    /**
+     * 在异步线程中周期执行任务
+     * @param task 任务
+     * @param delayTicks 首次执行前的延迟（tick）
+     * @param periodTicks 执行间隔（tick）
+     * @return 任务句柄
+     */
+    public abstract Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * 周期执行不涉及具体方块或实体的全局任务
+     * @param task 任务
+     * @param delayTicks 首次执行前的延迟（tick）
+     * @param periodTicks 执行间隔（tick）
+     * @return 任务句柄
+     */
+    public abstract Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * 在拥有指定位置的线程上执行任务；当前线程已拥有该位置时立即执行
+     * @param location 位置
+     * @param task 任务
+     */
+    public abstract void runAt(Location location, Runnable task);
+
+    /**
+     * 在拥有指定位置的线程上周期执行任务
+     * @param location 位置
+     * @param task 任务
+     * @param delayTicks 首次执行前的延迟（tick）
+     * @param periodTicks 执行间隔（tick）
+     * @return 任务句柄
+     */
+    public abstract Task runAtTimer(Location location, Runnable task, long delayTicks, long periodTicks);
+
+    /**
+     * 当前线程是否可以访问指定区块中的方块
+     * @param world 世界
+     * @param chunkX 区块X坐标
+     * @param chunkZ 区块Z坐标
+     * @return 是否可以访问
+     */
+    public abstract boolean ownsChunk(World world, int chunkX, int chunkZ);
+
+    /**
+     * 在可以安全向命令发送者发送消息的线程上执行任务
+     * @param sender 命令发送者
+     * @param task 任务
+     */
+    public abstract void runFor(CommandSender sender, Runnable task);
+
+    /**
+     * 已调度任务的句柄
+     */
+    public interface Task {
+        void cancel();
+    }
+
+    /**
+     * 单主线程服务器：所有同步任务都在主线程执行
+     */
+    private static final class BukkitScheduler extends HarvestScheduler {
+        private BukkitScheduler(Plugin plugin) {
+            super(plugin);
+        }
+
+        @Override
+        public boolean isRegionThreaded() {
+            return false;
+        }
+
+        @Override
+        public void runAsync(Runnable task) {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask handle = plugin.getServer().getScheduler()
+                    .runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+            return handle::cancel;
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            BukkitTask handle = plugin.getServer().getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+            return handle::cancel;
+        }
+
+        @Override
+        public void runAt(Location location, Runnable task) {
+            if (Bukkit.isPrimaryThread()) {
+                task.run();
+            } else {
+                plugin.getServer().getScheduler().runTask(plugin, task);
+            }
+        }
+
+        @Override
+        public Task runAtTimer(Location location, Runnable task, long delayTicks, long periodTicks) {
+            return runGlobalTimer(task, delayTicks, periodTicks);
+        }
+
+        @Override
+        public boolean ownsChunk(World world, int chunkX, int chunkZ) {
+            return Bukkit.isPrimaryThread();
+        }
+
+        @Override
+        public void runFor(CommandSender sender, Runnable task) {
+            plugin.getServer().getScheduler().runTask(plugin, task);
+        }
+    }
+
+    /**
+     * 区域多线程服务器：通过反射调用区域、实体、全局和异步调度器
+     */
+    private static final class RegionScheduler extends HarvestScheduler {
+        private final Object regionScheduler;
+        private final Object globalScheduler;
+        private final Object asyncScheduler;
+        private final Method regionExecute;
+        private final Method regionAtFixedRate;
+        private final Method globalExecute;
+        private final Method globalAtFixedRate;
+        private final Method asyncRunNow;
+        private final Method asyncAtFixedRate;
+        private final Method entityGetScheduler;
+        private final Method entityRun;
+        private final Method isOwnedByCurrentRegion;
+        private final Method isChunkOwnedByCurrentRegion;
+        private final Method taskCancel;
+
+        private RegionScheduler(Plugin plugin) throws ReflectiveOperationException {
+            super(plugin);
+            Object server = plugin.getServer();
+            Class<?> serverType = Server.class;
+            regionScheduler = serverType.getMethod("getRegionScheduler").invoke(server);
+            globalScheduler = serverType.getMethod("getGlobalRegionScheduler").invoke(server);
+            asyncScheduler = serverType.getMethod("getAsyncScheduler").invoke(server);
+
+            Class<?> regionType = Class.forName("io.papermc.paper.threadedregions.scheduler.RegionScheduler");
+            Class<?> globalType = Class.forName("io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler");
+            Class<?> asyncType = Class.forName("io.papermc.paper.threadedregions.scheduler.AsyncScheduler");
+            Class<?> entityType = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler");
+            Class<?> taskType = Class.forName("io.papermc.paper.threadedregions.scheduler.ScheduledTask");
+
+            regionExecute = regionType.getMethod("execute", Plugin.class, Location.class, Runnable.class);
+            regionAtFixedRate = regionType.getMethod("runAtFixedRate", Plugin.class, Location.class,
+                    Consumer.class, long.class, long.class);
+            globalExecute = globalType.getMethod("execute", Plugin.class, Runnable.class);
+            globalAtFixedRate = globalType.getMethod("runAtFixedRate", Plugin.class, Consumer.class,
+                    long.class, long.class);
+            asyncRunNow = asyncType.getMethod("runNow", Plugin.class, Consumer.class);
+            asyncAtFixedRate = asyncType.getMethod("runAtFixedRate", Plugin.class, Consumer.class,
+                    long.class, long.class, TimeUnit.class);
+            entityGetScheduler = Entity.class.getMethod("getScheduler");
+            entityRun = entityType.getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            isOwnedByCurrentRegion = Bukkit.class.getMethod("isOwnedByCurrentRegion", Location.class);
+            isChunkOwnedByCurrentRegion = Bukkit.class.getMethod("isOwnedByCurrentRegion", World.class,
+                    int.class, int.class);
+            taskCancel = taskType.getMethod("cancel");
+        }
+
+        @Override
+        public boolean isRegionThreaded() {
+            return true;
+        }
+
+        @Override
+        public void runAsync(Runnable task) {
+            invoke(asyncRunNow, asyncScheduler, plugin, consumer(task));
+        }
+
+        @Override
+        public Task runAsyncTimer(Runnable task, long delayTicks, long periodTicks) {
+            return handle(invoke(asyncAtFixedRate, asyncScheduler, plugin, consumer(task),
+                    delayTicks * 50L, periodTicks * 50L, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public Task runGlobalTimer(Runnable task, long delayTicks, long periodTicks) {
+            return handle(invoke(globalAtFixedRate, globalScheduler, plugin, consumer(task), delayTicks, periodTicks));
+        }
+
+        @Override
+        public void runAt(Location location, Runnable task) {
+            if ((Boolean) invoke(isOwnedByCurrentRegion, null, location)) {
+                task.run();
+            } else {
+                invoke(regionExecute, regionScheduler, plugin, location, task);
+            }
+        }
+
+        @Override
+        public Task runAtTimer(Location location, Runnable task, long delayTicks, long periodTicks) {
+            return handle(invoke(regionAtFixedRate, regionScheduler, plugin, location, consumer(task),
+                    delayTicks, periodTicks));
+        }
+
+        @Override
+        public boolean ownsChunk(World world, int chunkX, int chunkZ) {
+            return (Boolean) invoke(isChunkOwnedByCurrentRegion, null, world, chunkX, chunkZ);
+        }
+
+        @Override
+        public void runFor(CommandSender sender, Runnable task) {
+            if (sender instanceof Entity) {
+                Object scheduler = invoke(entityGetScheduler, sender);
+                invoke(entityRun, scheduler, plugin, consumer(task), null);
+            } else {
+                invoke(globalExecute, globalScheduler, plugin, task);
+            }
+        }
+
+        private Task handle(final Object scheduledTask) {
+            return () -> invoke(taskCancel, scheduledTask);
+        }
+
+        private static Consumer<Object> consumer(final Runnable task) {
+            return scheduledTask -> task.run();
+        }
+
+        private static Object invoke(Method method, Object target, Object... args) {
+            try {
+                return method.invoke(target, args);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("调用区域调度器失败: " + method.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.laoda.universalph;
+
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次加载得到的完整、不可变的插件配置快照
+ * 重载时在异步线程中构建新快照，再通过一次引用替换发布，监听器每次事件只读取同一个快照
+ */
+public final class HarvestSnapshot {
+    private final Map<String, DropTable> dimensionTables;
+    private final Map<String, String> worldGroups;
+    private final ItemStack defaultDrop;
+    private final LoreMatcher triggerMatcher;
+    private final FortuneTable.Settings fortuneSettings;
+    private final FortuneTable defaultFortune;
+    private final boolean debug;
+    private final DropBatcher.Settings batchSettings;
+    private final AreaHarvester.Settings areaSettings;
+    private final HarvestMetrics.Settings metricsSettings;
+    private final HarvestLedger.Settings ledgerSettings;
+    private final InventoryDelivery.Settings deliverySettings;
+    private final CropRegistry crops;
+    private final ConfigWatcher.Settings watchSettings;
+    private final PityTracker.Settings pitySettings;
+    private final AutoHarvester.Settings harvesterSettings;
+    private final AuditLog.Settings auditSettings;
+    private final HarvestFeedback.Settings feedbackSettings;
+
+    public HarvestSnapshot(Map<String, DropTable> dimensionTables,
+                           Map<String, String> worldGroups, ItemStack defaultDrop,
+                           LoreMatcher triggerMatcher, FortuneTable.Settings fortuneSettings, boolean debug,
+                           DropBatcher.Settings batchSettings, AreaHarvester.Settings areaSettings,
+                           HarvestMetrics.Settings metricsSettings, HarvestLedger.Settings ledgerSettings,
+                           InventoryDelivery.Settings deliverySettings, CropRegistry crops,
+                           ConfigWatcher.Settings watchSettings, PityTracker.Settings pitySettings,
+                           AutoHarvester.Settings harvesterSettings, AuditLog.Settings auditSettings,
+                           HarvestFeedback.Settings feedbackSettings) {
+        this.dimensionTables = dimensionTables;
+        this.worldGroups = worldGroups;
+        this.defaultDrop = defaultDrop;
+        this.triggerMatcher = triggerMatcher;
+        this.fortuneSettings = fortuneSettings;
+        this.defaultFortune = FortuneTable.build(fortuneSettings.getMode(), fortuneSettings.getChance(),
+                defaultDrop.getAmount(), defaultDrop.getAmount(), fortuneSettings.getMaxLevel());
+        this.debug = debug;
+        this.batchSettings = batchSettings;
+        this.areaSettings = areaSettings;
+        this.metricsSettings = metricsSettings;
+        this.ledgerSettings = ledgerSettings;
+        this.deliverySettings = deliverySettings;
+        this.crops = crops;
+        this.watchSettings = watchSettings;
+        this.pitySettings = pitySettings;
+        this.harvesterSettings = harvesterSettings;
+        this.auditSettings = auditSettings;
+        this.feedbackSettings = feedbackSettings;
+    }
+
+    /**
+     * 获取指定维度的掉落物别名表
+     * @param dimension 维度名称（小写）
+     * @return 别名表，未配置时返回null
+     */
+    public DropTable getDimensionTable(String dimension) {
+        return dimensionTables.get(dimension);
+    }
+
+    /**
+     * 按 世界名称 → 世界组 → 维度类型 的顺序查找某个世界使用的掉落表
+     * 每个世界只在加载或重载时解析一次，结果由 {@link WorldDropTables} 按世界UID缓存
+     * @param worldName 世界名称
+     * @param environment 世界的维度类型
+     * @return 别名表，都未配置时返回null
+     */
+    public DropTable resolveTable(String worldName, World.Environment environment) {
+        String tableName = resolveTableName("", worldName, environment);
+        return tableName != null ? dimensionTables.get(tableName) : null;
+    }
+
+    /**
+     * 按与 {@link #resolveTable} 相同的顺序，在某个掉落表组中查找世界使用的掉落表名称
+     * @param tableGroup 掉落表组名称，空字符串表示共用掉落表
+     * @param worldName 世界名称
+     * @param environment 世界的维度类型
+     * @return 掉落表名称（小写，作物专用的掉落表带有组名前缀），都未配置时返回null
+     */
+    public String resolveTableName(String tableGroup, String worldName, World.Environment environment) {
+        String prefix = tableGroup.isEmpty() ? "" : tableGroup + DropsManager.TABLE_GROUP_SEPARATOR;
+        String name = prefix + worldName.toLowerCase();
+        if (dimensionTables.containsKey(name)) {
+            return name;
+        }
+
+        String group = worldGroups.get(worldName.toLowerCase());
+        if (group != null && dimensionTables.containsKey(prefix + group)) {
+            return prefix + group;
+        }
+        String environmentName = prefix + environmentKey(environment);
+        return dimensionTables.containsKey(environmentName) ? environmentName : null;
+    }
+
+    /**
+     * 获取维度类型对应的掉落表名称（主世界、下界或末地）
+     * @param environment 维度类型
+     * @return 掉落表名称
+     */
+    public static String environmentKey(World.Environment environment) {
+        switch (environment) {
+            case NETHER:
+                return "nether";
+            case THE_END:
+                return "the_end";
+            case NORMAL:
+            default:
+                return "world";
+        }
+    }
+
+    /**
+     * 获取所有已加载的掉落表名称
+     * @return 掉落表名称（小写）
+     */
+    public Set<String> getTableNames() {
+        return dimensionTables.keySet();
+    }
+
+    /**
+     * 获取已加载的维度数量
+     * @return 维度数量
+     */
+    public int getDimensionCount() {
+        return dimensionTables.size();
+    }
+
+    /**
+     * 创建默认掉落物（drop-item 配置）的副本
+     * @return 默认掉落物
+     */
+    public ItemStack createDefaultDrop() {
+        return defaultDrop.clone();
+    }
+
+    public LoreMatcher getTriggerMatcher() {
+        return triggerMatcher;
+    }
+
+    public FortuneTable.Settings getFortuneSettings() {
+        return fortuneSettings;
+    }
+
+    /**
+     * 获取默认掉落物（drop-item 配置）的各时运等级数量分布
+     * @return 数量分布
+     */
+    public FortuneTable getDefaultFortune() {
+        return defaultFortune;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public DropBatcher.Settings getBatchSettings() {
+        return batchSettings;
+    }
+
+    public AreaHarvester.Settings getAreaSettings() {
+        return areaSettings;
+    }
+
+    public HarvestMetrics.Settings getMetricsSettings() {
+        return metricsSettings;
+    }
+
+    public HarvestLedger.Settings getLedgerSettings() {
+        return ledgerSettings;
+    }
+
+    public InventoryDelivery.Settings getDeliverySettings() {
+        return deliverySettings;
+    }
+
+    /**
+     * 获取已启用作物的规则表
+     * @return 作物规则表
+     */
+    public CropRegistry getCrops() {
+        return crops;
+    }
+
+    public ConfigWatcher.Settings getWatchSettings() {
+        return watchSettings;
+    }
+
+    public PityTracker.Settings getPitySettings() {
+        return pitySettings;
+    }
+
+    public AutoHarvester.Settings getHarvesterSettings() {
+        return harvesterSettings;
+    }
+
+    public AuditLog.Settings getAuditSettings() {
+        return auditSettings;
+    }
+
+    public HarvestFeedback.Settings getFeedbackSettings() {
+        return feedbackSettings;
+    }
+}
@@ -0,0 +1,197 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerItemBreakEvent;
+import org.bukkit.event.player.PlayerItemDamageEvent;
+import org.bukkit.event.player.PlayerItemHeldEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerSwapHandItemsEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 收割工具识别缓存
+ * 每个玩家缓存一次手持物品的识别结果，只要手持物品和配置都没有变化就不再匹配Lore和读取附魔
+ * 手持物品是否变化由快捷栏位置、材质、耐久和是否有ItemMeta判断，命中缓存时不读取（复制）ItemMeta；
+ * 换手持物品、物品栏操作和工具损坏等事件会使缓存失效
+ */
+public class HarvestToolCache implements Listener {
+    private final UniversalPotatoHarvest plugin;
+    private final Map<UUID, CachedTool> cache = new ConcurrentHashMap<>();
+
+    public HarvestToolCache(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 判断玩家手持的物品是否为收割工具
+     * @param player 玩家
+     * @param handItem 玩家主手物品
+     * @param matcher 当前配置快照中的触发Lore匹配器，匹配器变化（重载）后缓存自动失效
+     * @return 是否带有触发Lore
+     */
+    public boolean isHarvestTool(Player player, ItemStack handItem, LoreMatcher matcher) {
+        return getTriggerIndex(player, handItem, matcher) >= 0;
+    }
+
+    /**
+     * 获取玩家手持物品匹配到的触发Lore
+     * @param player 玩家
+     * @param handItem 玩家主手物品
+     * @param matcher 当前配置快照中的触发Lore匹配器，匹配器变化（重载）后缓存自动失效
+     * @return 触发Lore下标（对应 {@link LoreMatcher#getPatterns()}），不是收割工具时返回-1
+     */
+    public int getTriggerIndex(Player player, ItemStack handItem, LoreMatcher matcher) {
+        CachedTool cached = lookup(player, handItem, matcher);
+        return cached != null ? cached.triggerIndex : -1;
+    }
+
+    /**
+     * 获取玩家手持物品的时运等级，与触发Lore一起缓存
+     * @param player 玩家
+     * @param handItem 玩家主手物品
+     * @param matcher 当前配置快照中的触发Lore匹配器
+     * @return 时运等级，没有时运时返回0
+     */
+    public int getFortuneLevel(Player player, ItemStack handItem, LoreMatcher matcher) {
+        CachedTool cached = lookup(player, handItem, matcher);
+        return cached != null ? cached.fortuneLevel : 0;
+    }
+
+    /**
+     * 读取缓存的识别结果，缓存不存在或已失效时重新识别
+     * @return 识别结果，空手时返回null
+     */
+    private CachedTool lookup(Player player, ItemStack handItem, LoreMatcher matcher) {
+        if (handItem == null || handItem.getType() == Material.AIR) {
+            return null;
+        }
+
+        int slot = player.getInventory().getHeldItemSlot();
+        CachedTool cached = cache.get(player.getUniqueId());
+        // 只比较不需要复制ItemMeta的字段；Lore和附魔的变化依靠物品栏等事件使缓存失效
+        if (cached != null && cached.matcher == matcher && cached.matches(slot, handItem)) {
+            return cached;
+        }
+
+        int triggerIndex = checkLore(handItem, matcher);
+        int fortuneLevel = triggerIndex >= 0 ? handItem.getEnchantmentLevel(Enchantment.LOOT_BONUS_BLOCKS) : 0;
+        cached = new CachedTool(slot, handItem, matcher, triggerIndex, fortuneLevel);
+        cache.put(player.getUniqueId(), cached);
+        return cached;
+    }
+
+    /**
+     * 读取物品Lore并与触发Lore进行匹配
+     * @param item 物品
+     * @param matcher 触发Lore匹配器
+     * @return 匹配到的触发Lore下标，没有匹配时返回-1
+     */
+    private int checkLore(ItemStack item, LoreMatcher matcher) {
+        if (!item.hasItemMeta()) {
+            return -1;
+        }
+        ItemMeta meta = item.getItemMeta();
+        if (meta == null || !meta.hasLore()) {
+            return -1;
+        }
+        return matcher.findAny(meta.getLore());
+    }
+
+    /**
+     * 清空所有缓存
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * 清除指定玩家的缓存
+     * @param player 玩家
+     */
+    public void invalidate(HumanEntity player) {
+        cache.remove(player.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onItemHeld(PlayerItemHeldEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onSwapHands(PlayerSwapHandItemsEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDropItem(PlayerDropItemEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClick(InventoryClickEvent event) {
+        invalidate(event.getWhoClicked());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        invalidate(event.getWhoClicked());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onItemDamage(PlayerItemDamageEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onItemBreak(PlayerItemBreakEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        invalidate(event.getPlayer());
+    }
+
+    /**
+     * 手持物品的识别结果
+     * 以快捷栏位置、材质、耐久和是否有ItemMeta作为物品指纹，这些字段都不需要复制ItemMeta，指纹变化即视为换了物品
+     */
+    private static final class CachedTool {
+        private final int slot;
+        private final Material type;
+        private final short durability;
+        private final boolean hasMeta;
+        private final LoreMatcher matcher;
+        private final int triggerIndex;
+        private final int fortuneLevel;
+
+        private CachedTool(int slot, ItemStack item, LoreMatcher matcher, int triggerIndex, int fortuneLevel) {
+            this.slot = slot;
+            this.type = item.getType();
+            this.durability = item.getDurability();
+            this.hasMeta = item.hasItemMeta();
+            this.matcher = matcher;
+            this.triggerIndex = triggerIndex;
+            this.fortuneLevel = fortuneLevel;
+        }
+
+        private boolean matches(int slot, ItemStack item) {
+            return this.slot == slot && type == item.getType() && durability == item.getDurability()
+                    && hasMeta == item.hasItemMeta();
+        }
+    }
+}
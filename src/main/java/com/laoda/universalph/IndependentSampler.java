@@ -0,0 +1,147 @@
+package com.laoda.universalph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * 独立判定的不可变随机表：每个元素按自己的概率分别判定，一次抽样可以得到0到多个元素
+ * 元素按概率所在的2的幂区间分桶，桶 [q/2, q) 内先以概率 q 按几何分布跳到下一个候选元素，
+ * 再以 p/q（不低于1/2）接受，结果与逐个判定完全相同
+ * 每次抽样的随机数数量约为 桶数 + 2 × 期望命中数，与元素数量无关，几百个低概率元素也只需要几次随机数
+ * @param <T> 表中元素类型
+ */
+public final class IndependentSampler<T> {
+    private final List<T> items;
+    private final double[] probabilities;
+    private final List<T> certain;
+    private final Bucket<T>[] buckets;
+
+    /**
+     * @param items 候选元素
+     * @param probabilities 与元素一一对应的命中概率，小于等于0的元素永远不会命中，大于等于1的元素每次都命中
+     */
+    @SuppressWarnings("unchecked")
+    public IndependentSampler(List<T> items, double[] probabilities) {
+        if (items.size() != probabilities.length) {
+            throw new IllegalArgumentException("元素数量与概率数量不一致");
+        }
+
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.probabilities = new double[probabilities.length];
+        List<T> always = new ArrayList<>();
+        // 按概率的二进制指数分桶：p 在 [2^e, 2^(e+1)) 内的元素使用 q = 2^(e+1)
+        TreeMap<Integer, List<Integer>> grouped = new TreeMap<>(Collections.<Integer>reverseOrder());
+        for (int i = 0; i < probabilities.length; i++) {
+            double p = probabilities[i] > 0 ? Math.min(1.0, probabilities[i]) : 0;
+            this.probabilities[i] = p;
+            if (p >= 1.0) {
+                always.add(items.get(i));
+            } else if (p > 0) {
+                int exponent = Math.getExponent(p);
+                List<Integer> group = grouped.get(exponent);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    grouped.put(exponent, group);
+                }
+                group.add(i);
+            }
+        }
+        this.certain = Collections.unmodifiableList(always);
+
+        this.buckets = new Bucket[grouped.size()];
+        int index = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : grouped.entrySet()) {
+            double q = Math.scalb(1.0, entry.getKey() + 1);
+            List<Integer> members = entry.getValue();
+            Object[] bucketItems = new Object[members.size()];
+            double[] accept = new double[members.size()];
+            for (int j = 0; j < members.size(); j++) {
+                bucketItems[j] = items.get(members.get(j));
+                accept[j] = this.probabilities[members.get(j)] / q;
+            }
+            buckets[index++] = new Bucket<>((T[]) bucketItems, accept, q);
+        }
+    }
+
+    /**
+     * 独立判定每个元素，把命中的元素追加到列表
+     * @param random 随机数来源
+     * @param out 命中的元素
+     */
+    public void sample(Random random, List<T> out) {
+        out.addAll(certain);
+        for (Bucket<T> bucket : buckets) {
+            int size = bucket.items.length;
+            int candidate = -1;
+            while (true) {
+                // 几何分布：下一个以概率 q 成为候选的元素之前跳过的元素数量，超出桶的范围时直接结束
+                double skip = bucket.logComplement == Double.NEGATIVE_INFINITY ? 0
+                        : Math.floor(Math.log(1.0 - random.nextDouble()) / bucket.logComplement);
+                if (skip >= size - 1 - candidate) {
+                    break;
+                }
+                candidate += 1 + (int) skip;
+                if (random.nextDouble() < bucket.accept[candidate]) {
+                    out.add(bucket.items[candidate]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 表是否没有任何可能命中的元素
+     * @return 是否为空
+     */
+    public boolean isEmpty() {
+        return certain.isEmpty() && buckets.length == 0;
+    }
+
+    /**
+     * 获取表中的所有元素
+     * @return 不可修改的元素列表
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 获取某个元素的命中概率
+     * @param index 元素下标
+     * @return 命中概率
+     */
+    public double getProbability(int index) {
+        return probabilities[index];
+    }
+
+    /**
+     * 每次抽样期望命中的元素数量
+     * @return 期望命中数
+     */
+    public double getExpectedHits() {
+        double total = 0;
+        for (double p : probabilities) {
+            total += p;
+        }
+        return total;
+    }
+
+    /**
+     * 概率在同一个2的幂区间内的元素
+     */
+    private static final class Bucket<T> {
+        private final T[] items;
+        private final double[] accept;
+        /** ln(1 - q)，q 为1时是负无穷，表示每个元素都是候选 */
+        private final double logComplement;
+
+        private Bucket(T[] items, double[] accept, double q) {
+            this.items = items;
+            this.accept = accept;
+            this.logComplement = Math.log1p(-q);
+        }
+    }
+}
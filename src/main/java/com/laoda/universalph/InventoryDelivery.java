@@ -0,0 +1,267 @@
+package com.laoda.universalph;
+
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 背包投递：把掉落物直接放入收获玩家的背包，放不下的部分作为掉落物在作物位置生成
+ * 同一tick内同一玩家的掉落物先按相同物品合并，tick结束时只调用一次 addItem，
+ * 时运放大后的大量掉落也只需要按最大堆叠数量拆分一次
+ * 在区域多线程服务器上不进行合并，每次掉落直接交给玩家所属线程放入背包
+ */
+public class InventoryDelivery implements Runnable {
+    private final UniversalPotatoHarvest plugin;
+    private final Map<UUID, PendingDelivery> pending = new HashMap<>();
+    private HarvestScheduler.Task task;
+
+    public InventoryDelivery(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 启动每tick运行一次的投递任务
+     */
+    public void start() {
+        if (task == null && !plugin.getHarvestScheduler().isRegionThreaded()) {
+            task = plugin.getHarvestScheduler().runGlobalTimer(this, 1L, 1L);
+        }
+    }
+
+    /**
+     * 停止投递任务，并立即投递所有尚未投递的掉落物
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        run();
+    }
+
+    /**
+     * 把物品放入玩家背包；在合并周期内先缓存，区域多线程服务器上立即交给玩家所属线程处理
+     * @param snapshot 本次事件读取到的配置快照
+     * @param player 收获的玩家
+     * @param location 作物位置，背包放不下时在此处掉落
+     * @param item 物品，数量可以超过最大堆叠数量
+     */
+    public void deliver(HarvestSnapshot snapshot, Player player, Location location, ItemStack item) {
+        if (task == null) {
+            final DropBatcher.Settings batchSettings = snapshot.getBatchSettings();
+            plugin.getHarvestScheduler().runFor(player, () ->
+                    insert(batchSettings, player, location, Collections.singletonList(new PendingItem(item))));
+            return;
+        }
+
+        PendingDelivery delivery = pending.get(player.getUniqueId());
+        if (delivery == null) {
+            delivery = new PendingDelivery(player, location);
+            pending.put(player.getUniqueId(), delivery);
+        }
+
+        // 每个玩家一次收获的物品种类很少，线性查找相同物品即可
+        for (PendingItem existing : delivery.items) {
+            if (existing.item.isSimilar(item)) {
+                existing.amount += item.getAmount();
+                return;
+            }
+        }
+        delivery.items.add(new PendingItem(item));
+    }
+
+    @Override
+    public void run() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        DropBatcher.Settings batchSettings = plugin.getSnapshot().getBatchSettings();
+        for (PendingDelivery delivery : pending.values()) {
+            insert(batchSettings, delivery.player, delivery.location, delivery.items);
+        }
+        pending.clear();
+    }
+
+    /**
+     * 按最大堆叠数量拆分后一次性放入背包，放不下的部分交给掉落物合并器生成
+     * 超出背包格子数的部分不会尝试放入，直接掉落
+     */
+    private void insert(DropBatcher.Settings batchSettings, Player player, Location location, List<PendingItem> items) {
+        DropBatcher batcher = plugin.getDropBatcher();
+        if (!player.isOnline() || player.isDead()) {
+            for (PendingItem pendingItem : items) {
+                pendingItem.item.setAmount(pendingItem.amount);
+                batcher.drop(batchSettings, location, pendingItem.item);
+            }
+            return;
+        }
+
+        int slots = player.getInventory().getSize();
+        List<ItemStack> stacks = new ArrayList<>(Math.min(slots, items.size() * 2));
+        for (PendingItem pendingItem : items) {
+            int maxStackSize = Math.max(1, pendingItem.item.getMaxStackSize());
+            int remaining = pendingItem.amount;
+            while (remaining > 0 && stacks.size() < slots) {
+                ItemStack stack = pendingItem.item.clone();
+                stack.setAmount(Math.min(remaining, maxStackSize));
+                remaining -= stack.getAmount();
+                stacks.add(stack);
+            }
+            if (remaining > 0) {
+                ItemStack overflow = pendingItem.item.clone();
+                overflow.setAmount(remaining);
+                batcher.drop(batchSettings, location, overflow);
+            }
+        }
+
+        Map<Integer, ItemStack> leftovers = player.getInventory().addItem(stacks.toArray(new ItemStack[0]));
+        for (ItemStack leftover : leftovers.values()) {
+            batcher.drop(batchSettings, location, leftover);
+        }
+    }
+
+    /**
+     * 掉落物投递方式
+     */
+    public enum Mode {
+        /** 在作物位置生成掉落物实体 */
+        WORLD,
+        /** 直接放入收获玩家的背包 */
+        INVENTORY;
+
+        /**
+         * 解析配置中的投递方式
+         * @param value 配置值
+         * @return 投递方式，无法识别时返回null
+         */
+        static Mode parse(String value) {
+            if ("inventory".equalsIgnoreCase(value)) {
+                return INVENTORY;
+            }
+            if ("world".equalsIgnoreCase(value)) {
+                return WORLD;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 投递设置（config.yml 中的 drop-delivery 部分）
+     * 触发Lore的设置优先于掉落表的设置，都未配置时使用默认投递方式
+     */
+    public static final class Settings {
+        private final Mode defaultMode;
+        private final Map<String, Mode> tableModes;
+        private final Mode[] toolModes;
+
+        public Settings(Mode defaultMode, Map<String, Mode> tableModes, Mode[] toolModes) {
+            this.defaultMode = defaultMode;
+            this.tableModes = tableModes;
+            this.toolModes = toolModes;
+        }
+
+        /**
+         * 从配置节读取投递设置
+         * @param section drop-delivery 配置节，可以为null
+         * @param triggerLores 触发Lore列表，按其下标保存各工具的投递方式
+         * @return 投递设置
+         */
+        public static Settings fromConfig(ConfigurationSection section, List<String> triggerLores) {
+            Mode[] toolModes = new Mode[triggerLores.size()];
+            if (section == null) {
+                return new Settings(Mode.WORLD, Collections.<String, Mode>emptyMap(), toolModes);
+            }
+
+            Mode defaultMode = Mode.parse(section.getString("mode", "world"));
+            if (defaultMode == null) {
+                UniversalPotatoHarvest.LOGGER.warning("无效的投递方式 \"" + section.getString("mode") + "\"，将使用 world");
+                defaultMode = Mode.WORLD;
+            }
+
+            Map<String, Mode> tableModes = new HashMap<>();
+            ConfigurationSection tables = section.getConfigurationSection("tables");
+            if (tables != null) {
+                for (String table : tables.getKeys(false)) {
+                    Mode mode = Mode.parse(tables.getString(table));
+                    if (mode == null) {
+                        UniversalPotatoHarvest.LOGGER.warning("掉落表 " + table + " 的投递方式无效，已忽略");
+                        continue;
+                    }
+                    tableModes.put(table.toLowerCase(), mode);
+                }
+            }
+
+            ConfigurationSection tools = section.getConfigurationSection("tools");
+            if (tools != null) {
+                for (String lore : tools.getKeys(false)) {
+                    int index = triggerLores.indexOf(lore);
+                    Mode mode = Mode.parse(tools.getString(lore));
+                    if (index < 0 || mode == null) {
+                        UniversalPotatoHarvest.LOGGER.warning("投递配置中的 \"" + lore + "\" 不在 trigger-item.lore 中或投递方式无效，已忽略");
+                        continue;
+                    }
+                    toolModes[index] = mode;
+                }
+            }
+
+            return new Settings(defaultMode, Collections.unmodifiableMap(tableModes), toolModes);
+        }
+
+        /**
+         * 获取掉落表的投递方式
+         * @param tableName 掉落表名称（小写），没有掉落表时为null
+         * @return 投递方式，未单独配置时返回默认投递方式
+         */
+        public Mode getTableMode(String tableName) {
+            Mode mode = tableName != null ? tableModes.get(tableName) : null;
+            return mode != null ? mode : defaultMode;
+        }
+
+        /**
+         * 获取一次收获使用的投递方式
+         * @param triggerIndex 触发Lore下标
+         * @param tableMode 作物所在世界的掉落表的投递方式
+         * @return 投递方式
+         */
+        public Mode getMode(int triggerIndex, Mode tableMode) {
+            Mode mode = triggerIndex >= 0 && triggerIndex < toolModes.length ? toolModes[triggerIndex] : null;
+            return mode != null ? mode : tableMode;
+        }
+    }
+
+    /**
+     * 等待放入某个玩家背包的物品，背包放不下时在第一次收获的位置掉落
+     */
+    private static final class PendingDelivery {
+        private final Player player;
+        private final Location location;
+        private final List<PendingItem> items = new ArrayList<>(2);
+
+        private PendingDelivery(Player player, Location location) {
+            this.player = player;
+            this.location = location;
+        }
+    }
+
+    /**
+     * 一组相同物品及其合并后的总数量
+     */
+    private static final class PendingItem {
+        private final ItemStack item;
+        private int amount;
+
+        private PendingItem(ItemStack item) {
+            this.item = item;
+            this.amount = item.getAmount();
+        }
+    }
+}
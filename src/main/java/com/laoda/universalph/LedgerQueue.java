@@ -0,0 +1,101 @@
+package com.laoda.universalph;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 有界无锁的收获记录队列（多生产者、单消费者）
+ * 每条记录是三个 long，保存在预分配的数组中，入队不创建任何对象；队列满时入队直接失败，不会阻塞收获线程
+ * 每个槽位的序号表示槽位状态：等于写入位置时可写，等于写入位置+1时可读
+ */
+final class LedgerQueue {
+    private final int mask;
+    private final long[] first;
+    private final long[] second;
+    private final long[] third;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /** 只由消费者线程读写 */
+    private long head;
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    LedgerQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        first = new long[size];
+        second = new long[size];
+        third = new long[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 写入一条记录，可以在任意线程调用
+     * @return 队列已满时返回false
+     */
+    boolean offer(long a, long b, long c) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    first[index] = a;
+                    second[index] = b;
+                    third[index] = c;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 取出已写入的记录，只能由唯一的消费者线程调用
+     * @param consumer 记录处理
+     * @param max 最多取出的数量
+     * @return 取出的数量
+     */
+    int drain(RecordConsumer consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            consumer.accept(first[index], second[index], third[index]);
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * 当前队列中的记录数量（近似值）
+     * @return 记录数量
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(mask + 1, tail.get() - head));
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 记录处理
+     */
+    interface RecordConsumer {
+        void accept(long a, long b, long c);
+    }
+}
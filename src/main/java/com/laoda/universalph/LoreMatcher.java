@@ -0,0 +1,178 @@
+package com.laoda.universalph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基于Aho-Corasick自动机的多模式Lore匹配器
+ * 无论配置了多少条触发Lore，每行文本都只需扫描一遍
+ */
+public final class LoreMatcher {
+    private static final int ROOT = 0;
+
+    private final List<String> patterns;
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final int[] output;
+
+    /**
+     * 根据触发Lore列表构建自动机
+     * @param patterns 触发Lore文本，只要任一文本出现在某行Lore中即视为匹配
+     */
+    public LoreMatcher(List<String> patterns) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+
+        // 先用有序映射构建字典树，再压缩为按字符排序的数组
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        terminal.add(-1);
+
+        for (int index = 0; index < this.patterns.size(); index++) {
+            String pattern = this.patterns.get(index);
+            int node = ROOT;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = trie.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    terminal.add(-1);
+                    trie.get(node).put(pattern.charAt(i), next);
+                }
+                node = next;
+            }
+            // 重复的触发Lore只保留第一次出现的下标
+            if (terminal.get(node) < 0) {
+                terminal.set(node, index);
+            }
+        }
+
+        int size = trie.size();
+        edgeChars = new char[size][];
+        edgeTargets = new int[size][];
+        fail = new int[size];
+        output = new int[size];
+
+        for (int node = 0; node < size; node++) {
+            TreeMap<Character, Integer> children = trie.get(node);
+            edgeChars[node] = new char[children.size()];
+            edgeTargets[node] = new int[children.size()];
+            int index = 0;
+            for (Map.Entry<Character, Integer> entry : children.entrySet()) {
+                edgeChars[node][index] = entry.getKey();
+                edgeTargets[node][index] = entry.getValue();
+                index++;
+            }
+            output[node] = terminal.get(node);
+        }
+
+        // 广度优先计算失配指针，并把后缀上的匹配状态合并到当前节点
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int i = 0; i < edgeChars[node].length; i++) {
+                char c = edgeChars[node][i];
+                int child = edgeTargets[node][i];
+
+                int fallback = fail[node];
+                while (fallback != ROOT && transition(fallback, c) < 0) {
+                    fallback = fail[fallback];
+                }
+                int target = transition(fallback, c);
+                fail[child] = target >= 0 && target != child ? target : ROOT;
+                if (output[child] < 0) {
+                    output[child] = output[fail[child]];
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 检查一行文本中是否包含任一触发Lore
+     * @param text 待检查的文本
+     * @return 是否匹配
+     */
+    public boolean matches(String text) {
+        return find(text) >= 0;
+    }
+
+    /**
+     * 查找一行文本中出现的触发Lore
+     * @param text 待检查的文本
+     * @return 匹配到的触发Lore下标（对应 {@link #getPatterns()}），没有匹配时返回-1
+     */
+    public int find(String text) {
+        if (output[ROOT] >= 0) {
+            return output[ROOT];
+        }
+
+        int node = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next = transition(node, c);
+            while (next < 0 && node != ROOT) {
+                node = fail[node];
+                next = transition(node, c);
+            }
+            node = next < 0 ? ROOT : next;
+            if (output[node] >= 0) {
+                return output[node];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 检查多行Lore中是否有任意一行包含触发Lore
+     * @param lines Lore行
+     * @return 是否匹配
+     */
+    public boolean matchesAny(List<String> lines) {
+        return findAny(lines) >= 0;
+    }
+
+    /**
+     * 在多行Lore中查找第一个出现的触发Lore
+     * @param lines Lore行
+     * @return 匹配到的触发Lore下标，没有匹配时返回-1
+     */
+    public int findAny(List<String> lines) {
+        if (lines == null) {
+            return -1;
+        }
+        for (String line : lines) {
+            if (line != null) {
+                int index = find(line);
+                if (index >= 0) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 获取构建此匹配器的触发Lore列表
+     * @return 不可修改的触发Lore列表
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    private int transition(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+}
@@ -0,0 +1,315 @@
+package com.laoda.universalph;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 成熟作物索引：按区块记录成熟作物的坐标（打包为 long，见 {@link LongHashSet#pack(int, int, int)}），
+ * 自动收割机只需读取范围内区块的坐标集合，不需要逐个方块扫描
+ * 只为位于某台收割机范围内的区块建立索引（按收割机数量引用计数）；区块加载或开始被关注时，
+ * 在区块所属的线程上取区块快照，再在异步线程中扫描一次，之后由作物生长、方块破坏和放置事件增量维护，区块卸载时丢弃
+ * 水流、活塞、踩踏等没有监听的变化可能留下已失效的坐标，查询方在收获前重新检查方块并移除失效的坐标
+ * 每个区块的坐标集合各自加锁，区块所属线程、收割机所在线程和扫描线程可以同时访问
+ */
+public class MatureCropIndex implements Listener {
+    private static final long[] NO_POSITIONS = new long[0];
+
+    private final UniversalPotatoHarvest plugin;
+    private final Map<UUID, Map<Long, ChunkEntry>> worlds = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingScans = new AtomicInteger();
+    /** 上一次扫描使用的作物种类，作物配置变化后需要重新扫描所有区块 */
+    private String cropSignature;
+
+    public MatureCropIndex(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 开始关注一个区块，第一次关注且区块已加载时安排扫描
+     * @param world 世界
+     * @param chunkX 区块X坐标
+     * @param chunkZ 区块Z坐标
+     */
+    public void watch(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkEntry> chunks = worlds.computeIfAbsent(world.getUID(), id -> new ConcurrentHashMap<>());
+        final boolean[] first = new boolean[1];
+        ChunkEntry entry = chunks.compute(chunkKey(chunkX, chunkZ), (key, existing) -> {
+            ChunkEntry current = existing != null ? existing : new ChunkEntry();
+            first[0] = current.watchers++ == 0;
+            return current;
+        });
+        if (first[0]) {
+            scheduleScan(world, chunkX, chunkZ, entry);
+        }
+    }
+
+    /**
+     * 不再关注一个区块，没有收割机关注时丢弃该区块的索引
+     * @param world 世界
+     * @param chunkX 区块X坐标
+     * @param chunkZ 区块Z坐标
+     */
+    public void unwatch(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkEntry> chunks = worlds.get(world.getUID());
+        if (chunks == null) {
+            return;
+        }
+        chunks.computeIfPresent(chunkKey(chunkX, chunkZ), (key, entry) -> {
+            if (--entry.watchers > 0) {
+                return entry;
+            }
+            synchronized (entry) {
+                // 让尚未完成的扫描作废
+                entry.generation++;
+                entry.positions.clear();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 复制一个区块中已索引的成熟作物坐标
+     * @param world 世界
+     * @param chunkX 区块X坐标
+     * @param chunkZ 区块Z坐标
+     * @return 打包后的坐标，区块没有被关注时为空数组
+     */
+    public long[] positionsIn(World world, int chunkX, int chunkZ) {
+        ChunkEntry entry = entry(world, chunkX, chunkZ);
+        if (entry == null) {
+            return NO_POSITIONS;
+        }
+        synchronized (entry) {
+            if (entry.positions.isEmpty()) {
+                return NO_POSITIONS;
+            }
+            final long[] copy = new long[entry.positions.size()];
+            final int[] length = new int[1];
+            entry.positions.forEach(position -> copy[length[0]++] = position);
+            return copy;
+        }
+    }
+
+    /**
+     * 记录一株成熟作物，所在区块没有被关注时忽略
+     */
+    public void add(World world, int x, int y, int z) {
+        ChunkEntry entry = entry(world, x >> 4, z >> 4);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.positions.add(LongHashSet.pack(x, y, z));
+            }
+        }
+    }
+
+    /**
+     * 移除一个坐标（作物被收获、破坏或已失效）
+     */
+    public void remove(World world, int x, int y, int z) {
+        ChunkEntry entry = entry(world, x >> 4, z >> 4);
+        if (entry != null) {
+            synchronized (entry) {
+                entry.positions.remove(LongHashSet.pack(x, y, z));
+            }
+        }
+    }
+
+    /**
+     * 作物配置（种类或成熟阶段）变化后重新扫描所有被关注的区块
+     * @param crops 当前配置快照中的作物规则
+     */
+    public synchronized void refresh(CropRegistry crops) {
+        StringBuilder signature = new StringBuilder();
+        for (CropRule rule : crops.getRules()) {
+            signature.append(rule.getBlock().name()).append(':').append(rule.getMatureAge()).append(',');
+        }
+        String current = signature.toString();
+        if (cropSignature == null) {
+            cropSignature = current;
+            return;
+        }
+        if (cropSignature.equals(current)) {
+            return;
+        }
+        cropSignature = current;
+
+        for (Map.Entry<UUID, Map<Long, ChunkEntry>> worldEntry : worlds.entrySet()) {
+            World world = plugin.getServer().getWorld(worldEntry.getKey());
+            if (world == null) {
+                continue;
+            }
+            for (Map.Entry<Long, ChunkEntry> chunk : worldEntry.getValue().entrySet()) {
+                synchronized (chunk.getValue()) {
+                    chunk.getValue().positions.clear();
+                }
+                long key = chunk.getKey();
+                scheduleScan(world, (int) (key >> 32), (int) key, chunk.getValue());
+            }
+        }
+    }
+
+    /**
+     * 被关注的区块数量与已索引的成熟作物数量
+     * @return 状态信息
+     */
+    public String status() {
+        int chunks = 0;
+        int positions = 0;
+        for (Map<Long, ChunkEntry> world : worlds.values()) {
+            for (ChunkEntry entry : world.values()) {
+                chunks++;
+                synchronized (entry) {
+                    positions += entry.positions.size();
+                }
+            }
+        }
+        return "已索引 " + chunks + " 个区块中的 " + positions + " 株成熟作物"
+                + (pendingScans.get() > 0 ? "，" + pendingScans.get() + " 个区块等待扫描" : "");
+    }
+
+    /**
+     * 在区块所属的线程上取区块快照，再交给异步线程扫描；区块未加载时等待区块加载事件
+     */
+    private void scheduleScan(final World world, final int chunkX, final int chunkZ, final ChunkEntry entry) {
+        plugin.getHarvestScheduler().runAt(new Location(world, chunkX << 4, 0, chunkZ << 4), () -> {
+            if (world.isChunkLoaded(chunkX, chunkZ)) {
+                scan(world, world.getChunkAt(chunkX, chunkZ), entry);
+            }
+        });
+    }
+
+    private void scan(World world, Chunk chunk, final ChunkEntry entry) {
+        final ChunkSnapshot snapshot = chunk.getChunkSnapshot();
+        final int generation;
+        synchronized (entry) {
+            generation = ++entry.generation;
+        }
+        final CropRegistry crops = plugin.getSnapshot().getCrops();
+        final int maxHeight = world.getMaxHeight();
+        final int baseX = chunk.getX() << 4;
+        final int baseZ = chunk.getZ() << 4;
+
+        pendingScans.incrementAndGet();
+        plugin.getHarvestScheduler().runAsync(() -> {
+            try {
+                LongHashSet found = new LongHashSet(64);
+                for (int section = 0; section < maxHeight >> 4; section++) {
+                    if (snapshot.isSectionEmpty(section)) {
+                        continue;
+                    }
+                    for (int y = section << 4; y < (section + 1) << 4; y++) {
+                        for (int z = 0; z < 16; z++) {
+                            for (int x = 0; x < 16; x++) {
+                                int typeId = snapshot.getBlockTypeId(x, y, z);
+                                if (typeId == 0) {
+                                    continue;
+                                }
+                                Material type = Material.getMaterial(typeId);
+                                CropRule rule = type != null ? crops.get(type) : null;
+                                if (rule != null && rule.isMature((byte) snapshot.getBlockData(x, y, z))) {
+                                    found.add(LongHashSet.pack(baseX + x, y, baseZ + z));
+                                }
+                            }
+                        }
+                    }
+                }
+
+                // 与扫描期间由事件加入的坐标合并；区块已卸载、不再被关注或重新扫描时丢弃结果
+                synchronized (entry) {
+                    if (entry.generation == generation) {
+                        found.forEach(entry.positions::add);
+                    }
+                }
+            } finally {
+                pendingScans.decrementAndGet();
+            }
+        });
+    }
+
+    private ChunkEntry entry(World world, int chunkX, int chunkZ) {
+        Map<Long, ChunkEntry> chunks = worlds.get(world.getUID());
+        return chunks != null ? chunks.get(chunkKey(chunkX, chunkZ)) : null;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGrow(BlockGrowEvent event) {
+        BlockState grown = event.getNewState();
+        CropRule rule = plugin.getSnapshot().getCrops().get(grown.getType());
+        if (rule != null && rule.isMature(grown.getRawData())) {
+            Block block = event.getBlock();
+            add(block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        remove(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+        remove(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        ChunkEntry entry = entry(event.getWorld(), chunk.getX(), chunk.getZ());
+        if (entry != null) {
+            scan(event.getWorld(), chunk, entry);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        ChunkEntry entry = entry(event.getWorld(), chunk.getX(), chunk.getZ());
+        if (entry != null) {
+            synchronized (entry) {
+                entry.generation++;
+                entry.positions.clear();
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getUID());
+    }
+
+    /**
+     * 一个被关注区块的索引
+     */
+    private static final class ChunkEntry {
+        /** 关注此区块的收割机数量，只在所属映射的 compute 中修改 */
+        private int watchers;
+        /** 每次卸载或重新扫描时加一，用于丢弃过期的扫描结果 */
+        private int generation;
+        private final LongHashSet positions = new LongHashSet(16);
+    }
+}
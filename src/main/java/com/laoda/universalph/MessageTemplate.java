@@ -0,0 +1,90 @@
+package com.laoda.universalph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的消息模板
+ * 加载配置时把 "&e收获了 {count} 株" 这样的文本转换颜色代码并拆分为固定片段和占位符下标，
+ * 发送消息时只按顺序拼接，不再查找或替换字符串；未声明的占位符按原文保留
+ */
+public final class MessageTemplate {
+    private final String[] literals;
+    private final int[] arguments;
+
+    private MessageTemplate(String[] literals, int[] arguments) {
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    /**
+     * 编译一个模板
+     * @param text 模板文本（使用&作为颜色代码），为null时视为空文本
+     * @param names 模板可以使用的占位符名称，顺序即 {@link #appendTo(StringBuilder, Object...)} 的参数顺序
+     * @return 编译后的模板
+     */
+    public static MessageTemplate compile(String text, String... names) {
+        String source = text != null ? text.replace('&', '§') : "";
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int index = 0;
+        while (index < source.length()) {
+            int open = source.indexOf('{', index);
+            int close = open >= 0 ? source.indexOf('}', open) : -1;
+            if (close < 0) {
+                literal.append(source, index, source.length());
+                break;
+            }
+            literal.append(source, index, open);
+            int argument = indexOf(names, source.substring(open + 1, close));
+            if (argument < 0) {
+                literal.append(source, open, close + 1);
+            } else {
+                literals.add(literal.toString());
+                arguments.add(argument);
+                literal.setLength(0);
+            }
+            index = close + 1;
+        }
+        literals.add(literal.toString());
+
+        int[] argumentArray = new int[arguments.size()];
+        for (int i = 0; i < argumentArray.length; i++) {
+            argumentArray[i] = arguments.get(i);
+        }
+        return new MessageTemplate(literals.toArray(new String[0]), argumentArray);
+    }
+
+    /**
+     * 按模板拼接消息
+     * @param out 输出
+     * @param values 占位符的值，顺序与编译时的名称一致
+     */
+    public void appendTo(StringBuilder out, Object... values) {
+        for (int i = 0; i < arguments.length; i++) {
+            out.append(literals[i]).append(values[arguments[i]]);
+        }
+        out.append(literals[arguments.length]);
+    }
+
+    /**
+     * 按模板生成消息
+     * @param values 占位符的值，顺序与编译时的名称一致
+     * @return 消息
+     */
+    public String format(Object... values) {
+        StringBuilder out = new StringBuilder();
+        appendTo(out, values);
+        return out.toString();
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
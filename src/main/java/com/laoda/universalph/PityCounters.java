@@ -0,0 +1,165 @@
+package com.laoda.universalph;
+
+import java.util.Arrays;
+
+/**
+ * 以玩家UUID为键的保底计数表，全部数据保存在基本类型数组中
+ * 按UUID分为多个段，每段是一张开放寻址的表并各自加锁，不同玩家同时收获时很少竞争
+ * 计数归零的玩家保留在表中（写快照时跳过），不需要处理开放寻址的删除
+ */
+final class PityCounters {
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    PityCounters() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * 返回玩家当前的计数，并把计数加一
+     * @return 加一之前的计数
+     */
+    int getAndIncrement(long most, long least) {
+        Segment segment = segment(most, least);
+        synchronized (segment) {
+            int slot = segment.slotFor(most, least);
+            return segment.counts[slot]++;
+        }
+    }
+
+    /**
+     * 设置玩家的计数
+     */
+    void set(long most, long least, int count) {
+        Segment segment = segment(most, least);
+        synchronized (segment) {
+            if (count == 0) {
+                int slot = segment.find(most, least);
+                if (slot >= 0) {
+                    segment.counts[slot] = 0;
+                }
+                return;
+            }
+            segment.counts[segment.slotFor(most, least)] = count;
+        }
+    }
+
+    /**
+     * 获取玩家的计数
+     * @return 计数，不存在时为0
+     */
+    int get(long most, long least) {
+        Segment segment = segment(most, least);
+        synchronized (segment) {
+            int slot = segment.find(most, least);
+            return slot >= 0 ? segment.counts[slot] : 0;
+        }
+    }
+
+    /**
+     * 复制所有计数不为0的玩家，每段只在复制时加锁
+     * @return 依次为 UUID高位、UUID低位、计数 的数组
+     */
+    long[] copyNonZero() {
+        long[] copy = new long[0];
+        int length = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                int needed = length + segment.size * 3;
+                if (needed > copy.length) {
+                    copy = Arrays.copyOf(copy, Math.max(needed, copy.length * 2));
+                }
+                for (int slot = 0; slot < segment.counts.length; slot++) {
+                    if (segment.used[slot] && segment.counts[slot] != 0) {
+                        copy[length++] = segment.mostBits[slot];
+                        copy[length++] = segment.leastBits[slot];
+                        copy[length++] = segment.counts[slot];
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(copy, length);
+    }
+
+    private Segment segment(long most, long least) {
+        long hash = most ^ least;
+        return segments[(int) (hash ^ (hash >>> 32)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 一段开放寻址表，负载因子不超过0.5
+     */
+    private static final class Segment {
+        private long[] mostBits = new long[16];
+        private long[] leastBits = new long[16];
+        private int[] counts = new int[16];
+        private boolean[] used = new boolean[16];
+        private int size;
+
+        private int find(long most, long least) {
+            int mask = counts.length - 1;
+            int slot = hash(most, least) & mask;
+            while (used[slot]) {
+                if (mostBits[slot] == most && leastBits[slot] == least) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private int slotFor(long most, long least) {
+            int slot = find(most, least);
+            if (slot >= 0) {
+                return slot;
+            }
+            if ((size + 1) * 2 > counts.length) {
+                resize(counts.length * 2);
+            }
+            int mask = counts.length - 1;
+            slot = hash(most, least) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            mostBits[slot] = most;
+            leastBits[slot] = least;
+            size++;
+            return slot;
+        }
+
+        private void resize(int capacity) {
+            long[] oldMost = mostBits;
+            long[] oldLeast = leastBits;
+            int[] oldCounts = counts;
+            boolean[] oldUsed = used;
+            mostBits = new long[capacity];
+            leastBits = new long[capacity];
+            counts = new int[capacity];
+            used = new boolean[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldCounts.length; i++) {
+                if (!oldUsed[i]) {
+                    continue;
+                }
+                int slot = hash(oldMost[i], oldLeast[i]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                used[slot] = true;
+                mostBits[slot] = oldMost[i];
+                leastBits[slot] = oldLeast[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+
+        private static int hash(long most, long least) {
+            long hash = (most * 0x9E3779B97F4A7C15L) ^ least;
+            hash ^= hash >>> 29;
+            return (int) (hash ^ (hash >>> 32)) >>> 4;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.laoda.universalph;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * 稀有掉落保底：记录每名玩家连续多少次收获没有得到稀有掉落
+ * 计数保存在按UUID分段的基本类型表中，后台任务定期把有变化的计数整体写成快照，停服时再写一次
+ * 文件格式: magic, 版本, 玩家数, 每个玩家 {UUID, 计数}, CRC32
+ */
+public class PityTracker {
+    private static final int MAGIC = 0x55504850;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4;
+    private static final int ROW_BYTES = 8 + 8 + 4;
+
+    private final File file;
+    private final Logger logger;
+    private final PityCounters counters = new PityCounters();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Object writeLock = new Object();
+    private volatile boolean available;
+    private HarvestScheduler.Task task;
+
+    /**
+     * @param file 快照文件，为null时只在内存中计数（离线工具使用）
+     * @param logger 日志输出
+     */
+    public PityTracker(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * 读取快照；读取失败时不再写入文件，避免用不完整的数据覆盖已有记录
+     * @return 是否加载成功
+     */
+    public boolean load() {
+        synchronized (writeLock) {
+            if (file == null) {
+                return false;
+            }
+            try {
+                int players = file.isFile() ? readSnapshot() : 0;
+                logger.info("已加载 " + players + " 名玩家的保底进度");
+                available = true;
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "无法加载保底进度，本次运行不会保存保底进度", e);
+                available = false;
+            }
+            return available;
+        }
+    }
+
+    /**
+     * 启动后台保存任务
+     * @param scheduler 调度适配
+     * @param intervalTicks 保存间隔（tick）
+     */
+    public void start(HarvestScheduler scheduler, long intervalTicks) {
+        if (available && task == null) {
+            task = scheduler.runAsyncTimer(this::save, intervalTicks, intervalTicks);
+        }
+    }
+
+    /**
+     * 停止后台任务并写入最后一次快照
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        save();
+        available = false;
+    }
+
+    /**
+     * 返回玩家连续没有稀有掉落的收获次数，并把本次收获计入
+     * @param playerId 玩家UUID
+     * @return 本次收获之前的次数
+     */
+    public int next(UUID playerId) {
+        dirty.set(true);
+        return counters.getAndIncrement(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+    }
+
+    /**
+     * 玩家得到稀有掉落后清零
+     * @param playerId 玩家UUID
+     */
+    public void reset(UUID playerId) {
+        dirty.set(true);
+        counters.set(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), 0);
+    }
+
+    /**
+     * 获取玩家当前连续没有稀有掉落的收获次数
+     * @param playerId 玩家UUID
+     * @return 次数
+     */
+    public int get(UUID playerId) {
+        return counters.get(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+    }
+
+    /**
+     * 后台任务：计数有变化时复制全部计数并写成新的快照，先写临时文件再原子替换
+     */
+    public void save() {
+        synchronized (writeLock) {
+            if (!available || !dirty.getAndSet(false)) {
+                return;
+            }
+            long[] rows = counters.copyNonZero();
+            int players = rows.length / 3;
+            File temp = new File(file.getPath() + ".tmp");
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + players * ROW_BYTES);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(players);
+                for (int i = 0; i < rows.length; i += 3) {
+                    buffer.putLong(rows[i]).putLong(rows[i + 1]).putInt((int) rows[i + 2]);
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(buffer.array(), 0, buffer.position());
+
+                try (FileOutputStream stream = new FileOutputStream(temp)) {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+                    out.write(buffer.array(), 0, buffer.position());
+                    out.writeInt((int) checksum.getValue());
+                    out.flush();
+                    stream.getFD().sync();
+                }
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                dirty.set(true);
+                logger.log(Level.WARNING, "保存保底进度失败，将在下次保存时重试", e);
+            }
+        }
+    }
+
+    private int readSnapshot() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if (buffer.limit() < HEADER_BYTES + 4) {
+            throw new IOException("保底进度文件大小无效: " + buffer.limit());
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.limit() - 4);
+        if ((int) checksum.getValue() != buffer.getInt(buffer.limit() - 4)) {
+            throw new IOException("保底进度文件校验失败: " + file);
+        }
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("无法识别的保底进度文件: " + file);
+        }
+        int players = buffer.getInt();
+        if (players < 0 || buffer.limit() != HEADER_BYTES + (long) players * ROW_BYTES + 4) {
+            throw new IOException("保底进度文件已损坏: " + file);
+        }
+        for (int i = 0; i < players; i++) {
+            counters.set(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        }
+        return players;
+    }
+
+    /**
+     * 保底设置（config.yml 中的 pity 部分）
+     */
+    public static final class Settings {
+        private final boolean enabled;
+        private final int guaranteeAfter;
+        private final int rampAfter;
+        private final long saveIntervalTicks;
+
+        public Settings(boolean enabled, int guaranteeAfter, int rampAfter, long saveIntervalTicks) {
+            this.enabled = enabled;
+            this.guaranteeAfter = Math.max(1, guaranteeAfter);
+            this.rampAfter = rampAfter > 0 && rampAfter < this.guaranteeAfter ? rampAfter : 0;
+            this.saveIntervalTicks = Math.max(20, saveIntervalTicks);
+        }
+
+        /**
+         * 从配置节读取保底设置
+         * @param section pity 配置节，可以为null
+         * @return 保底设置
+         */
+        public static Settings fromConfig(ConfigurationSection section) {
+            if (section == null) {
+                return new Settings(false, 100, 0, 6000);
+            }
+            return new Settings(
+                    section.getBoolean("enabled", false),
+                    section.getInt("guarantee-after", 100),
+                    section.getInt("ramp-after", 0),
+                    section.getLong("save-interval-ticks", 6000)
+            );
+        }
+
+        /**
+         * 连续 misses 次没有稀有掉落之后，本次收获直接从稀有掉落中抽取的概率
+         * 达到 guarantee-after 次时为1；配置了 ramp-after 时，从第 ramp-after 次起线性提高
+         * 本次收获最终得到稀有掉落的概率为 boost + (1 - boost) × 原概率
+         * @param misses 连续没有稀有掉落的次数
+         * @return 概率
+         */
+        public double getBoost(int misses) {
+            if (misses >= guaranteeAfter) {
+                return 1.0;
+            }
+            if (rampAfter > 0 && misses >= rampAfter) {
+                return (misses - rampAfter + 1) / (double) (guaranteeAfter - rampAfter + 1);
+            }
+            return 0.0;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public int getGuaranteeAfter() {
+            return guaranteeAfter;
+        }
+
+        public long getSaveIntervalTicks() {
+            return saveIntervalTicks;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.laoda.universalph;
+
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * 以玩家UUID为键的收获统计表，全部数据保存在基本类型数组中
+ * 每个玩家占用一行（按加入顺序紧密排列），UUID 到行号的索引使用开放寻址的 int 数组，
+ * 十万名玩家也只有十几个数组，而不是几十万个对象
+ * 不是线程安全的，由 {@link HarvestLedger} 负责同步
+ */
+final class PlayerStatsTable {
+    /** 每行记录的维度数量 */
+    static final int DIMENSIONS = World.Environment.values().length;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] mostBits;
+    private long[] leastBits;
+    private long[] harvests;
+    private long[] rareDrops;
+    private long[] items;
+    private long[] lastHarvest;
+    private long[] dimensionHarvests;
+    private int rows;
+
+    /** 索引槽位保存 行号+1，0 表示空槽 */
+    private int[] index;
+    private int mask;
+
+    PlayerStatsTable(int expectedPlayers) {
+        int capacity = Math.max(16, expectedPlayers);
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        harvests = new long[capacity];
+        rareDrops = new long[capacity];
+        items = new long[capacity];
+        lastHarvest = new long[capacity];
+        dimensionHarvests = new long[capacity * DIMENSIONS];
+        allocateIndex(Integer.highestOneBit((int) (capacity / LOAD_FACTOR) - 1) << 1);
+    }
+
+    /**
+     * 查找玩家所在的行
+     * @return 行号，不存在时返回-1
+     */
+    int find(long most, long least) {
+        int slot = slot(most, least);
+        int row;
+        while ((row = index[slot] - 1) >= 0) {
+            if (mostBits[row] == most && leastBits[row] == least) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 查找玩家所在的行，不存在时新建一行（所有计数为0）
+     * @return 行号
+     */
+    int getOrCreate(long most, long least) {
+        int slot = slot(most, least);
+        int row;
+        while ((row = index[slot] - 1) >= 0) {
+            if (mostBits[row] == most && leastBits[row] == least) {
+                return row;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (rows == mostBits.length) {
+            growRows(rows + (rows >> 1));
+        }
+        row = rows++;
+        mostBits[row] = most;
+        leastBits[row] = least;
+        index[slot] = row + 1;
+        if (rows > index.length * LOAD_FACTOR) {
+            allocateIndex(index.length << 1);
+            for (int i = 0; i < rows; i++) {
+                insertIndex(i);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 累加一次收获
+     * @param row 行号
+     * @param dimension 维度序号（World.Environment.ordinal）
+     * @param rare 是否为稀有掉落
+     * @param amount 掉落数量
+     */
+    void addHarvest(int row, int dimension, boolean rare, int amount) {
+        harvests[row]++;
+        if (rare) {
+            rareDrops[row]++;
+        }
+        items[row] += amount;
+        dimensionHarvests[row * DIMENSIONS + dimension]++;
+    }
+
+    /**
+     * 把另一张表的某一行累加到本表
+     * @param other 来源表
+     * @param otherRow 来源行
+     */
+    void addRow(PlayerStatsTable other, int otherRow) {
+        int row = getOrCreate(other.mostBits[otherRow], other.leastBits[otherRow]);
+        harvests[row] += other.harvests[otherRow];
+        rareDrops[row] += other.rareDrops[otherRow];
+        items[row] += other.items[otherRow];
+        lastHarvest[row] = Math.max(lastHarvest[row], other.lastHarvest[otherRow]);
+        for (int d = 0; d < DIMENSIONS; d++) {
+            dimensionHarvests[row * DIMENSIONS + d] += other.dimensionHarvests[otherRow * DIMENSIONS + d];
+        }
+    }
+
+    /**
+     * 累加一名玩家的全部数据，加载快照或日志时使用
+     */
+    void add(long most, long least, long harvestCount, long rareCount, long itemCount, long lastTime,
+             long[] dimensions) {
+        int row = getOrCreate(most, least);
+        harvests[row] += harvestCount;
+        rareDrops[row] += rareCount;
+        items[row] += itemCount;
+        lastHarvest[row] = Math.max(lastHarvest[row], lastTime);
+        for (int d = 0; d < Math.min(DIMENSIONS, dimensions.length); d++) {
+            dimensionHarvests[row * DIMENSIONS + d] += dimensions[d];
+        }
+    }
+
+    /**
+     * 预先分配容量，避免加载大量玩家时反复扩容
+     * @param expectedPlayers 预计玩家数量
+     */
+    void ensureCapacity(int expectedPlayers) {
+        if (expectedPlayers > mostBits.length) {
+            growRows(expectedPlayers);
+        }
+        if (expectedPlayers > index.length * LOAD_FACTOR) {
+            allocateIndex(Integer.highestOneBit((int) (expectedPlayers / LOAD_FACTOR) - 1) << 1);
+            for (int i = 0; i < rows; i++) {
+                insertIndex(i);
+            }
+        }
+    }
+
+    void setLastHarvest(int row, long time) {
+        lastHarvest[row] = time;
+    }
+
+    int size() {
+        return rows;
+    }
+
+    long getMostBits(int row) {
+        return mostBits[row];
+    }
+
+    long getLeastBits(int row) {
+        return leastBits[row];
+    }
+
+    long getHarvests(int row) {
+        return harvests[row];
+    }
+
+    long getRareDrops(int row) {
+        return rareDrops[row];
+    }
+
+    long getItems(int row) {
+        return items[row];
+    }
+
+    long getLastHarvest(int row) {
+        return lastHarvest[row];
+    }
+
+    long getDimensionHarvests(int row, int dimension) {
+        return dimensionHarvests[row * DIMENSIONS + dimension];
+    }
+
+    /**
+     * 清空所有行，保留已分配的容量
+     */
+    void clear() {
+        Arrays.fill(index, 0);
+        Arrays.fill(harvests, 0, rows, 0);
+        Arrays.fill(rareDrops, 0, rows, 0);
+        Arrays.fill(items, 0, rows, 0);
+        Arrays.fill(lastHarvest, 0, rows, 0);
+        Arrays.fill(dimensionHarvests, 0, rows * DIMENSIONS, 0);
+        rows = 0;
+    }
+
+    private int slot(long most, long least) {
+        long hash = (most ^ least) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void allocateIndex(int capacity) {
+        index = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void insertIndex(int row) {
+        int slot = slot(mostBits[row], leastBits[row]);
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = row + 1;
+    }
+
+    private void growRows(int capacity) {
+        mostBits = Arrays.copyOf(mostBits, capacity);
+        leastBits = Arrays.copyOf(leastBits, capacity);
+        harvests = Arrays.copyOf(harvests, capacity);
+        rareDrops = Arrays.copyOf(rareDrops, capacity);
+        items = Arrays.copyOf(items, capacity);
+        lastHarvest = Arrays.copyOf(lastHarvest, capacity);
+        dimensionHarvests = Arrays.copyOf(dimensionHarvests, capacity * DIMENSIONS);
+    }
+}
@@ -0,0 +1,112 @@
+package com.laoda.universalph;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的滑动时间窗口计数器
+ * 窗口划分为固定数量的时间桶，组成环形数组；每个槽位用一个 long 同时保存桶的编号（高32位）和计数（低32位），
+ * 过期的桶在下一次写入时直接覆盖，不需要清理任务
+ * 多个线程同时计数时按线程分散到不同的分段，每个分段有自己的环形数组，读取时把所有分段相加
+ */
+final class RateWindow {
+    /** 每个窗口划分的时间桶数量，窗口边界的误差不超过一个桶的时长 */
+    static final int BUCKETS = 12;
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final long bucketMillis;
+    private final int stripeMask;
+    private final AtomicLongArray cells;
+
+    /**
+     * @param windowMillis 窗口时长（毫秒）
+     * @param stripes 分段数量，会向上取整为2的幂；只会被一个线程访问的计数器使用1
+     */
+    RateWindow(long windowMillis, int stripes) {
+        this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        int stripeCount = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.stripeMask = stripeCount - 1;
+        this.cells = new AtomicLongArray(stripeCount * BUCKETS);
+    }
+
+    /**
+     * 计数加一，加一后窗口内的总数超过上限时撤销并返回false
+     * 并发时不会超过上限，但可能因为其他线程尚未撤销的计数而拒绝本可以通过的一次
+     * @param limit 窗口内允许的最大次数
+     * @param now 当前时间（毫秒）
+     * @return 是否在上限之内
+     */
+    boolean tryAcquire(int limit, long now) {
+        int epoch = (int) (now / bucketMillis);
+        int cell = cellIndex(epoch);
+        long value;
+        do {
+            value = cells.get(cell);
+        } while (!cells.compareAndSet(cell, value, epochOf(value) == epoch ? value + 1 : pack(epoch, 1)));
+
+        if (count(epoch) <= limit) {
+            return true;
+        }
+        release(now);
+        return false;
+    }
+
+    /**
+     * 撤销当前线程在同一时间的一次计数
+     * @param now 计数时使用的时间（毫秒）
+     */
+    void release(long now) {
+        int epoch = (int) (now / bucketMillis);
+        int cell = cellIndex(epoch);
+        long value;
+        do {
+            value = cells.get(cell);
+            if (epochOf(value) != epoch || (value & COUNT_MASK) == 0) {
+                return;
+            }
+        } while (!cells.compareAndSet(cell, value, value - 1));
+    }
+
+    /**
+     * 窗口内的总次数
+     * @param now 当前时间（毫秒）
+     * @return 次数
+     */
+    long count(long now) {
+        return count((int) (now / bucketMillis));
+    }
+
+    /**
+     * 窗口内是否没有任何计数，用于清理长时间不活跃的计数器
+     * @param now 当前时间（毫秒）
+     * @return 是否空闲
+     */
+    boolean isIdle(long now) {
+        return count(now) == 0;
+    }
+
+    private long count(int epoch) {
+        long total = 0;
+        for (int i = 0; i < cells.length(); i++) {
+            long value = cells.get(i);
+            // 编号按 int 回绕比较，只统计最近 BUCKETS 个桶
+            int age = epoch - epochOf(value);
+            if (age >= 0 && age < BUCKETS) {
+                total += value & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+
+    private int cellIndex(int epoch) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        return stripe * BUCKETS + Math.floorMod(epoch, BUCKETS);
+    }
+
+    private static int epochOf(long value) {
+        return (int) (value >>> 32);
+    }
+
+    private static long pack(int epoch, long count) {
+        return ((long) epoch << 32) | count;
+    }
+}
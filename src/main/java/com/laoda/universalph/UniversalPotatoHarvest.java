@@ -1,49 +1,172 @@
 package com.laoda.universalph;
 
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.enchantments.Enchantment;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public final class UniversalPotatoHarvest extends JavaPlugin {
     private static UniversalPotatoHarvest instance;
-    private FileConfiguration config;
     private DropsManager dropsManager;
+    private HarvestToolCache toolCache;
+    private DropBatcher dropBatcher;
+    private InventoryDelivery inventoryDelivery;
+    private AreaHarvester areaHarvester;
+    private AutoHarvester autoHarvester;
+    private HarvestMetrics metrics;
+    private HarvestLedger ledger;
+    private AuditLog auditLog;
+    private HarvestFeedback feedback;
+    private HarvestScheduler harvestScheduler;
+    private ConfigWatcher configWatcher;
+    private volatile HarvestSnapshot snapshot;
+    /** 命令和定时任务的运行状态，与其他组件一样在 onEnable 中创建 */
+    private AtomicBoolean reloading;
+    private AtomicBoolean simulating;
+    private AtomicBoolean searchingAudit;
+    private AtomicInteger minutesSinceDump;
+    /** /uph simulate 单个时运等级允许的最大试验次数 */
+    private static final long MAX_SIMULATION_TRIALS = 100_000_000L;
+    /** /uph audit 最多显示的记录数量 */
+    private static final int AUDIT_RESULTS = 15;
     public static final Logger LOGGER = Logger.getLogger("UniversalPotatoHarvest");
 
     @Override
     public void onEnable() {
         instance = this;
+        reloading = new AtomicBoolean(false);
+        simulating = new AtomicBoolean(false);
+        searchingAudit = new AtomicBoolean(false);
+        minutesSinceDump = new AtomicInteger();
         saveDefaultConfig();
-        config = getConfig();
         
         // 初始化掉落物管理器
+        harvestScheduler = HarvestScheduler.create(this);
+        metrics = new HarvestMetrics();
         dropsManager = new DropsManager(this);
+        toolCache = new HarvestToolCache(this);
+        dropBatcher = new DropBatcher(this);
+        inventoryDelivery = new InventoryDelivery(this);
+        feedback = new HarvestFeedback(this);
+
+        // 启动时同步加载第一份配置快照
+        try {
+            snapshot = loadSnapshot();
+        } catch (IOException | InvalidConfigurationException e) {
+            getLogger().log(Level.SEVERE, "加载配置失败，将使用空的掉落物配置", e);
+            snapshot = emptySnapshot();
+        }
+        dropsManager.getWorldTables().resolveAll(snapshot, getServer().getWorlds());
+
+        // 读取玩家收获记录（快照 + 日志），之后由后台任务批量写入
+        ledger = new HarvestLedger(new File(getDataFolder(), "ledger"), getLogger(), snapshot.getLedgerSettings());
+        ledger.load();
+        auditLog = new AuditLog(new File(getDataFolder(), "audit"), getLogger(), snapshot.getAuditSettings());
+        dropsManager.getPity().load();
         
         // 注册事件监听器
-        getServer().getPluginManager().registerEvents(new BlockBreakListener(this), this);
+        BlockBreakListener breakListener = new BlockBreakListener(this);
+        areaHarvester = new AreaHarvester(this, breakListener);
+        MatureCropIndex cropIndex = new MatureCropIndex(this);
+        autoHarvester = new AutoHarvester(this, breakListener, cropIndex);
+        autoHarvester.load();
+        getServer().getPluginManager().registerEvents(breakListener, this);
+        getServer().getPluginManager().registerEvents(toolCache, this);
+        getServer().getPluginManager().registerEvents(feedback, this);
+        getServer().getPluginManager().registerEvents(areaHarvester, this);
+        getServer().getPluginManager().registerEvents(cropIndex, this);
+        getServer().getPluginManager().registerEvents(autoHarvester, this);
+        getServer().getPluginManager().registerEvents(dropsManager.getWorldTables(), this);
+
+        // 启动掉落物合并、背包投递、区域收获与自动收割机任务
+        dropBatcher.start();
+        inventoryDelivery.start();
+        areaHarvester.start();
+        autoHarvester.start();
+        ledger.start(harvestScheduler);
+        auditLog.start(harvestScheduler);
+        feedback.start();
+        dropsManager.getPity().start(harvestScheduler, snapshot.getPitySettings().getSaveIntervalTicks());
+
+        // 每分钟检查一次是否需要把统计写入文件
+        harvestScheduler.runAsyncTimer(this::dumpMetricsIfDue, 1200L, 1200L);
+
+        // 每分钟清理一次掉落物上限中不活跃玩家的计数器
+        harvestScheduler.runAsyncTimer(() -> dropsManager.evictIdleCaps(snapshot), 1200L, 1200L);
 
         // 注册命令
         registerCommands();
 
+        // 按配置监视 config.yml 与 drops.yml 的修改
+        configWatcher = new ConfigWatcher(this);
+        configWatcher.apply(snapshot.getWatchSettings());
+
         LOGGER.info("UniversalPotatoHarvest 插件已成功启用!");
     }
 
     @Override
     public void onDisable() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+        }
+        if (areaHarvester != null) {
+            areaHarvester.stop();
+        }
+        if (autoHarvester != null) {
+            autoHarvester.stop();
+        }
+        // 背包放不下的物品会交给掉落物合并器，因此先停止背包投递
+        if (inventoryDelivery != null) {
+            inventoryDelivery.stop();
+        }
+        if (dropBatcher != null) {
+            dropBatcher.stop();
+        }
+        if (ledger != null) {
+            ledger.stop();
+        }
+        if (auditLog != null) {
+            auditLog.stop();
+        }
+        if (feedback != null) {
+            feedback.stop();
+        }
+        if (dropsManager != null) {
+            dropsManager.getPity().stop();
+        }
         LOGGER.info("UniversalPotatoHarvest 插件已禁用!");
     }
 
@@ -68,11 +191,206 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
         return dropsManager;
     }
 
+    /**
+     * 获取掉落物合并器
+     * @return 掉落物合并器实例
+     */
+    public DropBatcher getDropBatcher() {
+        return dropBatcher;
+    }
+
+    /**
+     * 获取背包投递器
+     * @return 背包投递器实例
+     */
+    public InventoryDelivery getInventoryDelivery() {
+        return inventoryDelivery;
+    }
+
+    /**
+     * 获取区域收获器
+     * @return 区域收获器实例
+     */
+    public AreaHarvester getAreaHarvester() {
+        return areaHarvester;
+    }
+
+    /**
+     * 获取自动收割机
+     * @return 自动收割机实例
+     */
+    public AutoHarvester getAutoHarvester() {
+        return autoHarvester;
+    }
+
+    /**
+     * 获取收获统计
+     * @return 收获统计实例
+     */
+    public HarvestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 获取任务调度适配
+     * @return 任务调度适配实例
+     */
+    public HarvestScheduler getHarvestScheduler() {
+        return harvestScheduler;
+    }
+
+    /**
+     * 获取玩家收获记录
+     * @return 玩家收获记录
+     */
+    public HarvestLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * 获取高价值掉落物的审计日志
+     * @return 审计日志
+     */
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    /**
+     * 获取收获汇总消息
+     * @return 收获汇总消息
+     */
+    public HarvestFeedback getFeedback() {
+        return feedback;
+    }
+
+    /**
+     * 获取当前生效的配置快照
+     * 同一次事件处理中应只读取一次，以保证看到的配置前后一致
+     * @return 当前配置快照
+     */
+    public HarvestSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     /**
      * 根据配置创建并返回自定义掉落物品（兼容旧版本）
      * @return 带有自定义名称、Lore和附魔的ItemStack
      */
     public ItemStack createCustomDrop() {
+        return snapshot.createDefaultDrop();
+    }
+
+    /**
+     * 读取并校验 config.yml 与 drops.yml，构建完整的配置快照
+     * 此方法不修改任何正在使用的状态，可以在异步线程中调用
+     * @return 新的配置快照
+     * @throws IOException 文件无法读取
+     * @throws InvalidConfigurationException YAML格式错误
+     */
+    private HarvestSnapshot loadSnapshot() throws IOException, InvalidConfigurationException {
+        FileConfiguration config = loadMainConfig();
+        FortuneTable.Settings fortuneSettings = FortuneTable.Settings.fromConfig(config.getConfigurationSection("settings"));
+        Map<String, DropTable> tables = dropsManager.loadDropsConfig(fortuneSettings,
+                DropTable.Settings.fromConfig(config.getConfigurationSection("roll-mode")));
+        ConfigurationSection cropsSection = config.getConfigurationSection("crops");
+        List<String> baseLores = readTriggerLores(config);
+        LoreMatcher triggerMatcher = new LoreMatcher(CropRegistry.collectTriggerLores(cropsSection, baseLores));
+
+        return new HarvestSnapshot(
+                tables,
+                loadWorldGroups(config.getConfigurationSection("world-groups")),
+                buildDefaultDropTemplate(config),
+                triggerMatcher,
+                fortuneSettings,
+                config.getBoolean("settings.debug", false),
+                DropBatcher.Settings.fromConfig(config.getConfigurationSection("drop-batching")),
+                AreaHarvester.Settings.fromConfig(config.getConfigurationSection("area-harvest"), triggerMatcher.getPatterns()),
+                HarvestMetrics.Settings.fromConfig(config.getConfigurationSection("metrics")),
+                HarvestLedger.Settings.fromConfig(config.getConfigurationSection("ledger")),
+                InventoryDelivery.Settings.fromConfig(config.getConfigurationSection("drop-delivery"), triggerMatcher.getPatterns()),
+                CropRegistry.fromConfig(cropsSection, triggerMatcher.getPatterns(), baseLores.size(), tables.keySet()),
+                ConfigWatcher.Settings.fromConfig(config.getConfigurationSection("hot-reload")),
+                PityTracker.Settings.fromConfig(config.getConfigurationSection("pity")),
+                AutoHarvester.Settings.fromConfig(config.getConfigurationSection("auto-harvester")),
+                AuditLog.Settings.fromConfig(config.getConfigurationSection("audit")),
+                HarvestFeedback.Settings.fromConfig(config.getConfigurationSection("messages"))
+        );
+    }
+
+    /**
+     * 读取 config.yml，并以插件内置的 config.yml 作为默认值
+     * @return 已解析的主配置
+     * @throws IOException 文件无法读取
+     * @throws InvalidConfigurationException YAML格式错误
+     */
+    private FileConfiguration loadMainConfig() throws IOException, InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(new File(getDataFolder(), "config.yml"));
+
+        InputStream defaults = getResource("config.yml");
+        if (defaults != null) {
+            try (InputStreamReader reader = new InputStreamReader(defaults, StandardCharsets.UTF_8)) {
+                config.setDefaults(YamlConfiguration.loadConfiguration(reader));
+            }
+        }
+        return config;
+    }
+
+    /**
+     * 构建一个没有任何掉落表的快照，在首次加载失败时使用
+     * @return 空快照
+     */
+    private HarvestSnapshot emptySnapshot() {
+        LoreMatcher triggerMatcher = new LoreMatcher(Collections.singletonList("土豆收割者"));
+        return new HarvestSnapshot(
+                Collections.<String, DropTable>emptyMap(),
+                Collections.<String, String>emptyMap(),
+                new ItemStack(Material.DIAMOND),
+                triggerMatcher,
+                FortuneTable.Settings.defaults(),
+                false,
+                DropBatcher.Settings.disabled(),
+                AreaHarvester.Settings.fromConfig(null, triggerMatcher.getPatterns()),
+                HarvestMetrics.Settings.fromConfig(null),
+                HarvestLedger.Settings.fromConfig(null),
+                InventoryDelivery.Settings.fromConfig(null, triggerMatcher.getPatterns()),
+                CropRegistry.fromConfig(null, triggerMatcher.getPatterns(), 1, Collections.<String>emptySet()),
+                ConfigWatcher.Settings.fromConfig(null),
+                PityTracker.Settings.fromConfig(null),
+                AutoHarvester.Settings.fromConfig(null),
+                AuditLog.Settings.fromConfig(null),
+                HarvestFeedback.Settings.fromConfig(null)
+        );
+    }
+
+    /**
+     * 读取 world-groups 配置，生成 世界名称 → 世界组名称 的映射（均为小写）
+     * @param section world-groups 配置节，可以为null
+     * @return 不可修改的映射
+     */
+    private Map<String, String> loadWorldGroups(ConfigurationSection section) {
+        if (section == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, String> groups = new HashMap<>();
+        for (String group : section.getKeys(false)) {
+            for (String world : section.getStringList(group)) {
+                String previous = groups.put(world.toLowerCase(), group.toLowerCase());
+                if (previous != null) {
+                    getLogger().warning("世界 " + world + " 同时属于世界组 " + previous + " 和 " + group + "，将使用 " + group);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(groups);
+    }
+
+    /**
+     * 根据 drop-item 配置构建默认掉落物模板，仅在加载和重载时调用
+     * @param config 主配置
+     * @return 带有自定义名称、Lore和附魔的ItemStack
+     */
+    private ItemStack buildDefaultDropTemplate(FileConfiguration config) {
         // 从配置获取材质，如果没有则使用DIAMOND作为默认值
         Material material = Material.matchMaterial(config.getString("drop-item.material", "DIAMOND"));
         if (material == null) material = Material.DIAMOND;
@@ -124,21 +442,198 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
     }
 
     /**
-     * 获取手持物品必须包含的Lore文本
+     * 获取收割工具识别缓存
+     * @return 收割工具识别缓存
+     */
+    public HarvestToolCache getToolCache() {
+        return toolCache;
+    }
+
+    /**
+     * 获取手持物品必须包含的Lore文本（多条时返回第一条）
      * @return 必需的Lore文本
      */
     public String getRequiredLore() {
-        return config.getString("trigger-item.lore", "土豆收割者");
+        List<String> patterns = snapshot.getTriggerMatcher().getPatterns();
+        return patterns.isEmpty() ? "土豆收割者" : patterns.get(0);
+    }
+
+    /**
+     * 读取 trigger-item.lore 配置（单个字符串或字符串列表）
+     * 各作物单独配置的触发Lore由 {@link CropRegistry#collectTriggerLores} 追加在其后
+     * @param config 主配置
+     * @return 触发Lore列表
+     */
+    private List<String> readTriggerLores(FileConfiguration config) {
+        List<String> patterns;
+        if (config.isList("trigger-item.lore")) {
+            patterns = config.getStringList("trigger-item.lore");
+        } else {
+            patterns = Collections.singletonList(config.getString("trigger-item.lore", "土豆收割者"));
+        }
+        return patterns;
+    }
+
+    /**
+     * 异步重载插件配置
+     * 在异步线程中解析并校验全部配置，成功后一次性替换快照；失败时保留旧配置
+     * 没有变化的掉落表直接沿用，不会重新编译
+     * @param sender 发起重载的命令发送者，完成后会在主线程收到结果
+     * @return 是否开始重载，已有重载正在进行时返回false
+     */
+    public boolean reloadPluginConfig(final CommandSender sender) {
+        if (!reloading.compareAndSet(false, true)) {
+            sender.sendMessage("§e配置正在重载中，请稍后再试");
+            return false;
+        }
+
+        harvestScheduler.runAsync(() -> {
+            HarvestSnapshot loaded = null;
+            Exception failure = null;
+            try {
+                loaded = loadSnapshot();
+                snapshot = loaded;
+                configWatcher.apply(loaded.getWatchSettings());
+                LOGGER.info("配置已重载!");
+            } catch (IOException | InvalidConfigurationException | RuntimeException e) {
+                failure = e;
+                getLogger().log(Level.SEVERE, "重载配置失败，继续使用旧配置", e);
+            } finally {
+                reloading.set(false);
+            }
+
+            final HarvestSnapshot published = loaded;
+            final String reason = failure != null ? failure.getMessage() : null;
+            harvestScheduler.runFor(sender, () -> {
+                if (published != null) {
+                    // 为所有已加载的世界重新解析掉落表
+                    dropsManager.getWorldTables().resolveAll(published, getServer().getWorlds());
+                    // 掉落物合并开关可能变化，按新配置启动或停止刷新任务
+                    dropBatcher.apply(published.getBatchSettings());
+                    sender.sendMessage("§aUniversalPotatoHarvest 配置已重载!");
+                } else {
+                    sender.sendMessage("§c配置重载失败，继续使用旧配置: " + reason);
+                }
+            });
+        });
+        return true;
+    }
+
+    /**
+     * 异步模拟当前配置中某个维度的掉落表，完成后在主线程把报告发送给命令发送者
+     * 同一时间只允许一个模拟任务运行
+     * @param sender 命令发送者
+     * @param dimension 维度名称
+     * @param trials 每个时运等级的试验次数
+     * @param fortuneLevels 需要模拟的时运等级
+     */
+    public void simulateDrops(final CommandSender sender, final String dimension, final long trials,
+                              final int[] fortuneLevels) {
+        final DropTable dropTable = snapshot.getDimensionTable(dimension);
+        if (dropTable == null || dropTable.getBaseTable().isEmpty()) {
+            sender.sendMessage("§c掉落表 " + dimension + " 不存在或没有无条件的掉落物!");
+            return;
+        }
+        // 有条件的掉落物取决于收获时的环境，模拟只针对所有条件都不满足时的掉落物
+        if (dropTable.getConditionCount() > 0) {
+            sender.sendMessage("§7此掉落表包含 " + dropTable.getConditionCount() + " 个条件，只模拟条件都不满足时的掉落物");
+        }
+        if (!simulating.compareAndSet(false, true)) {
+            sender.sendMessage("§e已有模拟任务在运行，请稍后再试");
+            return;
+        }
+
+        sender.sendMessage("§e正在异步模拟 " + dimension + " 的掉落表...");
+        harvestScheduler.runAsync(() -> {
+            List<String> report;
+            try {
+                report = new DropSimulator().report(dimension, dropTable, trials, fortuneLevels, System.nanoTime());
+            } catch (RuntimeException e) {
+                getLogger().log(Level.SEVERE, "掉落模拟失败", e);
+                report = Collections.singletonList("§c掉落模拟失败: " + e.getMessage());
+            } finally {
+                simulating.set(false);
+            }
+
+            final List<String> lines = report;
+            harvestScheduler.runFor(sender, () -> {
+                for (String line : lines) {
+                    sender.sendMessage(line);
+                }
+            });
+        });
+    }
+
+    /**
+     * 异步查询某个玩家的审计记录，完成后在主线程把最新的记录发送给命令发送者
+     * 同一时间只允许一个查询任务运行
+     * @param sender 命令发送者
+     * @param target 目标玩家
+     * @param since 只查询此时间（毫秒时间戳）之后的记录
+     */
+    public void searchAudit(final CommandSender sender, final OfflinePlayer target, final long since) {
+        if (!searchingAudit.compareAndSet(false, true)) {
+            sender.sendMessage("§e已有审计查询在运行，请稍后再试");
+            return;
+        }
+
+        sender.sendMessage("§e正在异步查询 " + target.getName() + " 的审计记录...");
+        harvestScheduler.runAsync(() -> {
+            List<String> lines = new ArrayList<>();
+            try {
+                AuditLog.SearchResult result = auditLog.search(target.getUniqueId(), since, AUDIT_RESULTS);
+                if (result.getTotal() == 0) {
+                    lines.add("§7没有找到 " + target.getName() + " 的审计记录");
+                } else {
+                    lines.add("§6===== " + target.getName() + " 的审计记录（共 " + result.getTotal() + " 条，显示最近 "
+                            + result.getLatest().size() + " 条） =====");
+                    for (String[] columns : result.getLatest()) {
+                        String name = "-".equals(columns[11]) ? "" : " §7" + columns[11].replace('&', '§');
+                        lines.add("§7" + columns[1] + " §f" + columns[4] + " (" + columns[5] + ", " + columns[6] + ", "
+                                + columns[7] + ") §e" + columns[10] + " x" + columns[12] + name
+                                + " §7工具 " + columns[8] + " 时运 " + columns[9]);
+                    }
+                }
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "查询审计日志失败", e);
+                lines.add("§c查询审计日志失败: " + e.getMessage());
+            } finally {
+                searchingAudit.set(false);
+            }
+
+            harvestScheduler.runFor(sender, () -> {
+                for (String line : lines) {
+                    sender.sendMessage(line);
+                }
+            });
+        });
     }
 
     /**
-     * 重载插件配置
+     * 定时任务（异步，每分钟一次）：达到配置的间隔后把统计报告追加写入文件
      */
-    public void reloadPluginConfig() {
-        reloadConfig();
-        config = getConfig();
-        dropsManager.loadDropsConfig();
-        LOGGER.info("配置已重载!");
+    private void dumpMetricsIfDue() {
+        HarvestMetrics.Settings settings = snapshot.getMetricsSettings();
+        if (settings.getDumpIntervalMinutes() <= 0) {
+            minutesSinceDump.set(0);
+            return;
+        }
+        if (minutesSinceDump.incrementAndGet() < settings.getDumpIntervalMinutes()) {
+            return;
+        }
+        minutesSinceDump.set(0);
+
+        File file = new File(getDataFolder(), settings.getDumpFile());
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            writer.write("[" + time + "]\n");
+            for (String line : metrics.report(10)) {
+                writer.write(line.replaceAll("§.", "") + "\n");
+            }
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "无法写入统计文件 " + file, e);
+        }
     }
 
     /**
@@ -185,8 +680,8 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
                         sender.sendMessage("§c你没有权限执行此命令!");
                         return true;
                     }
-                    reloadPluginConfig();
-                    sender.sendMessage("§aUniversalPotatoHarvest 配置已重载!");
+                    sender.sendMessage("§e正在异步重载配置...");
+                    reloadPluginConfig(sender);
                     return true;
                     
                 case "tool":
@@ -213,6 +708,138 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
                     player.sendMessage("§a你获得了一个土豆收割工具!");
                     return true;
                     
+                case "harvester":
+                    if (!(sender instanceof Player)) {
+                        sender.sendMessage("§c此命令只能由玩家执行!");
+                        return true;
+                    }
+                    if (!sender.hasPermission("universalpotatoharvest.harvester")) {
+                        sender.sendMessage("§c你没有权限执行此命令!");
+                        return true;
+                    }
+                    AutoHarvester.Settings harvesterSettings = snapshot.getHarvesterSettings();
+                    if (!harvesterSettings.isEnabled()) {
+                        sender.sendMessage("§c自动收割机未启用!");
+                        return true;
+                    }
+                    ((Player) sender).getInventory().addItem(autoHarvester.createHarvesterItem(harvesterSettings));
+                    sender.sendMessage("§a你获得了一台自动收割机!");
+                    return true;
+
+                case "stats":
+                    if (!sender.hasPermission("universalpotatoharvest.admin")) {
+                        sender.sendMessage("§c你没有权限执行此命令!");
+                        return true;
+                    }
+
+                    if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+                        metrics.reset();
+                        sender.sendMessage("§a统计数据已清空!");
+                        return true;
+                    }
+
+                    for (String line : metrics.report(5)) {
+                        sender.sendMessage(line);
+                    }
+                    sender.sendMessage(ledger.status());
+                    sender.sendMessage(auditLog.status());
+                    sender.sendMessage(autoHarvester.status());
+                    return true;
+
+                case "ledger":
+                    if (!sender.hasPermission("universalpotatoharvest.use")) {
+                        sender.sendMessage("§c你没有权限执行此命令!");
+                        return true;
+                    }
+                    if (args.length > 1 && args[1].equalsIgnoreCase("top")) {
+                        int limit = 10;
+                        if (args.length > 2) {
+                            try {
+                                limit = Math.max(1, Math.min(100, Integer.parseInt(args[2])));
+                            } catch (NumberFormatException e) {
+                                sender.sendMessage("§c数量必须是整数!");
+                                return true;
+                            }
+                        }
+                        sendLeaderboard(sender, limit);
+                        return true;
+                    }
+
+                    OfflinePlayer target;
+                    if (args.length > 1) {
+                        if (!sender.hasPermission("universalpotatoharvest.admin")) {
+                            sender.sendMessage("§c你没有权限查看其他玩家的记录!");
+                            return true;
+                        }
+                        target = findPlayer(args[1]);
+                        if (target == null) {
+                            sender.sendMessage("§c找不到玩家 " + args[1]);
+                            return true;
+                        }
+                    } else if (sender instanceof Player) {
+                        target = (Player) sender;
+                    } else {
+                        sender.sendMessage("§c用法: /uph ledger <玩家|top [数量]>");
+                        return true;
+                    }
+                    sendPlayerRecord(sender, target);
+                    return true;
+
+                case "audit":
+                    if (!sender.hasPermission("universalpotatoharvest.audit")) {
+                        sender.sendMessage("§c你没有权限执行此命令!");
+                        return true;
+                    }
+                    if (args.length < 2) {
+                        sender.sendMessage("§c用法: /uph audit <玩家> [时间范围，例如 1h、7d]");
+                        return true;
+                    }
+                    OfflinePlayer audited = findPlayer(args[1]);
+                    if (audited == null) {
+                        sender.sendMessage("§c找不到玩家 " + args[1]);
+                        return true;
+                    }
+                    long since = 0;
+                    if (args.length > 2) {
+                        try {
+                            since = System.currentTimeMillis() - DropCap.parseWindow(args[2]);
+                        } catch (IllegalArgumentException e) {
+                            sender.sendMessage("§c无效的时间范围: " + args[2] + "，例如 30m、1h、7d");
+                            return true;
+                        }
+                    }
+                    searchAudit(sender, audited, since);
+                    return true;
+
+                case "simulate":
+                    if (!sender.hasPermission("universalpotatoharvest.admin")) {
+                        sender.sendMessage("§c你没有权限执行此命令!");
+                        return true;
+                    }
+                    if (args.length < 3) {
+                        sender.sendMessage("§c用法: /uph simulate <掉落表> <次数> [时运等级]");
+                        return true;
+                    }
+
+                    long trials;
+                    int[] fortuneLevels = {0, 1, 2, 3};
+                    try {
+                        trials = Long.parseLong(args[2]);
+                        if (args.length > 3) {
+                            fortuneLevels = new int[]{Integer.parseInt(args[3])};
+                        }
+                    } catch (NumberFormatException e) {
+                        sender.sendMessage("§c次数和时运等级必须是整数!");
+                        return true;
+                    }
+                    if (trials <= 0 || trials > MAX_SIMULATION_TRIALS || fortuneLevels[0] < 0) {
+                        sender.sendMessage("§c次数必须在 1 到 " + MAX_SIMULATION_TRIALS + " 之间，时运等级不能为负数!");
+                        return true;
+                    }
+
+                    simulateDrops(sender, args[1].toLowerCase(), trials, fortuneLevels);
+                    return true;
+
                 case "help":
                 default:
                     sendHelpMessage(sender);
@@ -224,7 +851,8 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
         public List<String> onTabComplete(CommandSender sender, Command command, String alias, String[] args) {
             if (args.length == 1) {
                 List<String> completions = new ArrayList<>();
-                List<String> commands = Arrays.asList("reload", "tool", "help");
+                List<String> commands = Arrays.asList("reload", "tool", "harvester", "stats", "simulate", "ledger", "audit",
+                        "help");
                 
                 for (String cmd : commands) {
                     if (cmd.startsWith(args[0].toLowerCase())) {
@@ -247,11 +875,113 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
                 }
                 
                 return completions;
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("simulate")) {
+                List<String> completions = new ArrayList<>();
+                for (String table : snapshot.getTableNames()) {
+                    if (table.startsWith(args[1].toLowerCase())) {
+                        completions.add(table);
+                    }
+                }
+                return completions;
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("ledger")) {
+                List<String> completions = new ArrayList<>();
+                if ("top".startsWith(args[1].toLowerCase())) {
+                    completions.add("top");
+                }
+                for (Player online : getServer().getOnlinePlayers()) {
+                    if (online.getName().toLowerCase().startsWith(args[1].toLowerCase())) {
+                        completions.add(online.getName());
+                    }
+                }
+                return completions;
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("audit")) {
+                List<String> completions = new ArrayList<>();
+                for (Player online : getServer().getOnlinePlayers()) {
+                    if (online.getName().toLowerCase().startsWith(args[1].toLowerCase())) {
+                        completions.add(online.getName());
+                    }
+                }
+                return completions;
+            } else if (args.length == 3 && args[0].equalsIgnoreCase("audit")) {
+                List<String> completions = new ArrayList<>();
+                for (String range : Arrays.asList("1h", "1d", "7d")) {
+                    if (range.startsWith(args[2].toLowerCase())) {
+                        completions.add(range);
+                    }
+                }
+                return completions;
+            } else if (args.length == 2 && args[0].equalsIgnoreCase("stats")) {
+                return "reset".startsWith(args[1].toLowerCase())
+                        ? Collections.singletonList("reset") : Collections.<String>emptyList();
             }
             
             return null;
         }
         
+        /**
+         * 按名称查找玩家，优先在线玩家，其次是曾经登录过的玩家
+         * @param name 玩家名称
+         * @return 玩家，找不到时返回null
+         */
+        private OfflinePlayer findPlayer(String name) {
+            Player online = getServer().getPlayerExact(name);
+            if (online != null) {
+                return online;
+            }
+            for (OfflinePlayer offline : getServer().getOfflinePlayers()) {
+                if (name.equalsIgnoreCase(offline.getName())) {
+                    return offline;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 发送玩家的累计收获记录
+         * @param sender 命令发送者
+         * @param target 目标玩家
+         */
+        private void sendPlayerRecord(CommandSender sender, OfflinePlayer target) {
+            HarvestLedger.PlayerRecord record = ledger.getRecord(target.getUniqueId());
+            if (record == null) {
+                sender.sendMessage("§e" + target.getName() + " §7还没有收获记录");
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            sender.sendMessage("§6===== " + target.getName() + " 的收获记录 =====");
+            sender.sendMessage("§e收获次数: §f" + record.getHarvests() + " §7| 稀有掉落: §f" + record.getRareDrops()
+                    + " §7| 物品总数: §f" + record.getItems());
+            sender.sendMessage("§e主世界: §f" + record.getDimensionHarvests(World.Environment.NORMAL)
+                    + " §7| 下界: §f" + record.getDimensionHarvests(World.Environment.NETHER)
+                    + " §7| 末地: §f" + record.getDimensionHarvests(World.Environment.THE_END));
+            sender.sendMessage("§e最近收获: §f" + format.format(new Date(record.getLastHarvest())));
+            PityTracker.Settings pitySettings = snapshot.getPitySettings();
+            if (pitySettings.isEnabled()) {
+                sender.sendMessage("§e连续未获得稀有掉落: §f" + dropsManager.getPity().get(target.getUniqueId())
+                        + " §7/ 保底 §f" + pitySettings.getGuaranteeAfter());
+            }
+        }
+
+        /**
+         * 发送收获排行榜
+         * @param sender 命令发送者
+         * @param limit 显示的玩家数量
+         */
+        private void sendLeaderboard(CommandSender sender, int limit) {
+            List<HarvestLedger.PlayerRecord> records = ledger.top(limit);
+            if (records.isEmpty()) {
+                sender.sendMessage("§7还没有任何收获记录");
+                return;
+            }
+            sender.sendMessage("§6===== 收获排行榜 =====");
+            for (int i = 0; i < records.size(); i++) {
+                HarvestLedger.PlayerRecord record = records.get(i);
+                String name = getServer().getOfflinePlayer(record.getPlayerId()).getName();
+                sender.sendMessage("§e" + (i + 1) + ". §f" + (name != null ? name : record.getPlayerId().toString())
+                        + " §7- §f" + record.getHarvests() + " §7次收获, §f" + record.getRareDrops() + " §7次稀有");
+            }
+        }
+
         /**
          * 发送帮助信息
          * @param sender 命令发送者
@@ -260,6 +990,12 @@ public final class UniversalPotatoHarvest extends JavaPlugin {
             sender.sendMessage("§6===== UniversalPotatoHarvest 帮助 =====");
             sender.sendMessage("§e/uph reload §7- 重载插件配置");
             sender.sendMessage("§e/uph tool [材质] §7- 获取一个土豆收割工具");
+            sender.sendMessage("§e/uph harvester §7- 获取一台自动收割机");
+            sender.sendMessage("§e/uph stats [reset] §7- 查看或清空收获统计");
+            sender.sendMessage("§e/uph simulate <掉落表> <次数> [时运等级] §7- 模拟掉落表的期望产出");
+            sender.sendMessage("§e/uph ledger [玩家] §7- 查看累计收获记录");
+            sender.sendMessage("§e/uph ledger top [数量] §7- 查看收获排行榜");
+            sender.sendMessage("§e/uph audit <玩家> [时间范围] §7- 查询玩家的高价值掉落记录");
             sender.sendMessage("§e/uph help §7- 显示此帮助信息");
         }
     }
@@ -0,0 +1,135 @@
+package com.laoda.universalph;
+
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按世界UID缓存每个世界在各掉落表组中解析出的掉落表及其投递方式
+ * 世界名称、世界组和维度类型的查找只在世界加载或配置重载后进行一次，收获时只需一次UID查找和一次数组访问
+ * 每个配置快照对应一份独立的并发缓存，重载时整体替换，收获线程之间不需要加锁
+ */
+public class WorldDropTables implements Listener {
+    /** 没有任何掉落表的世界使用的占位表，使用默认掉落物 */
+    private static final DropTable NO_TABLE = DropTable.EMPTY;
+
+    private final UniversalPotatoHarvest plugin;
+    private volatile Resolved current = new Resolved(null);
+
+    public WorldDropTables(UniversalPotatoHarvest plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 获取某个世界在指定配置快照下使用的掉落表，可以在任意线程调用
+     * 快照与上次解析时不同（配置已重载）时换用一份新的缓存
+     * @param snapshot 本次事件读取到的配置快照
+     * @param tableGroup 掉落表组下标
+     * @param world 世界
+     * @return 掉落表，未配置时返回空表
+     */
+    public DropTable get(HarvestSnapshot snapshot, int tableGroup, World world) {
+        return entry(snapshot, world).tables[tableGroup];
+    }
+
+    /**
+     * 获取某个世界的掉落表在指定配置快照下的投递方式，可以在任意线程调用
+     * @param snapshot 本次事件读取到的配置快照
+     * @param tableGroup 掉落表组下标
+     * @param world 世界
+     * @return 投递方式
+     */
+    public InventoryDelivery.Mode getDeliveryMode(HarvestSnapshot snapshot, int tableGroup, World world) {
+        return entry(snapshot, world).deliveryModes[tableGroup];
+    }
+
+    private WorldEntry entry(HarvestSnapshot snapshot, World world) {
+        Resolved resolved = current;
+        if (resolved.snapshot != snapshot) {
+            // 并发时可能有多个线程各自创建新缓存，只会导致少量重复解析
+            resolved = new Resolved(snapshot);
+            current = resolved;
+        }
+
+        WorldEntry entry = resolved.tables.get(world.getUID());
+        if (entry == null) {
+            entry = resolved.resolve(world);
+        }
+        return entry;
+    }
+
+    /**
+     * 重载后为所有已加载的世界重新解析掉落表
+     * @param snapshot 新的配置快照
+     * @param worlds 已加载的世界
+     */
+    public void resolveAll(HarvestSnapshot snapshot, Iterable<World> worlds) {
+        Resolved resolved = new Resolved(snapshot);
+        for (World world : worlds) {
+            resolved.resolve(world);
+        }
+        current = resolved;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        Resolved resolved = current;
+        if (resolved.snapshot == plugin.getSnapshot()) {
+            resolved.resolve(event.getWorld());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        current.tables.remove(event.getWorld().getUID());
+    }
+
+    /**
+     * 某个配置快照下各世界的解析结果
+     */
+    private static final class Resolved {
+        private final HarvestSnapshot snapshot;
+        private final Map<UUID, WorldEntry> tables = new ConcurrentHashMap<>();
+
+        private Resolved(HarvestSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        private WorldEntry resolve(World world) {
+            CropRegistry crops = snapshot.getCrops();
+            int groups = crops.getTableGroupCount();
+            DropTable[] groupTables = new DropTable[groups];
+            InventoryDelivery.Mode[] deliveryModes = new InventoryDelivery.Mode[groups];
+            for (int i = 0; i < groups; i++) {
+                String tableName = snapshot.resolveTableName(crops.getTableGroup(i), world.getName(), world.getEnvironment());
+                DropTable table = tableName != null ? snapshot.getDimensionTable(tableName) : null;
+                groupTables[i] = table != null ? table : NO_TABLE;
+                deliveryModes[i] = snapshot.getDeliverySettings().getTableMode(tableName);
+            }
+
+            WorldEntry entry = new WorldEntry(groupTables, deliveryModes);
+            tables.put(world.getUID(), entry);
+            return entry;
+        }
+    }
+
+    /**
+     * 一个世界的解析结果，按掉落表组下标保存
+     */
+    private static final class WorldEntry {
+        private final DropTable[] tables;
+        private final InventoryDelivery.Mode[] deliveryModes;
+
+        private WorldEntry(DropTable[] tables, InventoryDelivery.Mode[] deliveryModes) {
+            this.tables = tables;
+            this.deliveryModes = deliveryModes;
+        }
+    }
+}
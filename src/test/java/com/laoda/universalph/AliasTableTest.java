@@ -0,0 +1,127 @@
+package com.laoda.universalph;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 别名表的抽样分布必须与配置的 chance 权重（归一化后）一致
+ */
+public class AliasTableTest {
+    /** 均匀网格的点数，每一列的命中数与精确值最多相差1，因此比例误差不超过 2 x 列数/点数 */
+    private static final int GRID = 1_000_000;
+    private static final int SAMPLES = 1_000_000;
+
+    @Test
+    public void pickIndexMatchesNormalizedWeightsOnUniformGrid() {
+        assertGridMatches(new double[]{0.5, 0.3, 0.2});
+        // 权重之和不为1时按相对权重归一化
+        assertGridMatches(new double[]{1, 2, 3, 4});
+        assertGridMatches(new double[]{0.05, 0.01, 0.02});
+        assertGridMatches(new double[]{70, 20, 8, 1.5, 0.5});
+    }
+
+    @Test
+    public void sampleFrequenciesMatchNormalizedWeights() {
+        double[] weights = {3, 1, 0.5, 12, 2.5};
+        AliasTable<Integer> table = table(weights);
+        long[] hits = new long[weights.length];
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            hits[table.sample(random)]++;
+        }
+
+        double total = sum(weights);
+        for (int i = 0; i < weights.length; i++) {
+            double p = weights[i] / total;
+            double expected = SAMPLES * p;
+            // 5个标准差以内
+            double tolerance = 5 * Math.sqrt(SAMPLES * p * (1 - p));
+            assertEquals("条目 " + i + " 的抽中次数", expected, hits[i], tolerance);
+        }
+    }
+
+    @Test
+    public void nonPositiveWeightsAreNeverPicked() {
+        double[] weights = {5, 0, -1, 15};
+        AliasTable<Integer> table = table(weights);
+        assertEquals(0.25, table.getProbability(0), 1e-12);
+        assertEquals(0, table.getProbability(1), 0);
+        assertEquals(0, table.getProbability(2), 0);
+        assertEquals(0.75, table.getProbability(3), 1e-12);
+
+        int[] hits = gridHits(table, weights.length);
+        assertEquals(0, hits[1]);
+        assertEquals(0, hits[2]);
+    }
+
+    @Test
+    public void singleEntryIsAlwaysPicked() {
+        AliasTable<Integer> table = table(new double[]{0.01});
+        assertEquals(1.0, table.getProbability(0), 1e-12);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Integer.valueOf(0), table.sample(random));
+        }
+    }
+
+    @Test
+    public void tableWithoutPositiveWeightsIsEmpty() {
+        AliasTable<Integer> table = table(new double[]{0, -2});
+        assertTrue(table.isEmpty());
+        assertNull(table.sample(new Random(1)));
+        assertTrue(table(new double[0]).isEmpty());
+        assertFalse(table(new double[]{0, 1}).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void mismatchedWeightsAreRejected() {
+        new AliasTable<>(indices(2), new double[]{1, 2, 3});
+    }
+
+    private static void assertGridMatches(double[] weights) {
+        AliasTable<Integer> table = table(weights);
+        int[] hits = gridHits(table, weights.length);
+        double total = sum(weights);
+        double tolerance = 2.0 * weights.length / GRID;
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals("条目 " + i + " 的归一化概率", weights[i] / total, table.getProbability(i), 1e-12);
+            assertEquals("条目 " + i + " 在均匀网格上的命中比例", weights[i] / total, (double) hits[i] / GRID, tolerance);
+        }
+    }
+
+    private static int[] gridHits(AliasTable<Integer> table, int size) {
+        int[] hits = new int[size];
+        for (int i = 0; i < GRID; i++) {
+            hits[table.pickIndex((i + 0.5) / GRID)]++;
+        }
+        return hits;
+    }
+
+    private static AliasTable<Integer> table(double[] weights) {
+        return new AliasTable<>(indices(weights.length), weights);
+    }
+
+    private static List<Integer> indices(int size) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private static double sum(double[] weights) {
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        return total;
+    }
+}
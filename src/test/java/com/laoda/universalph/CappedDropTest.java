@@ -0,0 +1,83 @@
+package com.laoda.universalph;
+
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.inventory.ItemStack;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 权重很高的掉落物达到产出上限后，必须按原有权重改为抽取其他未达上限的掉落物，而不是退回默认掉落物
+ */
+public class CappedDropTest {
+    private static final int SAMPLES = 200_000;
+
+    private DropsManager dropsManager;
+    private World world;
+
+    @Before
+    public void setUp() {
+        HeadlessBukkit.install();
+        dropsManager = new DropsManager(new File("drops.yml"), HeadlessBukkit.logger());
+        world = HeadlessBukkit.world("world", World.Environment.NORMAL);
+    }
+
+    @Test
+    public void cappedHighWeightEntryFallsBackToOtherEntriesByWeight() {
+        // 90% 权重的掉落物全服只能掉落一次
+        DropTable table = DropTable.compile(Arrays.asList(
+                drop(Material.EMERALD, 0.9, new DropCap(0, 1, 3_600_000L)),
+                drop(Material.GOLD_INGOT, 0.06, null),
+                drop(Material.IRON_INGOT, 0.04, null)));
+        HarvestSnapshot snapshot = DropsFixtures.snapshot(Collections.singletonMap("world", table),
+                DropsFixtures.defaultTriggerLores());
+
+        Map<Material, Integer> hits = new EnumMap<>(Material.class);
+        for (int i = 0; i < SAMPLES; i++) {
+            Material material = dropsManager.getRandomDrop(snapshot, world, 0).getType();
+            Integer count = hits.get(material);
+            hits.put(material, count != null ? count + 1 : 1);
+        }
+
+        assertEquals("达到上限的掉落物最多掉落一次", 1, count(hits, Material.EMERALD), 1);
+        assertEquals("不应使用默认掉落物", 0, count(hits, Material.DIAMOND));
+        // 其余两个掉落物按 0.06 : 0.04 分配，5个标准差以内
+        double p = 0.6;
+        double tolerance = 5 * Math.sqrt(SAMPLES * p * (1 - p));
+        assertEquals(SAMPLES * p, count(hits, Material.GOLD_INGOT), tolerance);
+        assertEquals(SAMPLES * (1 - p), count(hits, Material.IRON_INGOT), tolerance);
+    }
+
+    @Test
+    public void allEntriesCappedUsesDefaultDrop() {
+        DropTable table = DropTable.compile(Collections.singletonList(
+                drop(Material.EMERALD, 1, new DropCap(0, 1, 3_600_000L))));
+        HarvestSnapshot snapshot = DropsFixtures.snapshot(Collections.singletonMap("world", table),
+                DropsFixtures.defaultTriggerLores());
+
+        assertEquals(Material.EMERALD, dropsManager.getRandomDrop(snapshot, world, 0).getType());
+        ItemStack fallback = dropsManager.getRandomDrop(snapshot, world, 0);
+        assertEquals(Material.DIAMOND, fallback.getType());
+    }
+
+    private static int count(Map<Material, Integer> hits, Material material) {
+        Integer count = hits.get(material);
+        return count != null ? count : 0;
+    }
+
+    private DropsManager.CustomDrop drop(Material material, double chance, DropCap cap) {
+        return dropsManager.new CustomDrop(material, chance, 1, 1, null,
+                Collections.<String>emptyList(), Collections.<Enchantment, Integer>emptyMap(),
+                FortuneTable.build(FortuneTable.Mode.NONE, 0, 1, 1, 3), null, DropConditions.NONE, cap, false);
+    }
+}
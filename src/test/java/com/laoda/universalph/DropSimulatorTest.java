@@ -0,0 +1,91 @@
+package com.laoda.universalph;
+
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.Material;
+import org.bukkit.enchantments.Enchantment;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 独立判定模式的模拟结果必须与每个掉落物的 chance 一致，一次收获可以命中多个掉落物
+ */
+public class DropSimulatorTest {
+    private static final long TRIALS = 400_000;
+
+    private DropSimulator simulator;
+    private DropsManager dropsManager;
+
+    @Before
+    public void setUp() {
+        HeadlessBukkit.install();
+        simulator = new DropSimulator();
+        dropsManager = new DropsManager(new File("drops.yml"), HeadlessBukkit.logger());
+    }
+
+    @Test
+    public void independentHitRatesMatchChances() {
+        double[] chances = {1.0, 0.5, 0.1, 0.002};
+        DropTable dropTable = DropTable.compile(Arrays.asList(
+                drop(Material.POTATO, chances[0], 2),
+                drop(Material.CARROT, chances[1], 2),
+                drop(Material.DIAMOND, chances[2], 2),
+                drop(Material.EMERALD, chances[3], 2)), DropTable.Mode.INDEPENDENT);
+
+        DropSimulator.Result result = simulator.simulate(dropTable.getIndependentVariant(0), 0, TRIALS, 42);
+        assertEquals(TRIALS, result.getTrials());
+        double expectedHits = 0;
+        for (int i = 0; i < chances.length; i++) {
+            double p = chances[i];
+            double[] stats = result.byEntry(i);
+            // 5个标准差以内
+            double tolerance = 5 * Math.sqrt(p * (1 - p) / TRIALS) + 1e-12;
+            assertEquals("条目 " + i + " 的命中率", p, stats[0], tolerance);
+            // 数量固定为2，期望数量就是命中率的两倍
+            assertEquals("条目 " + i + " 的期望数量", stats[0] * 2 * DropSimulator.PER_HARVESTS, stats[1], 1e-6);
+            expectedHits += p;
+        }
+        assertEquals(expectedHits, result.getHitsPerTrial(), 0.01);
+    }
+
+    @Test
+    public void reportCoversEveryIndependentEntry() {
+        DropTable dropTable = DropTable.compile(Arrays.asList(
+                drop(Material.POTATO, 0.9, 1),
+                drop(Material.DIAMOND, 0.05, 1)), DropTable.Mode.INDEPENDENT);
+
+        List<String> lines = simulator.report("world", dropTable, 10_000, new int[]{0, 3}, 7);
+        int entries = 0;
+        for (String line : lines) {
+            if (line.contains("命中率")) {
+                entries++;
+            }
+        }
+        assertEquals(4, entries);
+    }
+
+    @Test
+    public void weightedTableHitsExactlyOneEntryPerTrial() {
+        DropTable dropTable = DropTable.compile(Arrays.asList(
+                drop(Material.POTATO, 3, 1),
+                drop(Material.DIAMOND, 1, 1)));
+
+        DropSimulator.Result result = simulator.simulate(dropTable.getBaseTable(), 0, 100_000, 42);
+        assertEquals(1.0, result.getHitsPerTrial(), 0);
+        assertTrue(result.byMaterial().containsKey(Material.POTATO));
+    }
+
+    private DropsManager.CustomDrop drop(Material material, double chance, int amount) {
+        return dropsManager.new CustomDrop(material, chance, amount, amount, null,
+                Collections.<String>emptyList(), Collections.<Enchantment, Integer>emptyMap(),
+                FortuneTable.build(FortuneTable.Mode.NONE, 0, amount, amount, 3), null, DropConditions.NONE,
+                null, false);
+    }
+}
@@ -0,0 +1,119 @@
+package com.laoda.universalph;
+
+import com.laoda.universalph.headless.DropsFiles;
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 从掉落表缓存启动后，重载只重新编译内容变化的掉落表，没有变化的掉落物也直接复用
+ * 复用的掉落物只来自同一掉落表中的同一条目，不同条目不会共用产出上限计数；加载时有警告则不写入缓存
+ */
+public class DropsCacheTest {
+    private static final int ENTRIES = 5;
+
+    private File dropsFile;
+    private File cacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        HeadlessBukkit.install();
+        dropsFile = DropsFiles.writeDropsFile(2, ENTRIES);
+        cacheFile = File.createTempFile("uph-drops-", ".cache");
+        cacheFile.deleteOnExit();
+        Files.delete(cacheFile.toPath());
+    }
+
+    @Test
+    public void reloadAfterCachedStartReusesUnchangedTablesAndDrops() throws Exception {
+        // 第一次启动解析YAML并写入缓存
+        new DropsManager(dropsFile, cacheFile, HeadlessBukkit.logger())
+                .loadDropsConfig(FortuneTable.Settings.defaults());
+
+        // 第二次启动从缓存加载
+        DropsManager dropsManager = new DropsManager(dropsFile, cacheFile, HeadlessBukkit.logger());
+        Map<String, DropTable> cached = dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+
+        // 在文件末尾的 nether 掉落表中追加一个掉落物
+        try (Writer writer = Files.newBufferedWriter(dropsFile.toPath(), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND)) {
+            writer.write("  - material: COAL\n");
+            writer.write("    chance: 0.5\n");
+        }
+        Map<String, DropTable> reloaded = dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+
+        assertSame(cached.get("world"), reloaded.get("world"));
+        assertNotSame(cached.get("nether"), reloaded.get("nether"));
+        List<DropsManager.CustomDrop> before = cached.get("nether").getDrops();
+        List<DropsManager.CustomDrop> after = reloaded.get("nether").getDrops();
+        assertEquals(ENTRIES + 1, after.size());
+        for (int i = 0; i < ENTRIES; i++) {
+            // 复用的掉落物共用数量分布
+            assertSame("掉落物 " + i + " 应复用缓存中的结果", before.get(i).getFortuneTable(),
+                    after.get(i).getFortuneTable());
+        }
+    }
+
+    @Test
+    public void identicalEntriesInDifferentTablesKeepSeparateCaps() throws Exception {
+        File file = File.createTempFile("uph-drops-", ".yml");
+        file.deleteOnExit();
+        String cappedEntry = "  - material: EMERALD\n"
+                + "    chance: 0.1\n"
+                + "    cap:\n"
+                + "      per-player: 1\n"
+                + "      window: 1h\n";
+        writeTables(file, cappedEntry, "");
+
+        DropsManager dropsManager = new DropsManager(file, HeadlessBukkit.logger());
+        Map<String, DropTable> before = dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+        // 两个掉落表都发生变化，其中内容相同的掉落物逐个复用上一次的结果
+        writeTables(file, cappedEntry, "  - material: COAL\n    chance: 0.5\n");
+        Map<String, DropTable> after = dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+
+        DropCap worldCap = after.get("world").getDrops().get(0).getCap();
+        DropCap netherCap = after.get("nether").getDrops().get(0).getCap();
+        assertSame(before.get("world").getDrops().get(0).getCap(), worldCap);
+        assertSame(before.get("nether").getDrops().get(0).getCap(), netherCap);
+        assertNotSame("不同掉落表中内容相同的掉落物不能共用产出上限", worldCap, netherCap);
+    }
+
+    @Test
+    public void loadWarningsSkipCacheWrite() throws Exception {
+        File file = File.createTempFile("uph-drops-", ".yml");
+        file.deleteOnExit();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("world:\n");
+            writer.write("  - material: EMERALD\n");
+            writer.write("    fortune: no-such-mode\n");
+        }
+
+        new DropsManager(file, cacheFile, HeadlessBukkit.logger()).loadDropsConfig(FortuneTable.Settings.defaults());
+
+        // 缓存不会保存警告，写入后下次启动将不再提示无效的时运算法
+        assertFalse(cacheFile.exists());
+    }
+
+    private static void writeTables(File file, String cappedEntry, String extraEntry) throws Exception {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String table : new String[]{"world", "nether"}) {
+                writer.write(table + ":\n");
+                writer.write(cappedEntry);
+                writer.write(extraEntry);
+            }
+        }
+    }
+}
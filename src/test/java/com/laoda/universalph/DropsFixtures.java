@@ -0,0 +1,53 @@
+package com.laoda.universalph;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单元测试使用的配置快照
+ */
+public final class DropsFixtures {
+    private DropsFixtures() {
+    }
+
+    /**
+     * 使用默认设置构建配置快照
+     * @param tables 掉落表
+     * @param triggerLores 触发Lore
+     * @return 配置快照
+     */
+    public static HarvestSnapshot snapshot(Map<String, DropTable> tables, List<String> triggerLores) {
+        LoreMatcher matcher = new LoreMatcher(triggerLores);
+        return new HarvestSnapshot(
+                tables,
+                Collections.<String, String>emptyMap(),
+                new ItemStack(Material.DIAMOND),
+                matcher,
+                FortuneTable.Settings.defaults(),
+                false,
+                DropBatcher.Settings.disabled(),
+                AreaHarvester.Settings.fromConfig(null, matcher.getPatterns()),
+                HarvestMetrics.Settings.fromConfig(null),
+                HarvestLedger.Settings.fromConfig(null),
+                InventoryDelivery.Settings.fromConfig(null, matcher.getPatterns()),
+                CropRegistry.fromConfig(null, matcher.getPatterns(), matcher.getPatterns().size(), tables.keySet()),
+                ConfigWatcher.Settings.fromConfig(null),
+                PityTracker.Settings.fromConfig(null),
+                AutoHarvester.Settings.fromConfig(null),
+                AuditLog.Settings.fromConfig(null),
+                HarvestFeedback.Settings.fromConfig(null)
+        );
+    }
+
+    /**
+     * 默认的触发Lore
+     * @return 只包含"土豆收割者"的列表
+     */
+    public static List<String> defaultTriggerLores() {
+        return Collections.singletonList("土豆收割者");
+    }
+}
@@ -0,0 +1,181 @@
+package com.laoda.universalph;
+
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 收获路径的多线程压力测试，模拟区域多线程服务器上多个区域同时收获
+ * 多个线程同时调用 DropsManager.getRandomDrop 和 HarvestToolCache，另有一个线程不断发布新的配置快照模拟重载，
+ * 检查每个结果都来自正确世界的掉落表、数量属于对应时运等级的分布，且各条目的抽中频率与权重一致
+ * 线程数和每线程次数可以用 -Dstress.threads=值 和 -Dstress.iterations=值 调整
+ */
+public class HarvestConcurrencyTest {
+    private static final int ENTRIES = 6;
+    private static final int MAX_FORTUNE = 3;
+
+    private volatile HarvestSnapshot published;
+
+    @Test
+    public void concurrentHarvestsAndReloadsStayConsistent() throws Exception {
+        int threads = Integer.getInteger("stress.threads", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        final int iterations = Integer.getInteger("stress.iterations", 50_000);
+
+        HeadlessBukkit.install();
+        final DropsManager dropsManager = new DropsManager(writeDropsFile(), HeadlessBukkit.logger());
+        final Map<String, DropTable> tables =
+                dropsManager.loadDropsConfig(FortuneTable.Settings.defaults());
+        final List<String> lores = DropsFixtures.defaultTriggerLores();
+        published = DropsFixtures.snapshot(tables, lores);
+
+        final World overworld = HeadlessBukkit.world("world", World.Environment.NORMAL);
+        final World nether = HeadlessBukkit.world("world_nether", World.Environment.NETHER);
+        final Map<String, DropsManager.CustomDrop> overworldDrops = byDisplayName(tables.get("world"));
+        final Map<String, DropsManager.CustomDrop> netherDrops = byDisplayName(tables.get("nether"));
+
+        final HarvestToolCache toolCache = new HarvestToolCache(null);
+        final ItemStack tool = HeadlessBukkit.item(Material.IRON_HOE, "§6土豆收割工具", Arrays.asList("§7土豆收割者"));
+        final ItemStack plainItem = HeadlessBukkit.item(Material.IRON_HOE, "§7普通的锄头", Arrays.asList("§7没有用"));
+
+        final Map<DropsManager.CustomDrop, LongAdder> hits = new HashMap<>();
+        for (DropTable table : tables.values()) {
+            for (DropsManager.CustomDrop drop : table.getDrops()) {
+                hits.put(drop, new LongAdder());
+            }
+        }
+        final AtomicLong reloads = new AtomicLong();
+        final ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        // 模拟重载：不断用同样的掉落表发布新的快照
+        Thread reloader = new Thread(() -> {
+            while (done.getCount() > 0) {
+                published = DropsFixtures.snapshot(tables, lores);
+                reloads.incrementAndGet();
+                Thread.yield();
+            }
+        }, "uph-stress-reload");
+        reloader.setDaemon(true);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers.add(new Thread(() -> {
+                Player harvester = HeadlessBukkit.player("harvester-" + id, overworld, tool);
+                Player bystander = HeadlessBukkit.player("bystander-" + id, overworld, plainItem);
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        HarvestSnapshot snapshot = published;
+                        LoreMatcher matcher = snapshot.getTriggerMatcher();
+                        if (toolCache.getTriggerIndex(harvester, tool, matcher) != 0
+                                || toolCache.getTriggerIndex(bystander, plainItem, matcher) != -1) {
+                            failures.add("线程 " + id + " 的工具识别结果错误");
+                            return;
+                        }
+
+                        boolean inNether = (i & 1) == 1;
+                        int fortuneLevel = i % (MAX_FORTUNE + 1);
+                        ItemStack item = dropsManager.getRandomDrop(snapshot, inNether ? nether : overworld, fortuneLevel);
+                        String name = item.getItemMeta().getDisplayName();
+                        DropsManager.CustomDrop drop = (inNether ? netherDrops : overworldDrops).get(name);
+                        if (drop == null) {
+                            failures.add("线程 " + id + " 在" + (inNether ? "下界" : "主世界") + "得到了其他掉落表的物品: " + name);
+                            return;
+                        }
+                        if (!drop.getFortuneTable().getDistribution(fortuneLevel).getItems().contains(item.getAmount())) {
+                            failures.add("线程 " + id + " 得到了不可能的数量 " + item.getAmount() + " (时运 " + fortuneLevel + ")");
+                            return;
+                        }
+                        hits.get(drop).increment();
+                    }
+                } catch (Throwable e) {
+                    failures.add("线程 " + id + " 抛出异常: " + e);
+                } finally {
+                    done.countDown();
+                }
+            }, "uph-stress-" + t));
+        }
+
+        long begin = System.nanoTime();
+        reloader.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        // 每个维度收到一半的调用，各条目的抽中次数应在期望值的5个标准差以内
+        if (failures.isEmpty()) {
+            long perDimension = (long) threads * iterations / 2;
+            for (DropTable dropTable : tables.values()) {
+                AliasTable<DropsManager.CustomDrop> table = dropTable.getBaseTable();
+                for (int i = 0; i < table.getItems().size(); i++) {
+                    double p = table.getProbability(i);
+                    double expected = perDimension * p;
+                    double tolerance = 5 * Math.sqrt(perDimension * p * (1 - p)) + 1;
+                    long actual = hits.get(table.getItems().get(i)).sum();
+                    if (Math.abs(actual - expected) > tolerance) {
+                        failures.add(String.format("条目 %d 抽中 %d 次，期望 %.0f±%.0f", i, actual, expected, tolerance));
+                    }
+                }
+            }
+        }
+
+        System.out.printf("%d 线程 x %d 次收获，耗时 %.2f 秒（%.0f 次/秒），期间发布了 %d 个快照%n",
+                threads, iterations, seconds, threads * (double) iterations / seconds, reloads.get());
+        assertTrue("压力测试未通过: " + failures, failures.isEmpty());
+    }
+
+    private static Map<String, DropsManager.CustomDrop> byDisplayName(DropTable table) {
+        Map<String, DropsManager.CustomDrop> drops = new HashMap<>();
+        for (DropsManager.CustomDrop drop : table.getDrops()) {
+            drops.put(drop.createItemStack().getItemMeta().getDisplayName(), drop);
+        }
+        return drops;
+    }
+
+    private static File writeDropsFile() throws Exception {
+        File file = File.createTempFile("uph-stress-", ".yml");
+        file.deleteOnExit();
+        String[] materials = {"DIAMOND", "EMERALD", "GOLD_INGOT", "IRON_INGOT", "COAL", "REDSTONE"};
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (String dimension : new String[]{"world", "nether"}) {
+                writer.write(dimension + ":\n");
+                for (int i = 0; i < ENTRIES; i++) {
+                    writer.write("  - material: " + materials[i] + "\n");
+                    writer.write("    chance: " + (i + 1) + "\n");
+                    writer.write("    amount: 1-" + (i + 1) + "\n");
+                    writer.write("    display-name: \"&f" + dimension + " #" + i + "\"\n");
+                    if (i % 3 == 1) {
+                        writer.write("    fortune: chance\n");
+                    } else if (i % 3 == 2) {
+                        writer.write("    fortune: add\n");
+                    }
+                }
+            }
+        }
+        return file;
+    }
+}
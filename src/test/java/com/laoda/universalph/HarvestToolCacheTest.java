@@ -0,0 +1,101 @@
+package com.laoda.universalph;
+
+import com.laoda.universalph.headless.HeadlessBukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 命中缓存时不能读取（复制）ItemMeta；物品被修改后，物品栏等事件使缓存失效，之后必须重新识别
+ */
+public class HarvestToolCacheTest {
+    private HarvestToolCache cache;
+    private LoreMatcher matcher;
+    private CountingItemStack tool;
+    private Player player;
+
+    @Before
+    public void setUp() {
+        HeadlessBukkit.install();
+        cache = new HarvestToolCache(null);
+        matcher = new LoreMatcher(DropsFixtures.defaultTriggerLores());
+        tool = new CountingItemStack(
+                HeadlessBukkit.item(Material.IRON_HOE, "§6土豆收割工具", Arrays.asList("§7土豆收割者")));
+        World world = HeadlessBukkit.world("world", World.Environment.NORMAL);
+        player = HeadlessBukkit.player("tool-cache", world, tool);
+    }
+
+    @Test
+    public void cacheHitDoesNotReadItemMeta() {
+        assertEquals(0, cache.getTriggerIndex(player, tool, matcher));
+        int reads = tool.metaReads;
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, cache.getTriggerIndex(player, tool, matcher));
+            assertEquals(0, cache.getFortuneLevel(player, tool, matcher));
+        }
+        assertEquals(reads, tool.metaReads);
+    }
+
+    @Test
+    public void removingTriggerLoreIsPickedUpAfterInvalidation() {
+        assertEquals(0, cache.getTriggerIndex(player, tool, matcher));
+
+        ItemMeta meta = tool.getItemMeta();
+        meta.setLore(Collections.singletonList("§7普通的锄头"));
+        tool.setItemMeta(meta);
+        // 物品栏操作、换手持物品等事件会调用 invalidate
+        cache.invalidate(player);
+
+        assertEquals(-1, cache.getTriggerIndex(player, tool, matcher));
+    }
+
+    @Test
+    public void changedFortuneLevelIsPickedUpAfterInvalidation() {
+        assertEquals(0, cache.getFortuneLevel(player, tool, matcher));
+
+        ItemMeta meta = tool.getItemMeta();
+        meta.addEnchant(Enchantment.LOOT_BONUS_BLOCKS, 3, true);
+        tool.setItemMeta(meta);
+        cache.invalidate(player);
+
+        assertEquals(3, cache.getFortuneLevel(player, tool, matcher));
+    }
+
+    @Test
+    public void changedDurabilityInvalidatesCachedResult() {
+        assertEquals(0, cache.getTriggerIndex(player, tool, matcher));
+        int reads = tool.metaReads;
+
+        tool.setDurability((short) 5);
+        assertEquals(0, cache.getTriggerIndex(player, tool, matcher));
+        assertEquals(reads + 1, tool.metaReads);
+    }
+
+    /**
+     * 记录 getItemMeta 调用次数的物品，服务端的实现每次调用都会复制一份ItemMeta
+     */
+    private static final class CountingItemStack extends ItemStack {
+        private int metaReads;
+
+        private CountingItemStack(ItemStack source) {
+            super(source);
+        }
+
+        @Override
+        public ItemMeta getItemMeta() {
+            metaReads++;
+            return super.getItemMeta();
+        }
+    }
+}
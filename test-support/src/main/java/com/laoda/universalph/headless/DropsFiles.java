@@ -0,0 +1,54 @@
+package com.laoda.universalph.headless;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * 测试和基准测试使用的合成 drops.yml
+ */
+public final class DropsFiles {
+    private static final String[] MATERIALS = {
+            "DIAMOND", "EMERALD", "GOLD_INGOT", "IRON_INGOT", "POTATO_ITEM",
+            "BLAZE_ROD", "ENDER_PEARL", "CHORUS_FRUIT", "COAL", "REDSTONE"
+    };
+    private static final String[] DIMENSIONS = {"world", "nether", "the_end"};
+
+    private DropsFiles() {
+    }
+
+    /**
+     * 生成一个 drops.yml，每个维度包含指定数量的掉落物条目
+     * @param dimensions 维度数量（1-3）
+     * @param entriesPerDimension 每个维度的条目数量
+     * @return 生成的临时文件（JVM退出时删除）
+     * @throws IOException 写入失败
+     */
+    public static File writeDropsFile(int dimensions, int entriesPerDimension) throws IOException {
+        File file = File.createTempFile("uph-drops-", ".yml");
+        file.deleteOnExit();
+
+        Random random = new Random(42);
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int d = 0; d < Math.min(dimensions, DIMENSIONS.length); d++) {
+                writer.write(DIMENSIONS[d] + ":\n");
+                for (int i = 0; i < entriesPerDimension; i++) {
+                    int min = 1 + random.nextInt(3);
+                    writer.write("  - material: " + MATERIALS[i % MATERIALS.length] + "\n");
+                    writer.write("    chance: " + (0.001 + random.nextDouble()) + "\n");
+                    writer.write("    amount: " + min + "-" + (min + random.nextInt(4)) + "\n");
+                    writer.write("    display-name: \"&b基准掉落物 #" + i + "\"\n");
+                    writer.write("    lore:\n");
+                    writer.write("      - \"&7第一行描述 " + i + "\"\n");
+                    writer.write("      - \"&e第二行描述\"\n");
+                    writer.write("    enchants:\n");
+                    writer.write("      - \"MENDING:1\"\n");
+                }
+            }
+        }
+        return file;
+    }
+}
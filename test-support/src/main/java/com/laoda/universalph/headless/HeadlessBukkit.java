@@ -0,0 +1,573 @@
+package com.laoda.universalph.headless;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.enchantments.Enchantment;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.RegisteredListener;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 轻量的Bukkit替身，让插件代码可以在没有服务器的JVM中运行
+ * 只实现收获热路径用到的方法，其余方法返回默认值（null / 0 / false）
+ * 事件通过真实的 JavaPluginLoader 注册和分发，调度器由调用者按tick手动推进
+ */
+public final class HeadlessBukkit {
+    private static final Logger LOGGER = Logger.getLogger("UniversalPotatoHarvest-Headless");
+    private static final Map<String, World> WORLDS = new ConcurrentHashMap<>();
+    private static final HeadlessScheduler SCHEDULER = new HeadlessScheduler();
+    /** 按注册类（声明 getHandlerList 的事件类）保存的监听器，已按优先级排序 */
+    private static final Map<Class<?>, List<RegisteredListener>> HANDLERS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Class<?>> REGISTRATION_CLASSES = new ConcurrentHashMap<>();
+    private static final Map<String, PluginCommand> COMMANDS = new ConcurrentHashMap<>();
+    private static volatile Plugin commandOwner;
+    private static boolean installed;
+
+    static {
+        LOGGER.setLevel(Level.WARNING);
+    }
+
+    private HeadlessBukkit() {
+    }
+
+    /**
+     * 安装替身服务器，使 ItemStack 的 ItemMeta 等功能可以正常工作，重复调用无副作用
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+
+        final ItemFactory itemFactory = proxy(ItemFactory.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getItemMeta":
+                    return args[0] == Material.AIR ? null : newMeta(new MetaState());
+                case "isApplicable":
+                    return true;
+                case "asMetaFor":
+                    return args[0];
+                case "equals":
+                    return stateOf((ItemMeta) args[0]).equals(stateOf((ItemMeta) args[1]));
+                case "updateMaterial":
+                    return args[1];
+                default:
+                    return defaultValue(method);
+            }
+        });
+
+        final BukkitScheduler scheduler = proxy(BukkitScheduler.class, SCHEDULER);
+        final PluginManager pluginManager = proxy(PluginManager.class, (method, args) -> {
+            switch (method.getName()) {
+                case "registerEvents":
+                    registerEvents((Listener) args[0], (Plugin) args[1]);
+                    return null;
+                case "callEvent":
+                    callEvent((Event) args[0]);
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        });
+
+        Server server = proxy(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getItemFactory":
+                    return itemFactory;
+                case "getScheduler":
+                    return scheduler;
+                case "getPluginManager":
+                    return pluginManager;
+                case "getWorlds":
+                    return new ArrayList<>(WORLDS.values());
+                case "getWorld":
+                    return args[0] instanceof String ? WORLDS.get(args[0]) : null;
+                case "getOnlinePlayers":
+                    return Collections.emptyList();
+                case "getPluginCommand":
+                    return command((String) args[0]);
+                case "getLogger":
+                    return LOGGER;
+                case "getName":
+                    return "HeadlessBukkit";
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "1.12.2-R0.1-SNAPSHOT";
+                case "isPrimaryThread":
+                    return true;
+                default:
+                    return defaultValue(method);
+            }
+        });
+
+        Bukkit.setServer(server);
+        installed = true;
+    }
+
+    /**
+     * 获取替身环境使用的日志（只输出警告及以上级别）
+     * @return 日志
+     */
+    public static Logger logger() {
+        return LOGGER;
+    }
+
+    /**
+     * 获取手动推进的调度器
+     * @return 调度器替身
+     */
+    public static HeadlessScheduler scheduler() {
+        return SCHEDULER;
+    }
+
+    /**
+     * 在替身服务器中创建并启用插件，与服务器启动时一样执行 onEnable
+     * 插件使用 dataFolder 中的 config.yml 和 drops.yml，不存在时写入插件自带的默认配置
+     * JavaPlugin 的公开构造函数要求由服务器的 PluginClassLoader 加载，这里改为调用 JavaPlugin 供测试使用的
+     * 初始化构造函数创建实例，因此插件子类自身的构造函数和字段初始化不会执行，状态应在 onEnable 中创建
+     * @param type 插件主类，plugin.yml 从它的类加载器中读取
+     * @param dataFolder 插件数据目录
+     * @param <T> 插件类型
+     * @return 已启用的插件
+     * @throws Exception plugin.yml 无法读取或插件无法创建
+     */
+    public static <T extends JavaPlugin> T enablePlugin(Class<T> type, File dataFolder) throws Exception {
+        install();
+        PluginDescriptionFile description;
+        try (InputStream in = type.getClassLoader().getResourceAsStream("plugin.yml")) {
+            if (in == null) {
+                throw new IllegalStateException("找不到 " + type.getName() + " 的 plugin.yml");
+            }
+            description = new PluginDescriptionFile(in);
+        }
+
+        Constructor<?> initializer = JavaPlugin.class.getDeclaredConstructor(
+                JavaPluginLoader.class, PluginDescriptionFile.class, File.class, File.class);
+        T plugin = type.cast(serializationConstructor(type, initializer).newInstance(
+                new JavaPluginLoader(Bukkit.getServer()), description, dataFolder,
+                new File(dataFolder, description.getName() + ".jar")));
+        commandOwner = plugin;
+        plugin.onEnable();
+        return plugin;
+    }
+
+    /**
+     * 创建一个按 type 分配实例、但只执行 initializer（type 的父类构造函数）的构造函数
+     * 通过反射访问 ReflectionFactory，避免编译时依赖 JDK 内部API
+     */
+    private static Constructor<?> serializationConstructor(Class<?> type, Constructor<?> initializer)
+            throws ReflectiveOperationException {
+        Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+        Object factory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+        Constructor<?> constructor = (Constructor<?>) factoryClass
+                .getMethod("newConstructorForSerialization", Class.class, Constructor.class)
+                .invoke(factory, type, initializer);
+        constructor.setAccessible(true);
+        return constructor;
+    }
+
+    /**
+     * 按优先级把事件分发给已注册的监听器，与服务器的 PluginManager.callEvent 相同
+     * @param event 事件
+     */
+    public static void callEvent(Event event) {
+        List<RegisteredListener> listeners = HANDLERS.get(registrationClass(event.getClass()));
+        if (listeners == null) {
+            return;
+        }
+        for (RegisteredListener listener : listeners) {
+            try {
+                listener.callEvent(event);
+            } catch (EventException e) {
+                throw new IllegalStateException("监听器处理 " + event.getEventName() + " 时抛出异常", e.getCause());
+            }
+        }
+    }
+
+    private static synchronized void registerEvents(Listener listener, Plugin plugin) {
+        Map<Class<? extends Event>, Set<RegisteredListener>> created =
+                plugin.getPluginLoader().createRegisteredListeners(listener, plugin);
+        for (Map.Entry<Class<? extends Event>, Set<RegisteredListener>> entry : created.entrySet()) {
+            Class<?> type = registrationClass(entry.getKey());
+            List<RegisteredListener> listeners = new ArrayList<>();
+            List<RegisteredListener> existing = HANDLERS.get(type);
+            if (existing != null) {
+                listeners.addAll(existing);
+            }
+            listeners.addAll(entry.getValue());
+            listeners.sort(Comparator.comparingInt(registered -> registered.getPriority().getSlot()));
+            HANDLERS.put(type, new CopyOnWriteArrayList<>(listeners));
+        }
+    }
+
+    /**
+     * 查找声明 getHandlerList 的事件类，子类事件（如区域收获的破坏事件）与父类共用同一组监听器
+     */
+    private static Class<?> registrationClass(Class<?> type) {
+        Class<?> cached = REGISTRATION_CLASSES.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        Class<?> result = type;
+        for (Class<?> current = type; current != null && Event.class.isAssignableFrom(current);
+             current = current.getSuperclass()) {
+            try {
+                current.getDeclaredMethod("getHandlerList");
+                result = current;
+                break;
+            } catch (NoSuchMethodException ignored) {
+                // 继续查找父类
+            }
+        }
+        REGISTRATION_CLASSES.put(type, result);
+        return result;
+    }
+
+    private static PluginCommand command(String name) {
+        Plugin owner = commandOwner;
+        if (owner == null) {
+            return null;
+        }
+        return COMMANDS.computeIfAbsent(name, alias -> {
+            try {
+                Constructor<PluginCommand> constructor = PluginCommand.class.getDeclaredConstructor(String.class, Plugin.class);
+                constructor.setAccessible(true);
+                return constructor.newInstance(alias, owner);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("无法创建命令 " + alias, e);
+            }
+        });
+    }
+
+    /**
+     * 创建一个世界替身，同名世界只创建一次，并出现在 Server.getWorlds() 中
+     * @param name 世界名称
+     * @param environment 维度类型
+     * @return 世界替身
+     */
+    public static World world(final String name, final World.Environment environment) {
+        return WORLDS.computeIfAbsent(name, key -> newWorld(name, environment));
+    }
+
+    private static World newWorld(final String name, final World.Environment environment) {
+        final UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        return proxy(World.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUID":
+                    return uid;
+                case "getEnvironment":
+                    return environment;
+                case "getMaxHeight":
+                    return 256;
+                case "isChunkLoaded":
+                    return true;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * 创建一个手持指定物品的玩家替身
+     * @param name 玩家名称
+     * @param world 玩家所在世界
+     * @param handItem 主手物品
+     * @return 玩家替身
+     */
+    public static Player player(final String name, final World world, final ItemStack handItem) {
+        final UUID uid = UUID.nameUUIDFromBytes(name.getBytes());
+        final PlayerInventory inventory = proxy(PlayerInventory.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getItemInMainHand":
+                    return handItem;
+                case "getHeldItemSlot":
+                    return 0;
+                case "getSize":
+                    return 36;
+                case "addItem":
+                    // 背包永远放得下，投递的物品直接丢弃
+                    return new HashMap<Integer, ItemStack>();
+                default:
+                    return defaultValue(method);
+            }
+        });
+        return proxy(Player.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getUniqueId":
+                    return uid;
+                case "getInventory":
+                    return inventory;
+                case "getWorld":
+                    return world;
+                case "isOnline":
+                    return true;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * 创建一个方块替身
+     * @param world 所在世界
+     * @param x X坐标
+     * @param y Y坐标
+     * @param z Z坐标
+     * @param type 方块类型
+     * @param data 方块数据（作物为生长阶段）
+     * @return 方块替身
+     */
+    public static Block block(final World world, final int x, final int y, final int z,
+                              final Material type, final byte data) {
+        return proxy(Block.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getType":
+                    return type;
+                case "getData":
+                    return data;
+                case "getWorld":
+                    return world;
+                case "getX":
+                    return x;
+                case "getY":
+                    return y;
+                case "getZ":
+                    return z;
+                case "getLocation":
+                    if (args.length == 0) {
+                        return new Location(world, x, y, z);
+                    }
+                    Location location = (Location) args[0];
+                    if (location != null) {
+                        location.setWorld(world);
+                        location.setX(x);
+                        location.setY(y);
+                        location.setZ(z);
+                    }
+                    return location;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * 创建带有名称和Lore的物品
+     * @param material 材质
+     * @param displayName 显示名称
+     * @param lore Lore行
+     * @return 物品
+     */
+    public static ItemStack item(Material material, String displayName, List<String> lore) {
+        ItemStack item = new ItemStack(material);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(displayName);
+        meta.setLore(lore);
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    /**
+     * 创建一个代理实现
+     * @param type 接口类型
+     * @param answer 方法应答
+     * @param <T> 接口类型
+     * @return 代理对象
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T proxy(Class<T> type, Answer answer) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "@headless";
+                }
+            }
+            return answer.answer(method, args == null ? new Object[0] : args);
+        };
+        return (T) Proxy.newProxyInstance(HeadlessBukkit.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * 返回方法返回类型的默认值
+     * @param method 方法
+     * @return null / 0 / false
+     */
+    public static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    private static ItemMeta newMeta(final MetaState state) {
+        return (ItemMeta) Proxy.newProxyInstance(HeadlessBukkit.class.getClassLoader(),
+                new Class<?>[]{ItemMeta.class}, new MetaHandler(state));
+    }
+
+    private static MetaState stateOf(ItemMeta meta) {
+        if (meta == null) {
+            return new MetaState();
+        }
+        return ((MetaHandler) Proxy.getInvocationHandler(meta)).state;
+    }
+
+    /**
+     * 代理方法的应答
+     */
+    public interface Answer {
+        Object answer(Method method, Object[] args) throws Throwable;
+    }
+
+    /**
+     * ItemMeta 替身保存的数据
+     */
+    private static final class MetaState {
+        private String displayName;
+        private List<String> lore;
+        private final Map<Enchantment, Integer> enchants = new LinkedHashMap<>();
+
+        private MetaState copy() {
+            MetaState copy = new MetaState();
+            copy.displayName = displayName;
+            copy.lore = lore == null ? null : new ArrayList<>(lore);
+            copy.enchants.putAll(enchants);
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MetaState)) {
+                return false;
+            }
+            MetaState other = (MetaState) o;
+            return Objects.equals(displayName, other.displayName)
+                    && Objects.equals(lore, other.lore)
+                    && enchants.equals(other.enchants);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(displayName, lore, enchants);
+        }
+    }
+
+    private static final class MetaHandler implements InvocationHandler {
+        private final MetaState state;
+
+        private MetaHandler(MetaState state) {
+            this.state = state;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "hasDisplayName":
+                    return state.displayName != null;
+                case "getDisplayName":
+                    return state.displayName;
+                case "setDisplayName":
+                    state.displayName = (String) args[0];
+                    return null;
+                case "hasLore":
+                    return state.lore != null && !state.lore.isEmpty();
+                case "getLore":
+                    return state.lore == null ? null : new ArrayList<>(state.lore);
+                case "setLore":
+                    state.lore = args[0] == null ? null : new ArrayList<>((List<String>) args[0]);
+                    return null;
+                case "hasEnchants":
+                    return !state.enchants.isEmpty();
+                case "hasEnchant":
+                    return state.enchants.containsKey(args[0]);
+                case "getEnchantLevel":
+                    Integer level = state.enchants.get(args[0]);
+                    return level == null ? 0 : level;
+                case "getEnchants":
+                    return Collections.unmodifiableMap(new HashMap<>(state.enchants));
+                case "addEnchant":
+                    return !Objects.equals(state.enchants.put((Enchantment) args[0], (Integer) args[1]), args[1]);
+                case "removeEnchant":
+                    return state.enchants.remove(args[0]) != null;
+                case "clone":
+                    return newMeta(state.copy());
+                case "equals":
+                    return args[0] instanceof ItemMeta && state.equals(stateOf((ItemMeta) args[0]));
+                case "hashCode":
+                    return state.hashCode();
+                case "toString":
+                    return "HeadlessItemMeta" + state.displayName;
+                default:
+                    return defaultValue(method);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.laoda.universalph.headless;
+
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BukkitScheduler 替身，由调用者手动推进tick
+ * 同步任务只在调用 tick() 时于调用线程上执行，与服务器主线程在tick末尾执行任务的方式一致；
+ * 异步任务交给一个后台线程执行
+ */
+public final class HeadlessScheduler implements HeadlessBukkit.Answer {
+    private final List<ScheduledTask> tasks = new ArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final ExecutorService async = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "uph-headless-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long currentTick;
+
+    HeadlessScheduler() {
+    }
+
+    @Override
+    public Object answer(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "runTask":
+                return schedule((Runnable) args[1], 0L, -1L, true);
+            case "runTaskLater":
+                return schedule((Runnable) args[1], (Long) args[2], -1L, true);
+            case "runTaskTimer":
+                return schedule((Runnable) args[1], (Long) args[2], (Long) args[3], true);
+            case "runTaskAsynchronously":
+                return schedule((Runnable) args[1], 0L, -1L, false);
+            case "runTaskLaterAsynchronously":
+                return schedule((Runnable) args[1], (Long) args[2], -1L, false);
+            case "runTaskTimerAsynchronously":
+                return schedule((Runnable) args[1], (Long) args[2], (Long) args[3], false);
+            case "cancelTasks":
+                synchronized (this) {
+                    tasks.clear();
+                }
+                return null;
+            default:
+                return HeadlessBukkit.defaultValue(method);
+        }
+    }
+
+    /**
+     * 推进一个tick，执行所有到期的任务
+     * @return 本tick执行的同步任务数量
+     */
+    public int tick() {
+        List<ScheduledTask> due = new ArrayList<>();
+        synchronized (this) {
+            currentTick++;
+            Iterator<ScheduledTask> iterator = tasks.iterator();
+            while (iterator.hasNext()) {
+                ScheduledTask task = iterator.next();
+                if (task.nextRun > currentTick) {
+                    continue;
+                }
+                due.add(task);
+                if (task.period > 0) {
+                    task.nextRun = currentTick + task.period;
+                } else {
+                    iterator.remove();
+                }
+            }
+        }
+
+        int synchronous = 0;
+        for (ScheduledTask task : due) {
+            if (task.cancelled) {
+                continue;
+            }
+            if (task.sync) {
+                task.runnable.run();
+                synchronous++;
+            } else {
+                async.execute(task.runnable);
+            }
+        }
+        return synchronous;
+    }
+
+    /**
+     * 获取当前tick
+     * @return 已推进的tick数
+     */
+    public synchronized long getCurrentTick() {
+        return currentTick;
+    }
+
+    private synchronized BukkitTask schedule(Runnable runnable, long delay, long period, boolean sync) {
+        final ScheduledTask task = new ScheduledTask(nextId.getAndIncrement(), runnable, period, sync);
+        task.nextRun = currentTick + Math.max(1L, delay);
+        tasks.add(task);
+        return HeadlessBukkit.proxy(BukkitTask.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getTaskId":
+                    return task.id;
+                case "isSync":
+                    return task.sync;
+                case "isCancelled":
+                    return task.cancelled;
+                case "cancel":
+                    task.cancelled = true;
+                    synchronized (HeadlessScheduler.this) {
+                        tasks.remove(task);
+                    }
+                    return null;
+                default:
+                    return HeadlessBukkit.defaultValue(method);
+            }
+        });
+    }
+
+    private static final class ScheduledTask {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private final boolean sync;
+        private long nextRun;
+        private volatile boolean cancelled;
+
+        private ScheduledTask(int id, Runnable runnable, long period, boolean sync) {
+            this.id = id;
+            this.runnable = runnable;
+            this.period = period;
+            this.sync = sync;
+        }
+    }
+}